@@ -0,0 +1,72 @@
+package com.kenshoo.pl.audit;
+
+import com.kenshoo.jooq.DataTableUtils;
+import com.kenshoo.jooq.TestJooqConfig;
+import com.kenshoo.pl.entity.ChangeFlowConfig;
+import com.kenshoo.pl.entity.ChangeFlowConfigBuilderFactory;
+import com.kenshoo.pl.entity.ConditionalUpdateCommand;
+import com.kenshoo.pl.entity.PLContext;
+import com.kenshoo.pl.entity.PersistenceLayer;
+import com.kenshoo.pl.entity.audit.AuditRecord;
+import com.kenshoo.pl.entity.internal.audit.MainAutoIncIdTable;
+import com.kenshoo.pl.entity.internal.audit.entitytypes.AuditedAutoIncIdType;
+import org.jooq.DSLContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.kenshoo.pl.entity.ChangeOperation.UPDATE;
+import static com.kenshoo.pl.entity.matchers.audit.AuditRecordMatchers.*;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+
+public class AuditForConditionalUpdateTest {
+
+    private static final MainAutoIncIdTable TABLE = MainAutoIncIdTable.INSTANCE;
+
+    private PLContext plContext;
+    private InMemoryAuditRecordPublisher auditRecordPublisher;
+    private ChangeFlowConfig<AuditedAutoIncIdType> auditedConfig;
+    private PersistenceLayer<AuditedAutoIncIdType> auditedPL;
+
+    @Before
+    public void setUp() {
+        final DSLContext dslContext = TestJooqConfig.create();
+        auditRecordPublisher = new InMemoryAuditRecordPublisher();
+        plContext = new PLContext.Builder(dslContext)
+            .withAuditRecordPublisher(auditRecordPublisher)
+            .build();
+        auditedConfig = ChangeFlowConfigBuilderFactory.newInstance(plContext, AuditedAutoIncIdType.INSTANCE).build();
+        auditedPL = new PersistenceLayer<>(plContext);
+
+        DataTableUtils.createTable(dslContext, TABLE);
+        dslContext.insertInto(TABLE, TABLE.id, TABLE.name, TABLE.desc, TABLE.desc2)
+                  .values(1L, "nameA", "old", "desc2A")
+                  .values(2L, "nameB", "old", "desc2B")
+                  .values(3L, "nameC", "other", "desc2C")
+                  .execute();
+    }
+
+    @After
+    public void tearDown() {
+        plContext.dslContext().dropTable(TABLE).execute();
+    }
+
+    @Test
+    public void updateWhere_ShouldCreateRecordsForMatchingEntitiesOnly() {
+        final ConditionalUpdateCommand<AuditedAutoIncIdType> command = new ConditionalUpdateCommand<>(AuditedAutoIncIdType.INSTANCE,
+                                                                                                        AuditedAutoIncIdType.DESC.eq("old"));
+        command.set(AuditedAutoIncIdType.DESC, "new");
+
+        auditedPL.updateWhere(command, auditedConfig);
+
+        final List<? extends AuditRecord> auditRecords = auditRecordPublisher.getAuditRecords().collect(toList());
+        assertThat(auditRecords, containsInAnyOrder(
+            allOf(hasEntityId("1"), hasOperator(UPDATE), hasChangedFieldRecord(AuditedAutoIncIdType.DESC, "old", "new")),
+            allOf(hasEntityId("2"), hasOperator(UPDATE), hasChangedFieldRecord(AuditedAutoIncIdType.DESC, "old", "new"))));
+    }
+}
@@ -5,18 +5,21 @@ import com.google.common.collect.ImmutableMap;
 import com.kenshoo.jooq.AbstractDataTable;
 import com.kenshoo.jooq.DataTableUtils;
 import com.kenshoo.jooq.TestJooqConfig;
+import com.kenshoo.pl.data.CommandsExecutorConfig.GeneratedKeysStrategy;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.hamcrest.Matchers;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.TableField;
+import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
 import org.jooq.impl.SQLDataType;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -24,7 +27,10 @@ import java.util.Map;
 
 import static java.util.stream.Collectors.toList;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 public class CommandsExecutorTest {
@@ -103,6 +109,182 @@ public class CommandsExecutorTest {
         assertThat(actualValues, Matchers.<Map<Integer, String>>is(ImmutableMap.of(1, valueToSet1, 2, valueToSet2)));
     }
 
+    @Test
+    public void repeatedUpdatesOfSameFieldsInDifferentOrder() {
+        TestUpdateRecordCommand command1 = new TestUpdateRecordCommand(1);
+        command1.set(table.field1, "Alpha-1");
+        command1.set(table.field2, 100);
+        commandsExecutor.executeUpdates(table, ImmutableList.of(command1));
+
+        TestUpdateRecordCommand command2 = new TestUpdateRecordCommand(2);
+        command2.set(table.field2, 200);
+        command2.set(table.field1, "Bravo-2");
+        AffectedRows affectedRows = CommandsExecutor.of(dslContext).executeUpdates(table, ImmutableList.of(command2));
+
+        assertThat(affectedRows.getUpdated(), is(1));
+        Map<String, Object> actualValues1 = dslContext.select(table.field1, table.field2).from(table).where(table.id.eq(1)).fetchOneMap();
+        assertThat(actualValues1, Matchers.<Map<String, Object>>is(ImmutableMap.<String, Object>of(table.field1.getName(), "Alpha-1", table.field2.getName(), 100)));
+        Map<String, Object> actualValues2 = dslContext.select(table.field1, table.field2).from(table).where(table.id.eq(2)).fetchOneMap();
+        assertThat(actualValues2, Matchers.<Map<String, Object>>is(ImmutableMap.<String, Object>of(table.field1.getName(), "Bravo-2", table.field2.getName(), 200)));
+    }
+
+    @Test
+    public void updatesAreSplitToBatchesByMaxRows() {
+        List<TestUpdateRecordCommand> commands = ImmutableList.of(1, 2, 3, 4).stream().map(id -> {
+            TestUpdateRecordCommand command = new TestUpdateRecordCommand(id);
+            command.set(table.field2, id * 100);
+            return command;
+        }).collect(toList());
+        CommandsExecutor chunkingExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withMaxRowsPerBatch(3)
+                .build());
+
+        AffectedRows affectedRows = chunkingExecutor.executeUpdates(table, commands);
+
+        assertThat(affectedRows.getUpdated(), is(4));
+        assertThat(affectedRows.getChunks(), is(2));
+        List<Integer> actualValues = dslContext.select(table.field2).from(table).orderBy(table.id).fetch(table.field2);
+        assertThat(actualValues, is(ImmutableList.of(100, 200, 300, 400)));
+    }
+
+    @Test
+    public void insertsAreSplitToBatchesByMaxBytes() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.field1, RandomStringUtils.randomAlphanumeric(40)),
+                new TestCreateRecordCommand().with(table.field1, RandomStringUtils.randomAlphanumeric(40)),
+                new TestCreateRecordCommand().with(table.field1, RandomStringUtils.randomAlphanumeric(40)));
+        CommandsExecutor chunkingExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withMaxBytesPerBatch(100)
+                .build());
+
+        AffectedRows affectedRows = chunkingExecutor.executeInserts(table, commands);
+
+        assertThat(affectedRows.getInserted(), is(3));
+        assertThat(affectedRows.getChunks(), is(2));
+        assertThat(valuesOf(commands, table.id), not(hasItem(nullValue())));
+    }
+
+    @Test
+    public void updatesAboveThresholdAreAppliedByTempTable() {
+        TestUpdateRecordCommand command1 = new TestUpdateRecordCommand(1);
+        command1.set(table.field1, "Alpha-1");
+        command1.set(table.field2, 100);
+        TestUpdateRecordCommand command2 = new TestUpdateRecordCommand(2);
+        command2.set(table.field1, "Bravo-2");
+        command2.set(table.field2, 200);
+        TestUpdateRecordCommand command3 = new TestUpdateRecordCommand(5);
+        command3.set(table.field1, "Echo-5");
+        command3.set(table.field2, 500);
+        CommandsExecutor tempTableExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withTempTableUpdateThreshold(2)
+                .build());
+
+        AffectedRows affectedRows = tempTableExecutor.executeUpdates(table, ImmutableList.of(command1, command2, command3));
+
+        assertThat(affectedRows.getUpdated(), is(2));
+        Map<Integer, String> actualValues = dslContext.select(table.id, table.field1).from(table).fetchMap(table.id, table.field1);
+        assertThat(actualValues, Matchers.<Map<Integer, String>>is(ImmutableMap.of(1, "Alpha-1", 2, "Bravo-2", 3, "Charlie", 4, "Delta")));
+        List<Integer> actualField2 = dslContext.select(table.field2).from(table).orderBy(table.id).fetch(table.field2);
+        assertThat(actualField2, is(ImmutableList.of(100, 200, 30, 40)));
+    }
+
+    @Test
+    public void updatesOfDifferentValuesAreAppliedByCaseStatements() {
+        TestUpdateRecordCommand command1 = new TestUpdateRecordCommand(1);
+        command1.set(table.field1, "Alpha-1");
+        command1.set(table.field2, 100);
+        TestUpdateRecordCommand command2 = new TestUpdateRecordCommand(2);
+        command2.set(table.field1, "Bravo-2");
+        command2.set(table.field2, null);
+        TestUpdateRecordCommand command3 = new TestUpdateRecordCommand(5);
+        command3.set(table.field1, "Echo-5");
+        command3.set(table.field2, 500);
+        TestUpdateRecordCommand command4 = new TestUpdateRecordCommand(4);
+        command4.set(table.field1, "Delta-4");
+        command4.set(table.field2, 400);
+        CommandsExecutor caseExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withUpdateStrategy(CommandsExecutorConfig.UpdateStrategy.CASE_WHEN)
+                .withMaxRowsPerStatement(3)
+                .build());
+
+        AffectedRows affectedRows = caseExecutor.executeUpdates(table, ImmutableList.of(command1, command2, command3, command4));
+
+        assertThat(affectedRows.getUpdated(), is(3));
+        Map<Integer, String> actualValues = dslContext.select(table.id, table.field1).from(table).fetchMap(table.id, table.field1);
+        assertThat(actualValues, Matchers.<Map<Integer, String>>is(ImmutableMap.of(1, "Alpha-1", 2, "Bravo-2", 3, "Charlie", 4, "Delta-4")));
+        List<Integer> actualField2 = dslContext.select(table.field2).from(table).orderBy(table.id).fetch(table.field2);
+        assertThat(actualField2, is(Arrays.asList(100, null, 30, 400)));
+    }
+
+    @Test
+    public void expressionsAreAppliedToCurrentValues() {
+        TestUpdateRecordCommand command1 = new TestUpdateRecordCommand(1);
+        command1.setExpression(table.field2, new ColumnExpression<>(ColumnExpression.Operator.ADD, 5));
+        TestUpdateRecordCommand command2 = new TestUpdateRecordCommand(2);
+        command2.setExpression(table.field2, new ColumnExpression<>(ColumnExpression.Operator.ADD, -5));
+        TestUpdateRecordCommand command3 = new TestUpdateRecordCommand(3);
+        command3.set(table.field1, "Charlie-3");
+        command3.setExpression(table.field2, new ColumnExpression<>(ColumnExpression.Operator.GREATEST, 35));
+        TestUpdateRecordCommand command4 = new TestUpdateRecordCommand(4);
+        command4.setExpression(table.field1, new ColumnExpression<>(ColumnExpression.Operator.CONCAT, "-4"));
+
+        AffectedRows affectedRows = commandsExecutor.executeUpdates(table, ImmutableList.of(command1, command2, command3, command4));
+
+        assertThat(affectedRows.getUpdated(), is(4));
+        List<Integer> actualField2 = dslContext.select(table.field2).from(table).orderBy(table.id).fetch(table.field2);
+        assertThat(actualField2, is(Arrays.asList(15, 15, 35, 40)));
+        List<String> actualField1 = dslContext.select(table.field1).from(table).orderBy(table.id).fetch(table.field1);
+        assertThat(actualField1, is(Arrays.asList("Alpha", "Bravo", "Charlie-3", "Delta-4")));
+    }
+
+    @Test
+    public void expressionsAreAppliedByCaseStatements() {
+        List<TestUpdateRecordCommand> commands = ImmutableList.of(1, 2, 3, 4).stream().map(id -> {
+            TestUpdateRecordCommand command = new TestUpdateRecordCommand(id);
+            command.setExpression(table.field2, new ColumnExpression<>(ColumnExpression.Operator.ADD, id));
+            return command;
+        }).collect(toList());
+        CommandsExecutor caseExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withUpdateStrategy(CommandsExecutorConfig.UpdateStrategy.CASE_WHEN)
+                .build());
+
+        caseExecutor.executeUpdates(table, commands);
+
+        List<Integer> actualField2 = dslContext.select(table.field2).from(table).orderBy(table.id).fetch(table.field2);
+        assertThat(actualField2, is(Arrays.asList(11, 22, 33, 44)));
+    }
+
+    @Test
+    public void expressionsUpdateExistingRowsAndInsertTheirArgumentOnDuplicateKeyUpdate() {
+        TestCreateRecordCommand existing = new TestCreateRecordCommand().with(table.id, 1).with(table.field1, "Alpha");
+        existing.setExpression(table.field2, new ColumnExpression<>(ColumnExpression.Operator.ADD, 5));
+        TestCreateRecordCommand missing = new TestCreateRecordCommand().with(table.id, 5).with(table.field1, "Echo");
+        missing.setExpression(table.field2, new ColumnExpression<>(ColumnExpression.Operator.ADD, 5));
+
+        AffectedRows affectedRows = commandsExecutor.executeInsertsOnDuplicateKeyUpdate(table, ImmutableList.of(existing, missing));
+
+        assertThat(affectedRows.getInserted(), is(1));
+        assertThat(affectedRows.getUpdated(), is(1));
+        Map<Integer, Integer> actualValues = dslContext.select(table.id, table.field2).from(table).where(table.id.in(1, 5)).fetchMap(table.id, table.field2);
+        assertThat(actualValues, Matchers.<Map<Integer, Integer>>is(ImmutableMap.of(1, 15, 5, 5)));
+    }
+
+    @Test
+    public void expressionsAreAppliedOnDuplicateKeyUpdateOfMultiRowInserts() {
+        CommandsExecutor multiRowExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withInsertStrategy(CommandsExecutorConfig.InsertStrategy.MULTI_ROW_VALUES)
+                .build());
+        TestCreateRecordCommand existing = new TestCreateRecordCommand().with(table.id, 2).with(table.field1, "Bravo");
+        existing.setExpression(table.field2, new ColumnExpression<>(ColumnExpression.Operator.LEAST, 7));
+        TestCreateRecordCommand missing = new TestCreateRecordCommand().with(table.id, 6).with(table.field1, "Foxtrot");
+        missing.setExpression(table.field2, new ColumnExpression<>(ColumnExpression.Operator.LEAST, 7));
+
+        multiRowExecutor.executeInsertsOnDuplicateKeyUpdate(table, ImmutableList.of(existing, missing));
+
+        Map<Integer, Integer> actualValues = dslContext.select(table.id, table.field2).from(table).where(table.id.in(2, 6)).fetchMap(table.id, table.field2);
+        assertThat(actualValues, Matchers.<Map<Integer, Integer>>is(ImmutableMap.of(2, 7, 6, 7)));
+    }
+
     @Test
     public void oneInsert() {
         TestCreateRecordCommand command = new TestCreateRecordCommand();
@@ -273,6 +455,201 @@ public class CommandsExecutorTest {
         assertThat(actualValue, is("Alpha")); // old value
     }
 
+    @Test
+    public void multiRowInsertsRetrieveGeneratedIdsOfAllStatements() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.field1, "name_1"),
+                new TestCreateRecordCommand().with(table.field1, "name_2"),
+                new TestCreateRecordCommand().with(table.field1, "name_3"),
+                new TestCreateRecordCommand().with(table.field1, "name_4"),
+                new TestCreateRecordCommand().with(table.field1, "name_5")
+        );
+
+        AffectedRows affectedRows = multiRowCommandsExecutor().executeInserts(table, commands);
+        assertThat(affectedRows.getInserted(), is(5));
+
+        List<Integer> idsFromDbOrderedByName = dslContext.selectFrom(table).where(table.field1.in("name_1", "name_2", "name_3", "name_4", "name_5")).orderBy(table.field1).fetch(table.id);
+
+        assertThat(valuesOf(commands, table.id), is(idsFromDbOrderedByName));
+    }
+
+    @Test
+    public void generatedIdsAreComputedFromLastInsertIdOfAllStatements() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.field1, "name_1"),
+                new TestCreateRecordCommand().with(table.field1, "name_2"),
+                new TestCreateRecordCommand().with(table.field1, "name_3"),
+                new TestCreateRecordCommand().with(table.field1, "name_4"),
+                new TestCreateRecordCommand().with(table.field1, "name_5")
+        );
+
+        AffectedRows affectedRows = lastInsertIdCommandsExecutor(GeneratedKeysStrategy.LAST_INSERT_ID).executeInserts(table, commands);
+        assertThat(affectedRows.getInserted(), is(5));
+
+        List<Integer> idsFromDbOrderedByName = dslContext.selectFrom(table).where(table.field1.in("name_1", "name_2", "name_3", "name_4", "name_5")).orderBy(table.field1).fetch(table.id);
+
+        assertThat(valuesOf(commands, table.id), is(idsFromDbOrderedByName));
+    }
+
+    @Test
+    public void generatedIdsAreComputedFromLastInsertIdWhenDetected() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.field1, "name_1"),
+                new TestCreateRecordCommand().with(table.field1, "name_2"),
+                new TestCreateRecordCommand().with(table.field1, "name_3")
+        );
+
+        lastInsertIdCommandsExecutor(GeneratedKeysStrategy.DETECT).executeInserts(table, commands);
+
+        List<Integer> idsFromDbOrderedByName = dslContext.selectFrom(table).where(table.field1.in("name_1", "name_2", "name_3")).orderBy(table.field1).fetch(table.id);
+
+        assertThat(valuesOf(commands, table.id), is(idsFromDbOrderedByName));
+    }
+
+    @Test
+    public void lastInsertIdFallsBackToGeneratedKeysWhenSomeCommandsHaveIds() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.field1, "name_101").with(table.id, 101),
+                new TestCreateRecordCommand().with(table.field1, "name_102")
+        );
+
+        lastInsertIdCommandsExecutor(GeneratedKeysStrategy.LAST_INSERT_ID).executeInserts(table, commands);
+
+        Map<String, Integer> idsFromDb = dslContext.selectFrom(table).where(table.field1.in("name_101", "name_102")).fetchMap(table.field1, table.id);
+
+        assertThat(commands.get(0).get(table.id), is(101));
+        assertThat(commands.get(1).get(table.id), is(idsFromDb.get("name_102")));
+    }
+
+    @Test
+    public void multiRowInsertsWithExplicitIds() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.id, 5).with(table.field1, "Echo").with(table.field2, 50),
+                new TestCreateRecordCommand().with(table.id, 6).with(table.field2, 60).with(table.field1, "Foxtrot"),
+                new TestCreateRecordCommand().with(table.id, 7).with(table.field1, "Golf").with(table.field2, 70)
+        );
+
+        AffectedRows affectedRows = multiRowCommandsExecutor().executeInserts(table, commands);
+        assertThat(affectedRows.getInserted(), is(3));
+        assertThat(affectedRows.getUpdated(), is(0));
+
+        Map<Integer, String> actualValues = dslContext.select(table.id, table.field1).from(table).where(table.id.in(5, 6, 7)).fetchMap(table.id, table.field1);
+        assertThat(actualValues, Matchers.<Map<Integer, String>>is(ImmutableMap.of(5, "Echo", 6, "Foxtrot", 7, "Golf")));
+        assertThat(valuesOf(commands, table.id), is(ImmutableList.of(5, 6, 7)));
+    }
+
+    @Test
+    public void multiRowInsertsOnDuplicateKeyUpdate() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.id, 1).with(table.field1, "Alpha-1"),
+                new TestCreateRecordCommand().with(table.id, 5).with(table.field1, "Echo"),
+                new TestCreateRecordCommand().with(table.id, 2).with(table.field1, "Bravo-2")
+        );
+
+        AffectedRows affectedRows = multiRowCommandsExecutor().executeInsertsOnDuplicateKeyUpdate(table, commands);
+        assertThat(affectedRows.getInserted(), is(1));
+        assertThat(affectedRows.getUpdated(), is(2));
+
+        Map<Integer, String> actualValues = dslContext.select(table.id, table.field1).from(table).where(table.id.in(1, 2, 5)).fetchMap(table.id, table.field1);
+        assertThat(actualValues, Matchers.<Map<Integer, String>>is(ImmutableMap.of(1, "Alpha-1", 2, "Bravo-2", 5, "Echo")));
+        Integer field2OfUpdated = dslContext.select(table.field2).from(table).where(table.id.eq(1)).fetchOne(table.field2);
+        assertThat(field2OfUpdated, is(10));
+    }
+
+    @Test
+    public void singleRowUpsertsOfBatchAndMultiRowExecutorsDoNotShareStatements() {
+        multiRowCommandsExecutor().executeInsertsOnDuplicateKeyUpdate(table, ImmutableList.of(
+                new TestCreateRecordCommand().with(table.id, 1).with(table.field1, "Alpha-1")));
+
+        AffectedRows affectedRows = commandsExecutor.executeInsertsOnDuplicateKeyUpdate(table, ImmutableList.of(
+                new TestCreateRecordCommand().with(table.id, 1).with(table.field1, "Alpha-2")));
+
+        assertThat(affectedRows.getUpdated(), is(1));
+        String actualValue = dslContext.select(table.field1).from(table).where(table.id.eq(1)).fetchOne(table.field1, String.class);
+        assertThat(actualValue, is("Alpha-2"));
+    }
+
+    @Test
+    public void multiRowInsertsOnDuplicateKeyIgnore() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.id, 1).with(table.field1, "Alpha-1"),
+                new TestCreateRecordCommand().with(table.id, 5).with(table.field1, "Echo"),
+                new TestCreateRecordCommand().with(table.id, 6).with(table.field1, "Foxtrot")
+        );
+
+        AffectedRows affectedRows = multiRowCommandsExecutor().executeInsertsOnDuplicateKeyIgnore(table, commands);
+        assertThat(affectedRows.getInserted(), is(2));
+        assertThat(affectedRows.getUpdated(), is(0));
+
+        Map<Integer, String> actualValues = dslContext.select(table.id, table.field1).from(table).where(table.id.in(1, 5, 6)).fetchMap(table.id, table.field1);
+        assertThat(actualValues, Matchers.<Map<Integer, String>>is(ImmutableMap.of(1, "Alpha", 5, "Echo", 6, "Foxtrot")));
+    }
+
+    @Test
+    public void multiRowInsertsRespectBindValuesLimit() {
+        CommandsExecutor commandsExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withInsertStrategy(CommandsExecutorConfig.InsertStrategy.MULTI_ROW_VALUES)
+                .withMaxBindValuesPerStatement(3)
+                .build());
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.field1, "name_1").with(table.field2, 1),
+                new TestCreateRecordCommand().with(table.field1, "name_2").with(table.field2, 2),
+                new TestCreateRecordCommand().with(table.field1, "name_3").with(table.field2, 3)
+        );
+
+        AffectedRows affectedRows = commandsExecutor.executeInserts(table, commands);
+        assertThat(affectedRows.getInserted(), is(3));
+
+        List<Integer> idsFromDbOrderedByName = dslContext.selectFrom(table).where(table.field1.in("name_1", "name_2", "name_3")).orderBy(table.field1).fetch(table.id);
+        assertThat(valuesOf(commands, table.id), is(idsFromDbOrderedByName));
+    }
+
+    @Test
+    public void loadDataInsertsWithExplicitIds() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.id, 5).with(table.field1, "Echo\twith\\special\nchars").with(table.field2, 50),
+                new TestCreateRecordCommand().with(table.id, 6).with(table.field1, "Foxtrot").with(table.field2, null));
+
+        AffectedRows affectedRows = loadDataCommandsExecutor().executeInserts(table, commands);
+
+        assertThat(affectedRows.getInserted(), is(2));
+        Map<String, Object> actualValues1 = dslContext.select(table.field1, table.field2).from(table).where(table.id.eq(5)).fetchOneMap();
+        assertThat(actualValues1, Matchers.<Map<String, Object>>is(ImmutableMap.<String, Object>of(table.field1.getName(), "Echo\twith\\special\nchars", table.field2.getName(), 50)));
+        Map<String, Object> actualValues2 = dslContext.select(table.field1, table.field2).from(table).where(table.id.eq(6)).fetchOneMap();
+        assertThat(actualValues2.get(table.field1.getName()), is("Foxtrot"));
+        assertThat(actualValues2.get(table.field2.getName()), nullValue());
+    }
+
+    @Test
+    public void loadDataInsertsOnDuplicateKeyIgnore() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.id, 1).with(table.field1, "Alpha-1"),
+                new TestCreateRecordCommand().with(table.id, 5).with(table.field1, "Echo"));
+
+        AffectedRows affectedRows = loadDataCommandsExecutor().executeInsertsOnDuplicateKeyIgnore(table, commands);
+
+        assertThat(affectedRows.getInserted(), is(1));
+        Map<Integer, String> actualValues = dslContext.select(table.id, table.field1).from(table).where(table.id.in(1, 5)).fetchMap(table.id, table.field1);
+        assertThat(actualValues, Matchers.<Map<Integer, String>>is(ImmutableMap.of(1, "Alpha", 5, "Echo")));
+    }
+
+    @Test(expected = DataAccessException.class)
+    public void loadDataInsertOfDuplicateKeyFails() {
+        loadDataCommandsExecutor().executeInserts(table, ImmutableList.of(new TestCreateRecordCommand().with(table.id, 1).with(table.field1, "Alpha-1")));
+    }
+
+    @Test
+    public void loadDataFallsBackToBatchToRetrieveGeneratedIds() {
+        List<TestCreateRecordCommand> commands = ImmutableList.of(
+                new TestCreateRecordCommand().with(table.field1, "name_1"),
+                new TestCreateRecordCommand().with(table.field1, "name_2"));
+
+        loadDataCommandsExecutor().executeInserts(table, commands);
+
+        List<Integer> idsFromDbOrderedByName = dslContext.selectFrom(table).where(table.field1.in("name_1", "name_2")).orderBy(table.field1).fetch(table.id);
+        assertThat(valuesOf(commands, table.id), is(idsFromDbOrderedByName));
+    }
+
     @Test
     public void delete() {
         AffectedRows affectedRows = commandsExecutor.executeDeletes(table, ImmutableList.of(new TestDeleteRecordCommand(2), new TestDeleteRecordCommand(3), new TestDeleteRecordCommand(5)));
@@ -281,6 +658,74 @@ public class CommandsExecutorTest {
         assertThat(idsLeft, containsInAnyOrder(1, 4));
     }
 
+    @Test
+    public void deletesAreSplitByMaxRowsPerStatement() {
+        CommandsExecutor executor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withMaxRowsPerStatement(2)
+                .build());
+
+        AffectedRows affectedRows = executor.executeDeletes(table, ImmutableList.of(new TestDeleteRecordCommand(1), new TestDeleteRecordCommand(2), new TestDeleteRecordCommand(3)));
+
+        assertThat(affectedRows.getDeleted(), is(3));
+        List<Integer> idsLeft = dslContext.select(table.id).from(table).fetch(table.id);
+        assertThat(idsLeft, containsInAnyOrder(4));
+    }
+
+    @Test
+    public void deleteAboveThresholdByTempTable() {
+        CommandsExecutor executor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withTempTableDeleteThreshold(2)
+                .build());
+
+        AffectedRows affectedRows = executor.executeDeletes(table, ImmutableList.of(new TestDeleteRecordCommand(2), new TestDeleteRecordCommand(3), new TestDeleteRecordCommand(5)));
+
+        assertThat(affectedRows.getDeleted(), is(2));
+        List<Integer> idsLeft = dslContext.select(table.id).from(table).fetch(table.id);
+        assertThat(idsLeft, containsInAnyOrder(1, 4));
+    }
+
+    @Test
+    public void pipelineExecutesWritesInOrderAndCountsThemByTable() {
+        TestUpdateRecordCommand update = new TestUpdateRecordCommand(2);
+        update.set(table.field1, "Bravo-1");
+        TestCreateRecordCommand insert = new TestCreateRecordCommand().with(table.id, 5).with(table.field1, "Echo");
+
+        Map<String, AffectedRows> affectedRows = commandsExecutor.pipeline()
+                .deletes(table, ImmutableList.of(new TestDeleteRecordCommand(1), new TestDeleteRecordCommand(3)))
+                .inserts(table, ImmutableList.of(insert), CreateRecordCommand.OnDuplicateKey.FAIL)
+                .updates(table, ImmutableList.of(update))
+                .execute();
+
+        AffectedRows tableAffectedRows = affectedRows.get(table.getName());
+        assertThat(tableAffectedRows.getDeleted(), is(2));
+        assertThat(tableAffectedRows.getInserted(), is(1));
+        assertThat(tableAffectedRows.getUpdated(), is(1));
+        assertThat(tableAffectedRows.getChunks(), is(1));
+        Map<Integer, String> actualValues = dslContext.select(table.id, table.field1).from(table).fetchMap(table.id, table.field1);
+        assertThat(actualValues, Matchers.<Map<Integer, String>>is(ImmutableMap.of(2, "Bravo-1", 4, "Delta", 5, "Echo")));
+    }
+
+    @Test
+    public void pipelinedInsertsOnDuplicateKeyUpdate() {
+        TestCreateRecordCommand existing = new TestCreateRecordCommand().with(table.id, 1).with(table.field1, "Alpha-1");
+        TestCreateRecordCommand added = new TestCreateRecordCommand().with(table.id, 5).with(table.field1, "Echo");
+
+        Map<String, AffectedRows> affectedRows = commandsExecutor.pipeline()
+                .inserts(table, ImmutableList.of(existing, added), CreateRecordCommand.OnDuplicateKey.UPDATE)
+                .execute();
+
+        assertThat(affectedRows.get(table.getName()).getInserted(), is(1));
+        assertThat(affectedRows.get(table.getName()).getUpdated(), is(1));
+        Map<Integer, String> actualValues = dslContext.select(table.id, table.field1).from(table).where(table.id.in(1, 5)).fetchMap(table.id, table.field1);
+        assertThat(actualValues, Matchers.<Map<Integer, String>>is(ImmutableMap.of(1, "Alpha-1", 5, "Echo")));
+    }
+
+    @Test
+    public void insertsWithoutIdentityValuesNeedGeneratedKeys() {
+        assertThat(commandsExecutor.needsGeneratedKeys(table, ImmutableList.of(new TestCreateRecordCommand().with(table.id, 5))), is(false));
+        assertThat(commandsExecutor.needsGeneratedKeys(table, ImmutableList.of(new TestCreateRecordCommand().with(table.field1, "Echo"))), is(true));
+    }
+
     private static class TestTable extends AbstractDataTable<TestTable> {
 
         private final TableField<Record, Integer> id = createPKField("id", SQLDataType.INTEGER.identity(true));
@@ -324,6 +769,26 @@ public class CommandsExecutorTest {
         }
     }
 
+    private CommandsExecutor loadDataCommandsExecutor() {
+        return CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withInsertStrategy(CommandsExecutorConfig.InsertStrategy.LOAD_DATA)
+                .build());
+    }
+
+    private CommandsExecutor multiRowCommandsExecutor() {
+        return CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withInsertStrategy(CommandsExecutorConfig.InsertStrategy.MULTI_ROW_VALUES)
+                .withMaxRowsPerStatement(2)
+                .build());
+    }
+
+    private CommandsExecutor lastInsertIdCommandsExecutor(GeneratedKeysStrategy generatedKeysStrategy) {
+        return CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withGeneratedKeysStrategy(generatedKeysStrategy)
+                .withMaxRowsPerStatement(2)
+                .build());
+    }
+
     private List<Integer> valuesOf(List<TestCreateRecordCommand> commands, TableField<Record, Integer> field) {
         return commands.stream().map(cmd -> cmd.get(field)).collect(toList());
     }
@@ -61,6 +61,25 @@ public class VirtualPartitionTest {
         assertThat(otherPartitionValue, is("Charlie"));
     }
 
+    @Test
+    public void updateByTempTable() {
+        CommandsExecutor tempTableCommandsExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withTempTableUpdateThreshold(1)
+                .build());
+        TestUpdateRecordCommand command1 = new TestUpdateRecordCommand(1);
+        command1.set(table.field1, "Alpha-1");
+        TestUpdateRecordCommand command2 = new TestUpdateRecordCommand(2);
+        command2.set(table.field1, "Bravo-1");
+
+        AffectedRows affectedRows = tempTableCommandsExecutor.executeUpdates(table, ImmutableList.of(command1, command2));
+
+        assertThat(affectedRows.getUpdated(), is(2));
+        String actualValue = dslContext.select(table.field1).from(table).where(table.type.eq(1).and(table.id.eq(2))).fetchOneInto(String.class);
+        assertThat(actualValue, is("Bravo-1"));
+        String otherPartitionValue = dslContext.select(table.field1).from(table).where(table.type.eq(2).and(table.id.eq(1))).fetchOneInto(String.class);
+        assertThat(otherPartitionValue, is("Charlie"));
+    }
+
     @Test
     public void insert() {
         TestCreateRecordCommand command = new TestCreateRecordCommand();
@@ -72,6 +91,75 @@ public class VirtualPartitionTest {
         assertThat(actualValues, is("Echo"));
     }
 
+    @Test
+    public void multiRowInsert() {
+        CommandsExecutor multiRowCommandsExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withInsertStrategy(CommandsExecutorConfig.InsertStrategy.MULTI_ROW_VALUES)
+                .build());
+        TestCreateRecordCommand command1 = new TestCreateRecordCommand();
+        command1.set(table.id, 3);
+        command1.set(table.field1, "Echo");
+        TestCreateRecordCommand command2 = new TestCreateRecordCommand();
+        command2.set(table.id, 4);
+        command2.set(table.field1, "Foxtrot");
+        multiRowCommandsExecutor.executeInserts(table, ImmutableList.of(command1, command2));
+
+        Collection<String> actualValues = dslContext.select(table.field1).from(table).where(table.type.eq(1).and(table.id.in(3, 4))).orderBy(table.id).fetchInto(String.class);
+        assertThat(actualValues, is(ImmutableList.of("Echo", "Foxtrot")));
+    }
+
+    @Test
+    public void loadDataInsert() {
+        CommandsExecutor loadDataCommandsExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withInsertStrategy(CommandsExecutorConfig.InsertStrategy.LOAD_DATA)
+                .build());
+        TestCreateRecordCommand command1 = new TestCreateRecordCommand();
+        command1.set(table.id, 3);
+        command1.set(table.field1, "Echo");
+        TestCreateRecordCommand command2 = new TestCreateRecordCommand();
+        command2.set(table.id, 4);
+        command2.set(table.field1, "Foxtrot");
+
+        AffectedRows affectedRows = loadDataCommandsExecutor.executeInserts(table, ImmutableList.of(command1, command2));
+
+        assertThat(affectedRows.getInserted(), is(2));
+        Collection<String> actualValues = dslContext.select(table.field1).from(table).where(table.type.eq(1).and(table.id.in(3, 4))).orderBy(table.id).fetchInto(String.class);
+        assertThat(actualValues, is(ImmutableList.of("Echo", "Foxtrot")));
+    }
+
+    @Test
+    public void delete() {
+        AffectedRows affectedRows = commandsExecutor.executeDeletes(table, ImmutableList.of(new TestDeleteRecordCommand(1), new TestDeleteRecordCommand(3)));
+
+        assertThat(affectedRows.getDeleted(), is(1));
+        Collection<String> valuesLeft = dslContext.select(table.field1).from(table).orderBy(table.field1).fetchInto(String.class);
+        assertThat(valuesLeft, is(ImmutableList.of("Bravo", "Charlie", "Delta")));
+    }
+
+    @Test
+    public void deleteByTempTable() {
+        CommandsExecutor tempTableCommandsExecutor = CommandsExecutor.of(dslContext, new CommandsExecutorConfig.Builder()
+                .withTempTableDeleteThreshold(1)
+                .build());
+
+        AffectedRows affectedRows = tempTableCommandsExecutor.executeDeletes(table, ImmutableList.of(new TestDeleteRecordCommand(1), new TestDeleteRecordCommand(3)));
+
+        assertThat(affectedRows.getDeleted(), is(1));
+        Collection<String> valuesLeft = dslContext.select(table.field1).from(table).orderBy(table.field1).fetchInto(String.class);
+        assertThat(valuesLeft, is(ImmutableList.of("Bravo", "Charlie", "Delta")));
+    }
+
+    @Test
+    public void deleteByCompositeKey() {
+        AffectedRows affectedRows = commandsExecutor.executeDeletes(table, ImmutableList.of(
+                new DeleteRecordCommand(table, new DatabaseId(new TableField[]{table.type, table.id}, new Object[]{1, 2})),
+                new DeleteRecordCommand(table, new DatabaseId(new TableField[]{table.type, table.id}, new Object[]{2, 1}))));
+
+        assertThat(affectedRows.getDeleted(), is(1));
+        Collection<String> valuesLeft = dslContext.select(table.field1).from(table).orderBy(table.field1).fetchInto(String.class);
+        assertThat(valuesLeft, is(ImmutableList.of("Alpha", "Charlie", "Delta")));
+    }
+
     private static class TestTable extends AbstractDataTable<TestTable> {
 
         private final TableField<Record, Integer> type = createPKField("type", SQLDataType.INTEGER);
@@ -103,6 +191,12 @@ public class VirtualPartitionTest {
         }
     }
 
+    private class TestDeleteRecordCommand extends DeleteRecordCommand {
+        public TestDeleteRecordCommand(int id) {
+            super(table, new DatabaseId(new TableField[]{table.id}, new Object[]{id}));
+        }
+    }
+
     private class TestCreateRecordCommand extends CreateRecordCommand {
         public TestCreateRecordCommand() {
             super(table);
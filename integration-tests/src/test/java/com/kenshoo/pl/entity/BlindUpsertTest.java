@@ -0,0 +1,150 @@
+package com.kenshoo.pl.entity;
+
+import com.kenshoo.jooq.DataTableUtils;
+import com.kenshoo.jooq.TestJooqConfig;
+import com.kenshoo.pl.data.AffectedRows;
+import com.kenshoo.pl.entity.spi.PostFetchCommandEnricher;
+import com.kenshoo.pl.one2many.relatedByPK.ParentEntity;
+import com.kenshoo.pl.one2many.relatedByPK.ParentTable;
+import org.jooq.DSLContext;
+import org.jooq.ExecuteContext;
+import org.jooq.impl.DefaultExecuteListener;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.jooq.impl.DSL;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BlindUpsertTest {
+
+    private static final ParentTable PARENT = ParentTable.INSTANCE;
+
+    private static boolean tablesCreated;
+    private static DSLContext staticDSLContext;
+
+    private final List<String> selects = new ArrayList<>();
+    private final DSLContext dslContext = DSL.using(TestJooqConfig.create().configuration().derive(new DefaultExecuteListenerProvider(new DefaultExecuteListener() {
+        @Override
+        public void executeStart(ExecuteContext ctx) {
+            if (ctx.sql() != null && ctx.sql().trim().toLowerCase().startsWith("select")) {
+                selects.add(ctx.sql());
+            }
+        }
+    })));
+    private final PLContext plContext = new PLContext.Builder(dslContext).build();
+    private final PersistenceLayer<ParentEntity> persistenceLayer = new PersistenceLayer<>(plContext);
+
+    @Before
+    public void setup() {
+        if (!tablesCreated) {
+            staticDSLContext = dslContext;
+            DataTableUtils.createTable(dslContext, PARENT);
+            tablesCreated = true;
+        }
+        dslContext.insertInto(PARENT, PARENT.id, PARENT.name).values(1, "old name").execute();
+        selects.clear();
+    }
+
+    @After
+    public void tearDown() {
+        dslContext.deleteFrom(PARENT).execute();
+    }
+
+    @AfterClass
+    public static void dropTables() {
+        staticDSLContext.dropTableIfExists(PARENT).execute();
+    }
+
+    @Test
+    public void blind_upserts_insert_and_update_without_fetching() {
+        ChangeFlowConfig<ParentEntity> flow = flow().withoutFalseUpdatesPurger().withBlindUpserts().build();
+
+        InsertOnDuplicateUpdateResult<ParentEntity, ParentEntity.Key> result = persistenceLayer.upsert(asList(upsert(1, "new name"), upsert(2, "other name")), flow);
+
+        assertThat(result.hasErrors(), is(false));
+        assertThat(selects, is(empty()));
+        AffectedRows affectedRows = result.getStats().getAffectedRowsOf(PARENT.getName());
+        assertThat(affectedRows.getInserted(), is(1));
+        assertThat(affectedRows.getUpdated(), is(1));
+        Map<Integer, String> names = dslContext.select(PARENT.id, PARENT.name).from(PARENT).fetchMap(PARENT.id, PARENT.name);
+        assertThat(names.get(1), is("new name"));
+        assertThat(names.get(2), is("other name"));
+    }
+
+    @Test
+    public void upserts_fetch_when_a_component_needs_the_current_state() {
+        ChangeFlowConfig<ParentEntity> flow = flow().withBlindUpserts().build();
+
+        InsertOnDuplicateUpdateResult<ParentEntity, ParentEntity.Key> result = persistenceLayer.upsert(asList(upsert(1, "new name"), upsert(2, "other name")), flow);
+
+        assertThat(result.hasErrors(), is(false));
+        assertThat(selects, is(not(empty())));
+        Map<Integer, String> names = dslContext.select(PARENT.id, PARENT.name).from(PARENT).fetchMap(PARENT.id, PARENT.name);
+        assertThat(names.get(1), is("new name"));
+        assertThat(names.get(2), is("other name"));
+    }
+
+    @Test
+    public void upserts_fetch_when_the_flow_enriches_creations_only() {
+        ChangeFlowConfig<ParentEntity> flow = flow().withoutFalseUpdatesPurger().withBlindUpserts().withPostFetchCommandEnricher(new DefaultEnumEnricher()).build();
+
+        InsertOnDuplicateUpdateResult<ParentEntity, ParentEntity.Key> result = persistenceLayer.upsert(asList(upsert(1, "new name"), upsert(2, "other name")), flow);
+
+        assertThat(result.hasErrors(), is(false));
+        assertThat(selects, is(not(empty())));
+        Map<Integer, String> enums = dslContext.select(PARENT.id, PARENT.enum_field).from(PARENT).fetchMap(PARENT.id, PARENT.enum_field);
+        assertThat(enums.get(1), is(nullValue()));
+        assertThat(enums.get(2), is(TestEnum.Charlie.name()));
+    }
+
+    @Test
+    public void upserts_fetch_unless_the_flow_allows_blind_upserts() {
+        ChangeFlowConfig<ParentEntity> flow = flow().withoutFalseUpdatesPurger().build();
+
+        persistenceLayer.upsert(asList(upsert(1, "new name"), upsert(2, "other name")), flow);
+
+        assertThat(selects, is(not(empty())));
+    }
+
+    private static class DefaultEnumEnricher implements PostFetchCommandEnricher<ParentEntity> {
+
+        @Override
+        public void enrich(Collection<? extends ChangeEntityCommand<ParentEntity>> commands, ChangeOperation changeOperation, ChangeContext changeContext) {
+            commands.forEach(command -> command.set(ParentEntity.ENUM_FIELD, TestEnum.Charlie));
+        }
+
+        @Override
+        public Stream<EntityField<ParentEntity, ?>> fieldsToEnrich() {
+            return Stream.of(ParentEntity.ENUM_FIELD);
+        }
+
+        @Override
+        public SupportedChangeOperation getSupportedChangeOperation() {
+            return SupportedChangeOperation.CREATE;
+        }
+    }
+
+    private ChangeFlowConfig.Builder<ParentEntity> flow() {
+        return ChangeFlowConfigBuilderFactory.newInstance(plContext, ParentEntity.INSTANCE);
+    }
+
+    private InsertOnDuplicateUpdateCommand<ParentEntity, ParentEntity.Key> upsert(int id, String name) {
+        InsertOnDuplicateUpdateCommand<ParentEntity, ParentEntity.Key> command = new InsertOnDuplicateUpdateCommand<>(ParentEntity.INSTANCE, new ParentEntity.Key(id));
+        command.set(ParentEntity.NAME, name);
+        return command;
+    }
+}
@@ -0,0 +1,155 @@
+package com.kenshoo.pl.entity;
+
+import com.kenshoo.jooq.DataTableUtils;
+import com.kenshoo.jooq.TestJooqConfig;
+import com.kenshoo.pl.data.CommandsExecutorConfig;
+import com.kenshoo.pl.entity.spi.PersistenceLayerRetryer;
+import org.jooq.DSLContext;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ConditionalChangeTest {
+
+    private static final VersionedEntityTable TABLE = VersionedEntityTable.INSTANCE;
+
+    private static boolean tablesCreated;
+    private static DSLContext staticDSLContext;
+
+    private final DSLContext dslContext = TestJooqConfig.create();
+    private final PLContext plContext = new PLContext.Builder(dslContext)
+            .withCommandsExecutorConfig(new CommandsExecutorConfig.Builder().withConditionalKeyRange(3).build())
+            .build();
+    private final PersistenceLayer<VersionedEntity> persistenceLayer = new PersistenceLayer<>(plContext);
+    private final ChangeFlowConfig<VersionedEntity> flow = ChangeFlowConfigBuilderFactory.newInstance(plContext, VersionedEntity.INSTANCE).build();
+
+    @Before
+    public void setup() {
+        if (!tablesCreated) {
+            staticDSLContext = dslContext;
+            DataTableUtils.createTable(dslContext, TABLE);
+            tablesCreated = true;
+        }
+        dslContext.insertInto(TABLE, TABLE.id, TABLE.name, TABLE.version)
+                .values(1, "keep", 0L)
+                .values(2, "pause", 0L)
+                .values(3, "keep", 0L)
+                .values(5, "pause", 0L)
+                .values(8, "pause", 0L)
+                .execute();
+    }
+
+    @After
+    public void tearDown() {
+        dslContext.deleteFrom(TABLE).execute();
+    }
+
+    @AfterClass
+    public static void dropTables() {
+        staticDSLContext.dropTableIfExists(TABLE).execute();
+    }
+
+    @Test
+    public void updateWhere_sets_the_values_of_matching_entities_only() {
+        ConditionalUpdateCommand<VersionedEntity> command = new ConditionalUpdateCommand<>(VersionedEntity.INSTANCE, VersionedEntity.NAME.eq("pause"));
+        command.set(VersionedEntity.NAME, "paused");
+
+        PersistentLayerStats stats = persistenceLayer.updateWhere(command, flow);
+
+        assertThat(stats.getAffectedRowsOf(TABLE.getName()).getUpdated(), is(3));
+        assertThat(namesById(), contains("1:keep", "2:paused", "3:keep", "5:paused", "8:paused"));
+    }
+
+    @Test
+    public void updateWhere_is_split_into_ranges_of_matching_keys() {
+        ConditionalUpdateCommand<VersionedEntity> command = new ConditionalUpdateCommand<>(VersionedEntity.INSTANCE, VersionedEntity.ID.in(1, 2, 3, 5, 8));
+        command.set(VersionedEntity.NAME, "other");
+
+        PersistentLayerStats stats = persistenceLayer.updateWhere(command, flow);
+
+        // Ranges of 3 matching keys: [1, 3] and [5, 8]
+        assertThat(stats.getChunksOf(TABLE.getName()), is(2));
+        assertThat(stats.getAffectedRowsOf(TABLE.getName()).getUpdated(), is(5));
+    }
+
+    @Test
+    public void every_range_is_written_by_a_transaction_of_its_own_run_by_the_retryer() {
+        AtomicInteger transactions = new AtomicInteger();
+        ChangeFlowConfig<VersionedEntity> retriedFlow = ChangeFlowConfigBuilderFactory.newInstance(plContext, VersionedEntity.INSTANCE)
+                .withRetryer(action -> {
+                    transactions.incrementAndGet();
+                    PersistenceLayerRetryer.JUST_RUN_WITHOUT_CHECKING_DEADLOCKS.run(action);
+                })
+                .build();
+        ConditionalUpdateCommand<VersionedEntity> command = new ConditionalUpdateCommand<>(VersionedEntity.INSTANCE, VersionedEntity.ID.in(1, 2, 3, 5, 8));
+        command.set(VersionedEntity.NAME, "other");
+
+        persistenceLayer.updateWhere(command, retriedFlow);
+        persistenceLayer.deleteWhere(VersionedEntity.ID.in(1, 2, 3, 5), retriedFlow);
+
+        assertThat(transactions.get(), is(4));
+        assertThat(namesById(), contains("8:other"));
+    }
+
+    @Test
+    public void updateWhere_does_not_split_sparse_matching_keys_by_the_gaps_between_them() {
+        ConditionalUpdateCommand<VersionedEntity> command = new ConditionalUpdateCommand<>(VersionedEntity.INSTANCE, VersionedEntity.NAME.eq("pause"));
+        command.set(VersionedEntity.NAME, "paused");
+
+        PersistentLayerStats stats = persistenceLayer.updateWhere(command, flow);
+
+        // Keys 2, 5 and 8 fill a single range of 3 matching keys
+        assertThat(stats.getChunksOf(TABLE.getName()), is(1));
+    }
+
+    @Test
+    public void updateWhere_increments_the_version() {
+        ConditionalUpdateCommand<VersionedEntity> command = new ConditionalUpdateCommand<>(VersionedEntity.INSTANCE, VersionedEntity.ID.in(1, 2));
+        command.set(VersionedEntity.NAME, "other");
+
+        persistenceLayer.updateWhere(command, flow);
+
+        assertThat(dslContext.select(TABLE.version).from(TABLE).orderBy(TABLE.id).fetch(TABLE.version), contains(1L, 1L, 0L, 0L, 0L));
+    }
+
+    @Test
+    public void updateWhere_sets_expressions() {
+        ConditionalUpdateCommand<VersionedEntity> command = new ConditionalUpdateCommand<>(VersionedEntity.INSTANCE, VersionedEntity.NAME.eq("keep"));
+        command.set(VersionedEntity.NAME, FieldExpression.append("er"));
+
+        persistenceLayer.updateWhere(command, flow);
+
+        assertThat(namesById(), contains("1:keeper", "2:pause", "3:keeper", "5:pause", "8:pause"));
+    }
+
+    @Test
+    public void updateWhere_matching_nothing_executes_no_update() {
+        ConditionalUpdateCommand<VersionedEntity> command = new ConditionalUpdateCommand<>(VersionedEntity.INSTANCE, VersionedEntity.NAME.eq("none"));
+        command.set(VersionedEntity.NAME, "other");
+
+        PersistentLayerStats stats = persistenceLayer.updateWhere(command, flow);
+
+        assertThat(stats.getAffectedRowsOf(TABLE.getName()).getUpdated(), is(0));
+        assertThat(stats.getChunksOf(TABLE.getName()), is(0));
+    }
+
+    @Test
+    public void deleteWhere_deletes_matching_entities_only() {
+        PersistentLayerStats stats = persistenceLayer.deleteWhere(VersionedEntity.NAME.eq("pause"), flow);
+
+        assertThat(stats.getAffectedRowsOf(TABLE.getName()).getDeleted(), is(3));
+        assertThat(namesById(), contains("1:keep", "3:keep"));
+    }
+
+    private List<String> namesById() {
+        return dslContext.select(TABLE.id, TABLE.name).from(TABLE).orderBy(TABLE.id).fetch(record -> record.value1() + ":" + record.value2());
+    }
+}
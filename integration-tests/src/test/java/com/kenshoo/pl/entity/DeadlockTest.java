@@ -24,6 +24,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.*;
@@ -97,6 +98,19 @@ public class DeadlockTest {
         assertNull(exception.get());
     }
 
+    @Test
+    public void noDeadlockWithAdaptiveRetries() throws InterruptedException {
+        AdaptiveDeadlockRetryer dataBaseRetryer = new AdaptiveDeadlockRetryer(new MySqlDeadlockDetector(), () -> false)
+                .setMaxRetries(2)
+                .setMinBaseDelayMillis(20)
+                .setMaxBaseDelayMillis(50)
+                .setMaxDelayMillis(200);
+        PLContext plContext = new PLContext.Builder(dslContext).withRetryer(dataBaseRetryer).build();
+        AtomicReference<Exception> exception = runTwoLockingThreads(plContext);
+        assertNull(exception.get());
+        assertThat(dataBaseRetryer.getConflictRate(entityType.getPrimaryTable()), is(greaterThan(0.0)));
+    }
+
     private AtomicReference<Exception> runTwoLockingThreads(PLContext plContext) throws InterruptedException {
         ExecutorService executorService = Executors.newFixedThreadPool(2);
         CyclicBarrier barrier = new CyclicBarrier(2);
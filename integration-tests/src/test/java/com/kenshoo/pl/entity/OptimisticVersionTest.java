@@ -0,0 +1,138 @@
+package com.kenshoo.pl.entity;
+
+import com.kenshoo.jooq.DataTableUtils;
+import com.kenshoo.jooq.TestJooqConfig;
+import com.kenshoo.pl.entity.internal.Errors;
+import org.jooq.DSLContext;
+import org.jooq.Record2;
+import org.jooq.lambda.Seq;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class OptimisticVersionTest {
+
+    private static final VersionedEntityTable TABLE = VersionedEntityTable.INSTANCE;
+
+    private static boolean tablesCreated;
+    private static DSLContext staticDSLContext;
+
+    private final DSLContext dslContext = TestJooqConfig.create();
+    private final PLContext plContext = new PLContext.Builder(dslContext).build();
+    private final PersistenceLayer<VersionedEntity> persistenceLayer = new PersistenceLayer<>(plContext);
+
+    @Before
+    public void setup() {
+        if (!tablesCreated) {
+            staticDSLContext = dslContext;
+            DataTableUtils.createTable(dslContext, TABLE);
+            tablesCreated = true;
+        }
+        dslContext.insertInto(TABLE, TABLE.id, TABLE.name, TABLE.version)
+                .values(1, "one", 5L)
+                .values(2, "two", 7L)
+                .execute();
+    }
+
+    @After
+    public void tearDown() {
+        dslContext.deleteFrom(TABLE).execute();
+    }
+
+    @AfterClass
+    public static void dropTables() {
+        staticDSLContext.dropTableIfExists(TABLE).execute();
+    }
+
+    @Test
+    public void update_increments_the_version() {
+        UpdateResult<VersionedEntity, VersionedEntity.Key> result = persistenceLayer.update(singletonList(update(1, "new one")), flow());
+
+        assertThat(result.hasErrors(), is(false));
+        assertThat(fetch(1).value1(), is("new one"));
+        assertThat(fetch(1).value2(), is(6L));
+    }
+
+    @Test
+    public void update_based_on_the_current_version_is_applied() {
+        UpdateCommand command = update(1, "new one");
+        command.set(VersionedEntity.VERSION, 5L);
+
+        UpdateResult<VersionedEntity, VersionedEntity.Key> result = persistenceLayer.update(singletonList(command), flow());
+
+        assertThat(result.hasErrors(), is(false));
+        assertThat(fetch(1).value2(), is(6L));
+    }
+
+    @Test
+    public void update_based_on_a_stale_version_is_rejected_without_failing_the_others() {
+        UpdateCommand stale = update(1, "stale one");
+        stale.set(VersionedEntity.VERSION, 4L);
+        UpdateCommand current = update(2, "new two");
+
+        UpdateResult<VersionedEntity, VersionedEntity.Key> result = persistenceLayer.update(asList(stale, current), flow());
+
+        assertThat(errorCodesOf(result, stale), contains(Errors.VERSION_CONFLICT));
+        assertThat(result.hasErrors(current), is(false));
+        assertThat(fetch(1).value1(), is("one"));
+        assertThat(fetch(1).value2(), is(5L));
+        assertThat(fetch(2).value1(), is("new two"));
+        assertThat(fetch(2).value2(), is(8L));
+    }
+
+    @Test
+    public void update_changing_nothing_keeps_the_version() {
+        persistenceLayer.update(singletonList(update(1, "one")), flow());
+
+        assertThat(fetch(1).value2(), is(5L));
+    }
+
+    @Test
+    public void create_takes_the_version_given() {
+        CreateEntityCommand<VersionedEntity> command = new CreateEntityCommand<>(VersionedEntity.INSTANCE);
+        command.set(VersionedEntity.ID, 3);
+        command.set(VersionedEntity.NAME, "three");
+        command.set(VersionedEntity.VERSION, 1L);
+
+        persistenceLayer.create(singletonList(command), flow());
+
+        assertThat(fetch(3).value2(), is(1L));
+    }
+
+    private List<String> errorCodesOf(UpdateResult<VersionedEntity, VersionedEntity.Key> result, UpdateCommand command) {
+        return Seq.seq(result.iterator())
+                .filter(entityResult -> entityResult.getCommand() == command)
+                .flatMap(entityResult -> entityResult.getErrors().stream())
+                .map(ValidationError::getErrorCode)
+                .toList();
+    }
+
+    private ChangeFlowConfig<VersionedEntity> flow() {
+        return ChangeFlowConfigBuilderFactory.newInstance(plContext, VersionedEntity.INSTANCE).build();
+    }
+
+    private UpdateCommand update(int id, String name) {
+        UpdateCommand command = new UpdateCommand(id);
+        command.set(VersionedEntity.NAME, name);
+        return command;
+    }
+
+    private Record2<String, Long> fetch(int id) {
+        return dslContext.select(TABLE.name, TABLE.version).from(TABLE).where(TABLE.id.eq(id)).fetchOne();
+    }
+
+    private static class UpdateCommand extends UpdateEntityCommand<VersionedEntity, VersionedEntity.Key> {
+        UpdateCommand(int id) {
+            super(VersionedEntity.INSTANCE, new VersionedEntity.Key(id));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.kenshoo.pl.entity;
+
+import com.kenshoo.jooq.DataTableUtils;
+import com.kenshoo.jooq.TestJooqConfig;
+import com.kenshoo.pl.entity.internal.Errors;
+import com.kenshoo.pl.entity.spi.PostFetchCommandEnricher;
+import org.jooq.DSLContext;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.rangeClosed;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+public class PartitionedExecutionTest {
+
+    private static final VersionedEntityTable TABLE = VersionedEntityTable.INSTANCE;
+    private static final int ENTITIES = 100;
+
+    private static boolean tablesCreated;
+    private static DSLContext staticDSLContext;
+
+    private final DSLContext dslContext = TestJooqConfig.create();
+    private final PLContext plContext = new PLContext.Builder(dslContext).build();
+    private final PersistenceLayer<VersionedEntity> persistenceLayer = new PersistenceLayer<>(plContext);
+    private final ChangeFlowConfig<VersionedEntity> flow = ChangeFlowConfigBuilderFactory.newInstance(plContext, VersionedEntity.INSTANCE).build();
+    private final List<PartitionedExecution<VersionedEntity>> executions = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        if (!tablesCreated) {
+            staticDSLContext = dslContext;
+            DataTableUtils.createTable(dslContext, TABLE);
+            tablesCreated = true;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        executions.forEach(PartitionedExecution::close);
+        dslContext.deleteFrom(TABLE).execute();
+    }
+
+    @AfterClass
+    public static void dropTables() {
+        staticDSLContext.dropTableIfExists(TABLE).execute();
+    }
+
+    @Test
+    public void create_makes_the_changes_of_all_partitions() {
+        List<CreateEntityCommand<VersionedEntity>> commands = rangeClosed(1, ENTITIES).mapToObj(id -> createCommand(id, "name" + id)).collect(toList());
+
+        CreateResult<VersionedEntity, Identifier<VersionedEntity>> result = persistenceLayer.create(commands, flow,
+                partitioned(cmd -> cmd.get(VersionedEntity.ID) % 4, 3));
+
+        assertFalse(result.hasErrors());
+        assertThat(result.getStats().getAffectedRowsOf(TABLE.getName()).getInserted(), is(ENTITIES));
+        assertThat(dslContext.fetchCount(TABLE), is(ENTITIES));
+    }
+
+    @Test
+    public void results_follow_the_order_of_the_commands() {
+        List<CreateEntityCommand<VersionedEntity>> commands = rangeClosed(1, 10).mapToObj(id -> createCommand(id, "name" + id)).collect(toList());
+
+        CreateResult<VersionedEntity, Identifier<VersionedEntity>> result = persistenceLayer.create(commands, flow,
+                partitioned(cmd -> cmd.get(VersionedEntity.ID) % 2, 2));
+
+        assertThat(result.getChangeResults().stream().map(EntityChangeResult::getCommand).collect(toList()), is(commands));
+    }
+
+    @Test
+    public void partitions_are_made_by_concurrent_flows() {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        ChangeFlowConfig<VersionedEntity> recordingFlow = ChangeFlowConfigBuilderFactory.newInstance(plContext, VersionedEntity.INSTANCE)
+                .withPostFetchCommandEnricher((PostFetchCommandEnricher<VersionedEntity>) (cmds, operation, context) -> threads.add(Thread.currentThread().getName()))
+                .build();
+        List<CreateEntityCommand<VersionedEntity>> commands = rangeClosed(1, ENTITIES).mapToObj(id -> createCommand(id, "name" + id)).collect(toList());
+
+        persistenceLayer.create(commands, recordingFlow, partitioned(cmd -> cmd.get(VersionedEntity.ID) % 4, 4));
+
+        assertThat(threads.size(), is(greaterThan(1)));
+    }
+
+    @Test
+    public void upsert_merges_the_stats_of_all_partitions() {
+        persistenceLayer.create(rangeClosed(1, 10).mapToObj(id -> createCommand(id, "name" + id)).collect(toList()), flow);
+        List<InsertOnDuplicateUpdateCommand<VersionedEntity, VersionedEntity.Key>> commands = rangeClosed(1, 20).mapToObj(id -> upsertCommand(id, "new" + id)).collect(toList());
+
+        InsertOnDuplicateUpdateResult<VersionedEntity, VersionedEntity.Key> result = persistenceLayer.upsert(commands, flow,
+                partitioned(cmd -> cmd.getIdentifier().get(VersionedEntity.ID) % 3, 3));
+
+        assertFalse(result.hasErrors());
+        assertThat(result.getStats().getAffectedRowsOf(TABLE.getName()).getInserted(), is(10));
+        assertThat(result.getStats().getAffectedRowsOf(TABLE.getName()).getUpdated(), is(10));
+        assertThat(dslContext.select(TABLE.name).from(TABLE).fetch(TABLE.name), everyItem(startsWith("new")));
+    }
+
+    @Test
+    public void delete_deletes_the_entities_of_all_partitions() {
+        persistenceLayer.create(rangeClosed(1, 10).mapToObj(id -> createCommand(id, "name" + id)).collect(toList()), flow);
+        List<DeleteEntityCommand<VersionedEntity, VersionedEntity.Key>> commands = rangeClosed(1, 9)
+                .mapToObj(id -> new DeleteEntityCommand<>(VersionedEntity.INSTANCE, new VersionedEntity.Key(id)))
+                .collect(toList());
+
+        DeleteResult<VersionedEntity, VersionedEntity.Key> result = persistenceLayer.delete(commands, flow,
+                partitioned(cmd -> cmd.getIdentifier().get(VersionedEntity.ID) % 3, 2));
+
+        assertFalse(result.hasErrors());
+        assertThat(dslContext.select(TABLE.id).from(TABLE).fetch(TABLE.id), contains(10));
+    }
+
+    @Test
+    public void the_commands_of_a_failing_partition_get_errors_while_the_other_partitions_are_committed() {
+        dslContext.insertInto(TABLE, TABLE.id, TABLE.name, TABLE.version).values(4, "existing", 0L).execute();
+        List<CreateEntityCommand<VersionedEntity>> commands = rangeClosed(1, 6).mapToObj(id -> createCommand(id, "name" + id)).collect(toList());
+
+        CreateResult<VersionedEntity, Identifier<VersionedEntity>> result = persistenceLayer.create(commands, flow,
+                partitioned(cmd -> cmd.get(VersionedEntity.ID) % 2, 2));
+
+        assertThat(dslContext.select(TABLE.name).from(TABLE).orderBy(TABLE.id).fetch(TABLE.name), contains("name1", "name3", "existing", "name5"));
+        for (CreateEntityCommand<VersionedEntity> command : commands) {
+            boolean even = command.get(VersionedEntity.ID) % 2 == 0;
+            assertThat(result.hasErrors(command), is(even));
+        }
+        assertThat(result.getErrors(commands.get(1)).iterator().next().getErrorCode(), is(Errors.WRITE_FAILED));
+        assertThat(result.getStats().getAffectedRowsOf(TABLE.getName()).getInserted(), is(3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void a_change_is_not_partitioned_within_an_active_transaction() {
+        PartitionedExecution<VersionedEntity> partitioning = new PartitionedExecution<>(cmd -> cmd.get(VersionedEntity.ID) % 2, 2, () -> true);
+        executions.add(partitioning);
+
+        persistenceLayer.create(rangeClosed(1, 4).mapToObj(id -> createCommand(id, "name" + id)).collect(toList()), flow, partitioning);
+    }
+
+    private PartitionedExecution<VersionedEntity> partitioned(Function<? super ChangeEntityCommand<VersionedEntity>, ?> partitionKey, int parallelism) {
+        PartitionedExecution<VersionedEntity> partitioning = new PartitionedExecution<>(partitionKey, parallelism, () -> false);
+        executions.add(partitioning);
+        return partitioning;
+    }
+
+    private CreateEntityCommand<VersionedEntity> createCommand(int id, String name) {
+        CreateEntityCommand<VersionedEntity> command = new CreateEntityCommand<>(VersionedEntity.INSTANCE);
+        command.set(VersionedEntity.ID, id);
+        command.set(VersionedEntity.NAME, name);
+        command.set(VersionedEntity.VERSION, 0L);
+        return command;
+    }
+
+    private InsertOnDuplicateUpdateCommand<VersionedEntity, VersionedEntity.Key> upsertCommand(int id, String name) {
+        InsertOnDuplicateUpdateCommand<VersionedEntity, VersionedEntity.Key> command = new InsertOnDuplicateUpdateCommand<>(VersionedEntity.INSTANCE, new VersionedEntity.Key(id));
+        command.set(VersionedEntity.NAME, name);
+        return command;
+    }
+}
@@ -25,6 +25,7 @@ import org.junit.Test;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
@@ -33,6 +34,7 @@ import static com.kenshoo.pl.entity.spi.FieldValueSupplier.fromOldValue;
 import static com.kenshoo.pl.entity.spi.FieldValueSupplier.fromValues;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singleton;
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.Matchers.*;
@@ -386,6 +388,146 @@ public class PersistenceLayerTest {
     }
 
 
+    @Test
+    public void expressionIsAppliedByTheDatabase() {
+        UpdateTestCommand command1 = new UpdateTestCommand(ID_1);
+        command1.set(EntityForTest.FIELD2, FieldExpression.increment(10));
+        UpdateTestCommand command2 = new UpdateTestCommand(ID_2);
+        command2.set(EntityForTest.FIELD1, TestEnum.Alpha);
+        command2.set(EntityForTest.FIELD2, FieldExpression.increment(-5));
+
+        persistenceLayer.update(asList(command1, command2), changeFlowConfig().build());
+
+        assertThat(fetchField(ID_1, mainTable.field2), is(FIELD2_1_ORIGINAL_VALUE + 10));
+        assertThat(fetchField(ID_2, mainTable.field2), is(FIELD2_2_ORIGINAL_VALUE - 5));
+    }
+
+    @Test
+    public void coalescedUpdatesOfTheSameEntityAreWrittenOnce() {
+        UpdateTestCommand command1 = createChangeCommand(ID_1, TestEnum.Zeta, 100);
+        UpdateTestCommand command2 = new UpdateTestCommand(ID_1);
+        command2.set(EntityForTest.FIELD2, 200);
+        UpdateTestCommand command3 = createChangeCommand(ID_2, TestEnum.Alpha, 300);
+
+        UpdateResult<EntityForTest, EntityForTest.Key> updateResult = persistenceLayer.update(asList(command1, command2, command3), changeFlowConfig().withCommandsCoalescing().build());
+
+        assertThat(updateResult.hasErrors(), is(false));
+        assertThat(updateResult.getStats().getAffectedRowsOf(mainTable.getName()).getUpdated(), is(2));
+        assertThat(fetchField(ID_1, mainTable.field2), is(200));
+        assertThat(dslContext.select(mainTable.field1).from(mainTable).where(mainTable.id.eq(ID_1)).fetchOne(mainTable.field1), is(TestEnum.Zeta.name()));
+        assertThat(fetchField(ID_2, mainTable.field2), is(300));
+    }
+
+    @Test
+    public void coalescedUpdatesAreMergedByTheGivenMerger() {
+        UpdateTestCommand command1 = new UpdateTestCommand(ID_1);
+        command1.set(EntityForTest.FIELD2, FIELD2_1_ORIGINAL_VALUE + 1);
+        UpdateTestCommand command2 = new UpdateTestCommand(ID_1);
+        command2.set(EntityForTest.FIELD2, 2);
+        FieldValueMerger<EntityForTest> sumOfDeltas = (field, earlierValue, laterValue) -> (Integer) earlierValue + (Integer) laterValue;
+
+        persistenceLayer.update(asList(command1, command2), changeFlowConfig().withCommandsCoalescing(sumOfDeltas).build());
+
+        assertThat(fetchField(ID_1, mainTable.field2), is(FIELD2_1_ORIGINAL_VALUE + 3));
+    }
+
+    @Test
+    public void coalescedIncrementsAddUp() {
+        UpdateTestCommand command1 = new UpdateTestCommand(ID_1);
+        command1.set(EntityForTest.FIELD2, FieldExpression.increment(1));
+        UpdateTestCommand command2 = new UpdateTestCommand(ID_1);
+        command2.set(EntityForTest.FIELD2, FieldExpression.increment(1));
+
+        UpdateResult<EntityForTest, EntityForTest.Key> updateResult = persistenceLayer.update(asList(command1, command2), changeFlowConfig().withCommandsCoalescing().build());
+
+        assertThat(updateResult.hasErrors(), is(false));
+        assertThat(updateResult.getStats().getAffectedRowsOf(mainTable.getName()).getUpdated(), is(1));
+        assertThat(fetchField(ID_1, mainTable.field2), is(FIELD2_1_ORIGINAL_VALUE + 2));
+        assertThat(command1.getExpressionChanges().map(FieldExpressionChange::getExpression).collect(toList()), contains(FieldExpression.increment(1)));
+    }
+
+    @Test
+    public void coalescedIncrementIsAppliedToAnEarlierValue() {
+        UpdateTestCommand command1 = new UpdateTestCommand(ID_1);
+        command1.set(EntityForTest.FIELD2, 2);
+        UpdateTestCommand command2 = new UpdateTestCommand(ID_1);
+        command2.set(EntityForTest.FIELD2, FieldExpression.increment(1));
+
+        persistenceLayer.update(asList(command1, command2), changeFlowConfig().withCommandsCoalescing().build());
+
+        assertThat(fetchField(ID_1, mainTable.field2), is(3));
+        assertThat(command1.get(EntityForTest.FIELD2), is(2));
+    }
+
+    @Test
+    public void expressionsOfDifferentOperatorsAreNotCoalesced() {
+        UpdateTestCommand command1 = new UpdateTestCommand(ID_1);
+        command1.set(EntityForTest.FIELD2, FieldExpression.increment(5));
+        UpdateTestCommand command2 = new UpdateTestCommand(ID_1);
+        command2.set(EntityForTest.FIELD2, FieldExpression.greatest(FIELD2_1_ORIGINAL_VALUE + 2));
+
+        UpdateResult<EntityForTest, EntityForTest.Key> updateResult = persistenceLayer.update(asList(command1, command2), changeFlowConfig().withCommandsCoalescing().build());
+
+        assertThat(updateResult.hasErrors(), is(false));
+        assertThat(fetchField(ID_1, mainTable.field2), is(FIELD2_1_ORIGINAL_VALUE + 5));
+    }
+
+    @Test
+    public void aFailingSecondaryRecordUnderSavepointsFailsItsEntityButKeepsItsPrimaryRecord() {
+        PLContext savepointContext = new PLContext.Builder(dslContext)
+                .withCommandsExecutorConfig(new CommandsExecutorConfig.Builder().withSavepointChunkSize(10).build())
+                .build();
+        UpdateTestCommand failing = createChangeCommand(ID_1, TestEnum.Zeta, 100);
+        failing.set(URL, (String) null);
+        UpdateTestCommand succeeding = createChangeCommand(ID_2, TestEnum.Zeta, 200);
+        succeeding.set(URL, GOOGLE_URL);
+
+        UpdateResult<EntityForTest, EntityForTest.Key> updateResult = new PersistenceLayer<EntityForTest>(savepointContext)
+                .update(asList(failing, succeeding), ChangeFlowConfigBuilderFactory.newInstance(savepointContext, EntityForTest.INSTANCE).build());
+
+        assertThat(updateResult.getErrors(failing).iterator().next().getErrorCode(), is(Errors.WRITE_FAILED));
+        assertThat(updateResult.hasErrors(succeeding), is(false));
+        // Failures are isolated per record, so the primary table record of the failing entity stays written
+        assertThat(fetchField(ID_1, mainTable.field2), is(100));
+        assertThat(dslContext.select(secondaryTable.url).from(secondaryTable).where(secondaryTable.entityId.eq(ID_1)).fetchOne(secondaryTable.url), is(GOOGLE_URL));
+        assertThat(dslContext.select(secondaryTable.url).from(secondaryTable).where(secondaryTable.entityId.eq(ID_2)).fetchOne(secondaryTable.url), is(GOOGLE_URL));
+    }
+
+    @Test
+    public void aRetriedWriteDoesNotReportTheWriteErrorsOfTheAttemptsBeforeIt() {
+        UpdateTestCommand command = createChangeCommand(ID_1, TestEnum.Zeta, 100);
+        AtomicBoolean firstAttempt = new AtomicBoolean(true);
+        ChangeFlowConfig<EntityForTest> flow = changeFlowConfig()
+                .withOutputGenerator((changes, operation, context) -> {
+                    if (firstAttempt.getAndSet(false)) {
+                        changes.forEach(change -> context.addValidationError(change, new ValidationError(Errors.WRITE_FAILED)));
+                    }
+                })
+                .withRetryer(action -> {
+                    PersistenceLayerRetryer.JUST_RUN_WITHOUT_CHECKING_DEADLOCKS.run(action);
+                    PersistenceLayerRetryer.JUST_RUN_WITHOUT_CHECKING_DEADLOCKS.run(action);
+                })
+                .build();
+
+        UpdateResult<EntityForTest, EntityForTest.Key> updateResult = persistenceLayer.update(singleton(command), flow);
+
+        assertThat(updateResult.hasErrors(), is(false));
+        assertThat(fetchField(ID_1, mainTable.field2), is(100));
+    }
+
+    @Test
+    public void everyCoalescedCommandReportsTheErrorOfItsEntity() {
+        UpdateTestCommand command1 = new UpdateTestCommand(999);
+        command1.set(EntityForTest.FIELD2, 1);
+        UpdateTestCommand command2 = new UpdateTestCommand(999);
+        command2.set(EntityForTest.FIELD2, 2);
+
+        UpdateResult<EntityForTest, EntityForTest.Key> updateResult = persistenceLayer.update(asList(command1, command2), changeFlowConfig().withCommandsCoalescing().build());
+
+        assertThat(updateResult.hasErrors(command1), is(true));
+        assertThat(updateResult.hasErrors(command2), is(true));
+    }
+
     private ChangeFlowConfig.Builder<EntityForTest> changeFlowConfig() {
         return ChangeFlowConfigBuilderFactory.newInstance(plContext, EntityForTest.INSTANCE);
     }
@@ -906,6 +1048,14 @@ public class PersistenceLayerTest {
         assertThat(count, is(1));
     }
 
+    @Test
+    public void deleteWhere_deletes_the_rows_of_secondary_tables_along_with_the_entities() {
+        persistenceLayer.deleteWhere(EntityForTest.ID.eq(ID_1), changeFlowConfig().build());
+
+        assertThat(dslContext.select(mainTable.id).from(mainTable).fetch(mainTable.id), contains(ID_2));
+        assertThat(dslContext.select(secondaryTable.entityId).from(secondaryTable).fetch(secondaryTable.entityId), contains(ID_2));
+    }
+
     @Test
     public void tempTableTest() {
         int newId1 = 11;
@@ -988,6 +1138,25 @@ public class PersistenceLayerTest {
         assertThat(result.get(ID_1).value3(), is(20));
     }
 
+    @Test
+    public void coalescedUpsertsOfANewEntityCreateIt() {
+        int newId = 51;
+        InsertOnDuplicateUpdateTestCommand command1 = new InsertOnDuplicateUpdateTestCommand(newId);
+        command1.set(EntityForTest.FIELD1, TestEnum.Charlie);
+        command1.set(EntityForTest.PARENT_ID, PARENT_ID_1);
+        InsertOnDuplicateUpdateTestCommand command2 = new InsertOnDuplicateUpdateTestCommand(newId);
+        command2.set(EntityForTest.FIELD2, 7);
+
+        InsertOnDuplicateUpdateResult<EntityForTest, EntityForTest.Key> result = persistenceLayer.upsert(ImmutableList.of(command1, command2), changeFlowConfig().withCommandsCoalescing().build());
+
+        assertThat(result.hasErrors(), is(false));
+        assertThat(result.getStats().getAffectedRowsOf(mainTable.getName()).getInserted(), is(1));
+        assertThat(fetchField(newId, mainTable.field2), is(7));
+        assertThat(command1.getChangeOperation(), is(ChangeOperation.CREATE));
+        assertThat(command2.getChangeOperation(), is(ChangeOperation.CREATE));
+        assertThat(command1.containsField(EntityForTest.FIELD2), is(false));
+    }
+
     @Test
     public void insertOnDuplicateUpdateCreateNotExistMainTable() {
         int newId = 51;
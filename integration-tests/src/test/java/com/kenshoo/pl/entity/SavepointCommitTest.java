@@ -0,0 +1,133 @@
+package com.kenshoo.pl.entity;
+
+import com.google.common.collect.ImmutableList;
+import com.kenshoo.jooq.DataTableUtils;
+import com.kenshoo.jooq.TestJooqConfig;
+import com.kenshoo.pl.data.CommandsExecutorConfig;
+import com.kenshoo.pl.entity.internal.DbCommandsOutputGenerator;
+import com.kenshoo.pl.entity.internal.Errors;
+import org.jooq.DSLContext;
+import org.jooq.exception.DataAccessException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SavepointCommitTest {
+
+    private static final VersionedEntityTable TABLE = VersionedEntityTable.INSTANCE;
+
+    private static boolean tablesCreated;
+    private static DSLContext staticDSLContext;
+
+    private final DSLContext dslContext = TestJooqConfig.create();
+
+    @Before
+    public void setup() {
+        if (!tablesCreated) {
+            staticDSLContext = dslContext;
+            DataTableUtils.createTable(dslContext, TABLE);
+            tablesCreated = true;
+        }
+        dslContext.insertInto(TABLE, TABLE.id, TABLE.name, TABLE.version)
+                .values(3, "existing", 0L)
+                .execute();
+    }
+
+    @After
+    public void tearDown() {
+        dslContext.deleteFrom(TABLE).execute();
+    }
+
+    @AfterClass
+    public static void dropTables() {
+        staticDSLContext.dropTableIfExists(TABLE).execute();
+    }
+
+    @Test
+    public void failing_records_are_isolated_and_the_others_are_written() {
+        List<CreateEntityCommand<VersionedEntity>> commands = commands(1, 2, 3, 4, 5);
+
+        CreateResult<VersionedEntity, Identifier<VersionedEntity>> result = persistenceLayer(2).create(commands, flow(2));
+
+        assertThat(namesById(), contains("1:new", "2:new", "3:existing", "4:new", "5:new"));
+        assertTrue(result.hasErrors(commands.get(2)));
+        assertThat(result.getErrors(commands.get(2)).iterator().next().getErrorCode(), is(Errors.WRITE_FAILED));
+        assertFalse(result.hasErrors(commands.get(0)));
+        assertFalse(result.hasErrors(commands.get(4)));
+    }
+
+    @Test(expected = DataAccessException.class)
+    public void a_failing_record_fails_the_whole_commit_without_savepoints() {
+        try {
+            persistenceLayer(0).create(commands(1, 2, 3), flow(0));
+        } finally {
+            assertThat(namesById(), contains("3:existing"));
+        }
+    }
+
+    @Test
+    public void records_still_waiting_for_a_lock_after_the_retries_fail_together() throws Exception {
+        PLContext plContext = plContext(2);
+        ChangeFlowConfig<VersionedEntity> flow = ChangeFlowConfigBuilderFactory.newInstance(plContext, VersionedEntity.INSTANCE)
+                .withoutOutputGenerators()
+                .withOutputGenerator((changes, operation, context) -> plContext.dslContext().execute("SET SESSION innodb_lock_wait_timeout = 1"))
+                .withOutputGenerator(new DbCommandsOutputGenerator<>(VersionedEntity.INSTANCE, plContext))
+                .build();
+        List<CreateEntityCommand<VersionedEntity>> commands = commands(1, 2, 4, 5);
+
+        CreateResult<VersionedEntity, Identifier<VersionedEntity>> result;
+        try (Connection locker = TestJooqConfig.alwaysAllocatingNewConnections().acquire()) {
+            locker.setAutoCommit(false);
+            try (Statement statement = locker.createStatement()) {
+                statement.executeUpdate("INSERT INTO " + TABLE.getName() + " (id, name, version) VALUES (2, 'locker', 0)");
+            }
+            result = new PersistenceLayer<VersionedEntity>(plContext).create(commands, flow);
+            locker.rollback();
+        }
+
+        assertThat(namesById(), contains("3:existing", "4:new", "5:new"));
+        assertThat(result.getErrors(commands.get(0)).iterator().next().getErrorCode(), is(Errors.WRITE_FAILED));
+        assertThat(result.getErrors(commands.get(1)).iterator().next().getErrorCode(), is(Errors.WRITE_FAILED));
+        assertFalse(result.hasErrors(commands.get(2)));
+    }
+
+    private PLContext plContext(int savepointChunkSize) {
+        return new PLContext.Builder(dslContext)
+                .withCommandsExecutorConfig(new CommandsExecutorConfig.Builder().withSavepointChunkSize(savepointChunkSize).build())
+                .build();
+    }
+
+    private PersistenceLayer<VersionedEntity> persistenceLayer(int savepointChunkSize) {
+        return new PersistenceLayer<>(plContext(savepointChunkSize));
+    }
+
+    private ChangeFlowConfig<VersionedEntity> flow(int savepointChunkSize) {
+        return ChangeFlowConfigBuilderFactory.newInstance(plContext(savepointChunkSize), VersionedEntity.INSTANCE).build();
+    }
+
+    private List<CreateEntityCommand<VersionedEntity>> commands(int... ids) {
+        ImmutableList.Builder<CreateEntityCommand<VersionedEntity>> commands = ImmutableList.builder();
+        for (int id : ids) {
+            CreateEntityCommand<VersionedEntity> command = new CreateEntityCommand<>(VersionedEntity.INSTANCE);
+            command.set(VersionedEntity.ID, id);
+            command.set(VersionedEntity.NAME, "new");
+            commands.add(command);
+        }
+        return commands.build();
+    }
+
+    private List<String> namesById() {
+        return dslContext.select(TABLE.id, TABLE.name).from(TABLE).orderBy(TABLE.id).fetch(record -> record.value1() + ":" + record.value2());
+    }
+}
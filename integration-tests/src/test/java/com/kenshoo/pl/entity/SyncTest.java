@@ -0,0 +1,137 @@
+package com.kenshoo.pl.entity;
+
+import com.google.common.collect.ImmutableList;
+import com.kenshoo.jooq.DataTableUtils;
+import com.kenshoo.jooq.TestJooqConfig;
+import com.kenshoo.pl.data.AffectedRows;
+import com.kenshoo.pl.entity.internal.Errors;
+import org.jooq.DSLContext;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertFalse;
+
+public class SyncTest {
+
+    private static final VersionedEntityTable TABLE = VersionedEntityTable.INSTANCE;
+    private static final PLCondition SCOPE = VersionedEntity.ID.in(1, 2, 3, 5);
+
+    private static boolean tablesCreated;
+    private static DSLContext staticDSLContext;
+
+    private final DSLContext dslContext = TestJooqConfig.create();
+    private final PLContext plContext = new PLContext.Builder(dslContext).build();
+    private final PersistenceLayer<VersionedEntity> persistenceLayer = new PersistenceLayer<>(plContext);
+    private final ChangeFlowConfig<VersionedEntity> flow = ChangeFlowConfigBuilderFactory.newInstance(plContext, VersionedEntity.INSTANCE).build();
+
+    @Before
+    public void setup() {
+        if (!tablesCreated) {
+            staticDSLContext = dslContext;
+            DataTableUtils.createTable(dslContext, TABLE);
+            tablesCreated = true;
+        }
+        dslContext.insertInto(TABLE, TABLE.id, TABLE.name, TABLE.version)
+                .values(1, "one", 0L)
+                .values(2, "two", 0L)
+                .values(3, "three", 0L)
+                .values(5, "five", 0L)
+                .values(8, "eight", 0L)
+                .execute();
+    }
+
+    @After
+    public void tearDown() {
+        dslContext.deleteFrom(TABLE).execute();
+    }
+
+    @AfterClass
+    public static void dropTables() {
+        staticDSLContext.dropTableIfExists(TABLE).execute();
+    }
+
+    @Test
+    public void sync_creates_updates_and_deletes_the_entities_of_the_scope() {
+        SyncResult<VersionedEntity, VersionedEntity.Key> result = persistenceLayer.sync(SCOPE, ImmutableList.of(
+                command(1, "one"),
+                command(2, "second"),
+                command(4, "four")), flow);
+
+        assertFalse(result.hasErrors());
+        assertThat(namesById(), contains("1:one", "2:second", "4:four", "8:eight"));
+        AffectedRows affectedRows = result.getStats().getAffectedRowsOf(TABLE.getName());
+        assertThat(affectedRows.getInserted(), is(1));
+        assertThat(affectedRows.getUpdated(), is(1));
+        assertThat(affectedRows.getDeleted(), is(2));
+    }
+
+    @Test
+    public void sync_does_not_change_entities_with_the_desired_values() {
+        persistenceLayer.sync(SCOPE, ImmutableList.of(
+                command(1, "one"),
+                command(2, "second"),
+                command(3, "three"),
+                command(5, "five")), flow);
+
+        assertThat(versionsById(), contains("1:0", "2:1", "3:0", "5:0", "8:0"));
+    }
+
+    @Test
+    public void sync_reports_the_deletions_of_the_entities_missing_from_the_commands() {
+        SyncResult<VersionedEntity, VersionedEntity.Key> result = persistenceLayer.sync(SCOPE, ImmutableList.of(command(1, "one")), flow);
+
+        assertThat(result.getDeleteResults().getChangeResults().size(), is(3));
+        assertThat(namesById(), contains("1:one", "8:eight"));
+    }
+
+    @Test
+    public void sync_without_commands_deletes_the_whole_scope() {
+        persistenceLayer.sync(SCOPE, emptyList(), flow);
+
+        assertThat(namesById(), contains("8:eight"));
+    }
+
+    @Test
+    public void sync_does_not_change_entities_out_of_the_scope() {
+        InsertOnDuplicateUpdateCommand<VersionedEntity, VersionedEntity.Key> outOfScope = command(8, "changed");
+        List<InsertOnDuplicateUpdateCommand<VersionedEntity, VersionedEntity.Key>> commands = ImmutableList.of(command(1, "one"), command(2, "two"), command(3, "three"), command(5, "five"), outOfScope);
+
+        SyncResult<VersionedEntity, VersionedEntity.Key> result = persistenceLayer.sync(SCOPE, commands, flow);
+
+        assertThat(namesById(), contains("1:one", "2:two", "3:three", "5:five", "8:eight"));
+        assertThat(result.getErrors(outOfScope).iterator().next().getErrorCode(), is(Errors.ENTITY_OUT_OF_SCOPE));
+        assertFalse(result.hasErrors(commands.get(0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sync_rejects_commands_identified_by_different_keys() {
+        InsertOnDuplicateUpdateCommand<VersionedEntity, Identifier<VersionedEntity>> byName =
+                new InsertOnDuplicateUpdateCommand<>(VersionedEntity.INSTANCE, new SingleUniqueKey<>(VersionedEntity.NAME).createIdentifier("one"));
+        InsertOnDuplicateUpdateCommand<VersionedEntity, Identifier<VersionedEntity>> byId =
+                new InsertOnDuplicateUpdateCommand<>(VersionedEntity.INSTANCE, new VersionedEntity.Key(2));
+
+        persistenceLayer.sync(SCOPE, ImmutableList.of(byName, byId), flow);
+    }
+
+    private InsertOnDuplicateUpdateCommand<VersionedEntity, VersionedEntity.Key> command(int id, String name) {
+        InsertOnDuplicateUpdateCommand<VersionedEntity, VersionedEntity.Key> command = new InsertOnDuplicateUpdateCommand<>(VersionedEntity.INSTANCE, new VersionedEntity.Key(id));
+        command.set(VersionedEntity.NAME, name);
+        return command;
+    }
+
+    private List<String> namesById() {
+        return dslContext.select(TABLE.id, TABLE.name).from(TABLE).orderBy(TABLE.id).fetch(record -> record.value1() + ":" + record.value2());
+    }
+
+    private List<String> versionsById() {
+        return dslContext.select(TABLE.id, TABLE.version).from(TABLE).orderBy(TABLE.id).fetch(record -> record.value1() + ":" + record.value2());
+    }
+}
@@ -0,0 +1,173 @@
+package com.kenshoo.pl.entity;
+
+import com.google.common.collect.ImmutableList;
+import com.kenshoo.jooq.DataTableUtils;
+import com.kenshoo.jooq.TestJooqConfig;
+import org.jooq.DSLContext;
+import org.jooq.exception.DataAccessException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UnitOfWorkTest {
+
+    private static final VersionedEntityTable VERSIONED_TABLE = VersionedEntityTable.INSTANCE;
+    private static final EntityForTestParentTable PARENT_TABLE = EntityForTestParentTable.INSTANCE;
+
+    private static boolean tablesCreated;
+    private static DSLContext staticDSLContext;
+
+    private final DSLContext dslContext = TestJooqConfig.create();
+    private final PLContext plContext = new PLContext.Builder(dslContext).build();
+    private final ChangeFlowConfig<VersionedEntity> versionedFlow = ChangeFlowConfigBuilderFactory.newInstance(plContext, VersionedEntity.INSTANCE).build();
+    private final ChangeFlowConfig<EntityForTestParent> parentFlow = ChangeFlowConfigBuilderFactory.newInstance(plContext, EntityForTestParent.INSTANCE).build();
+
+    @Before
+    public void setup() {
+        if (!tablesCreated) {
+            staticDSLContext = dslContext;
+            DataTableUtils.createTable(dslContext, VERSIONED_TABLE);
+            DataTableUtils.createTable(dslContext, PARENT_TABLE);
+            tablesCreated = true;
+        }
+        dslContext.insertInto(VERSIONED_TABLE, VERSIONED_TABLE.id, VERSIONED_TABLE.name, VERSIONED_TABLE.version)
+                .values(1, "one", 0L)
+                .execute();
+    }
+
+    @After
+    public void tearDown() {
+        dslContext.deleteFrom(VERSIONED_TABLE).execute();
+        dslContext.deleteFrom(PARENT_TABLE).execute();
+    }
+
+    @AfterClass
+    public static void dropTables() {
+        staticDSLContext.dropTableIfExists(VERSIONED_TABLE).execute();
+        staticDSLContext.dropTableIfExists(PARENT_TABLE).execute();
+    }
+
+    @Test
+    public void flush_makes_the_changes_of_all_entity_types() {
+        UnitOfWork unitOfWork = plContext.unitOfWork();
+        UnitOfWork.Result<CreateResult<EntityForTestParent, Identifier<EntityForTestParent>>> parents =
+                unitOfWork.create(ImmutableList.of(createParent(1, "alpha"), createParent(2, "beta")), parentFlow);
+        UnitOfWork.Result<InsertOnDuplicateUpdateResult<VersionedEntity, VersionedEntity.Key>> versioned =
+                unitOfWork.upsert(ImmutableList.of(upsertVersioned(1, "first"), upsertVersioned(2, "second")), versionedFlow);
+
+        PersistentLayerStats stats = unitOfWork.flush();
+
+        assertFalse(parents.get().hasErrors());
+        assertFalse(versioned.get().hasErrors());
+        assertThat(parentNames(), contains("alpha", "beta"));
+        assertThat(versionedNames(), contains("first", "second"));
+        assertThat(stats.getAffectedRowsOf(PARENT_TABLE.getName()).getInserted(), is(2));
+        assertThat(stats.getAffectedRowsOf(VERSIONED_TABLE.getName()).getInserted(), is(1));
+        assertThat(stats.getAffectedRowsOf(VERSIONED_TABLE.getName()).getUpdated(), is(1));
+    }
+
+    @Test
+    public void a_failed_write_rolls_back_the_changes_of_all_entity_types() {
+        UnitOfWork unitOfWork = plContext.unitOfWork();
+        unitOfWork.create(ImmutableList.of(createParent(1, "alpha")), parentFlow);
+        unitOfWork.create(ImmutableList.of(createVersioned(1, "duplicate")), versionedFlow);
+
+        try {
+            unitOfWork.flush();
+            fail("expected the duplicate key to fail the transaction");
+        } catch (DataAccessException expected) {
+        }
+
+        assertThat(dslContext.fetchCount(PARENT_TABLE), is(0));
+        assertThat(versionedNames(), contains("one"));
+    }
+
+    @Test
+    public void commands_failing_validation_do_not_prevent_the_changes_of_other_flows() {
+        UnitOfWork unitOfWork = plContext.unitOfWork();
+        UnitOfWork.Result<CreateResult<EntityForTestParent, Identifier<EntityForTestParent>>> parents =
+                unitOfWork.create(ImmutableList.of(createParent(1, "alpha")), parentFlow);
+        UnitOfWork.Result<UpdateResult<VersionedEntity, VersionedEntity.Key>> versioned =
+                unitOfWork.update(ImmutableList.of(new UpdateEntityCommand<>(VersionedEntity.INSTANCE, new VersionedEntity.Key(99))), versionedFlow);
+
+        unitOfWork.flush();
+
+        assertFalse(parents.get().hasErrors());
+        assertTrue(versioned.get().hasErrors());
+        assertThat(parentNames(), contains("alpha"));
+    }
+
+    @Test
+    public void results_report_a_failed_flush() {
+        UnitOfWork unitOfWork = plContext.unitOfWork();
+        UnitOfWork.Result<CreateResult<EntityForTestParent, Identifier<EntityForTestParent>>> parents =
+                unitOfWork.create(ImmutableList.of(createParent(1, "alpha")), parentFlow);
+        unitOfWork.create(ImmutableList.of(createVersioned(1, "duplicate")), versionedFlow);
+        DataAccessException flushFailure = null;
+        try {
+            unitOfWork.flush();
+        } catch (DataAccessException e) {
+            flushFailure = e;
+        }
+
+        try {
+            parents.get();
+            fail("expected the result to report the failed flush");
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), is("The flush of the unit of work failed"));
+            assertThat(expected.getCause(), is(flushFailure));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void results_are_not_available_before_flush() {
+        plContext.unitOfWork().create(ImmutableList.of(createParent(1, "alpha")), parentFlow).get();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void a_unit_of_work_is_flushed_once() {
+        UnitOfWork unitOfWork = plContext.unitOfWork();
+        unitOfWork.create(ImmutableList.of(createParent(1, "alpha")), parentFlow);
+        unitOfWork.flush();
+        unitOfWork.flush();
+    }
+
+    private CreateEntityCommand<EntityForTestParent> createParent(int id, String field1) {
+        CreateEntityCommand<EntityForTestParent> command = new CreateEntityCommand<>(EntityForTestParent.INSTANCE);
+        command.set(EntityForTestParent.ID, id);
+        command.set(EntityForTestParent.FIELD1, field1);
+        return command;
+    }
+
+    private CreateEntityCommand<VersionedEntity> createVersioned(int id, String name) {
+        CreateEntityCommand<VersionedEntity> command = new CreateEntityCommand<>(VersionedEntity.INSTANCE);
+        command.set(VersionedEntity.ID, id);
+        command.set(VersionedEntity.NAME, name);
+        command.set(VersionedEntity.VERSION, 0L);
+        return command;
+    }
+
+    private InsertOnDuplicateUpdateCommand<VersionedEntity, VersionedEntity.Key> upsertVersioned(int id, String name) {
+        InsertOnDuplicateUpdateCommand<VersionedEntity, VersionedEntity.Key> command = new InsertOnDuplicateUpdateCommand<>(VersionedEntity.INSTANCE, new VersionedEntity.Key(id));
+        command.set(VersionedEntity.NAME, name);
+        return command;
+    }
+
+    private List<String> parentNames() {
+        return dslContext.select(PARENT_TABLE.field1).from(PARENT_TABLE).orderBy(PARENT_TABLE.id).fetch(PARENT_TABLE.field1);
+    }
+
+    private List<String> versionedNames() {
+        return dslContext.select(VERSIONED_TABLE.name).from(VERSIONED_TABLE).orderBy(VERSIONED_TABLE.id).fetch(VERSIONED_TABLE.name);
+    }
+}
@@ -0,0 +1,41 @@
+package com.kenshoo.pl.entity;
+
+import com.kenshoo.jooq.DataTable;
+import com.kenshoo.pl.entity.annotation.Version;
+
+public class VersionedEntity extends AbstractEntityType<VersionedEntity> {
+
+    public static final VersionedEntity INSTANCE = new VersionedEntity();
+
+    public static final EntityField<VersionedEntity, Integer> ID = INSTANCE.field(VersionedEntityTable.INSTANCE.id);
+    public static final EntityField<VersionedEntity, String> NAME = INSTANCE.field(VersionedEntityTable.INSTANCE.name);
+    @Version
+    public static final EntityField<VersionedEntity, Long> VERSION = INSTANCE.field(VersionedEntityTable.INSTANCE.version);
+
+    private VersionedEntity() {
+        super("versioned");
+    }
+
+    public static class Key extends SingleUniqueKeyValue<VersionedEntity, Integer> {
+        public static final SingleUniqueKey<VersionedEntity, Integer> DEFINITION = new SingleUniqueKey<VersionedEntity, Integer>(VersionedEntity.ID) {
+            @Override
+            protected Key createValue(Integer value) {
+                return new Key(value);
+            }
+        };
+
+        public Key(int id) {
+            super(DEFINITION, id);
+        }
+    }
+
+    @Override
+    public DataTable getPrimaryTable() {
+        return VersionedEntityTable.INSTANCE;
+    }
+
+    @Override
+    public SupportedChangeOperation getSupportedOperation() {
+        return SupportedChangeOperation.CREATE_UPDATE_AND_DELETE;
+    }
+}
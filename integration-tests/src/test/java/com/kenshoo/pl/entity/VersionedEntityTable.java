@@ -0,0 +1,28 @@
+package com.kenshoo.pl.entity;
+
+import com.kenshoo.jooq.AbstractDataTable;
+import org.jooq.Record;
+import org.jooq.TableField;
+import org.jooq.impl.SQLDataType;
+
+public class VersionedEntityTable extends AbstractDataTable<VersionedEntityTable> {
+
+    public static final VersionedEntityTable INSTANCE = new VersionedEntityTable("VersionedEntity");
+
+    final TableField<Record, Integer> id = createPKField("id", SQLDataType.INTEGER);
+    final TableField<Record, String> name = createField("name", SQLDataType.VARCHAR.length(50));
+    final TableField<Record, Long> version = createField("version", SQLDataType.BIGINT.nullable(false).defaultValue(0L));
+
+    public VersionedEntityTable(String name) {
+        super(name);
+    }
+
+    public VersionedEntityTable(VersionedEntityTable aliased, String alias) {
+        super(aliased, alias);
+    }
+
+    @Override
+    public VersionedEntityTable as(String alias) {
+        return new VersionedEntityTable(this, alias);
+    }
+}
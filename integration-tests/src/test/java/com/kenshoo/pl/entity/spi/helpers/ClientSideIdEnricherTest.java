@@ -0,0 +1,128 @@
+package com.kenshoo.pl.entity.spi.helpers;
+
+import com.google.common.collect.ImmutableSet;
+import com.kenshoo.jooq.DataTable;
+import com.kenshoo.jooq.DataTableUtils;
+import com.kenshoo.jooq.TestJooqConfig;
+import com.kenshoo.pl.entity.*;
+import com.kenshoo.pl.one2many.relatedByPK.ChildEntity;
+import com.kenshoo.pl.one2many.relatedByPK.ChildTable;
+import com.kenshoo.pl.one2many.relatedByPK.ParentEntity;
+import com.kenshoo.pl.one2many.relatedByPK.ParentTable;
+import org.jooq.DSLContext;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.kenshoo.matcher.AllItemsAreDifferent.allItemsAreDifferent;
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ClientSideIdEnricherTest {
+
+    private static final ParentTable parentTable = ParentTable.INSTANCE;
+    private static final ChildTable childTable = ChildTable.INSTANCE;
+    private static final IdSequenceTable sequenceTable = IdSequenceTable.INSTANCE;
+    private static final Set<DataTable> ALL_TABLES = ImmutableSet.of(parentTable, childTable, sequenceTable);
+
+    private static boolean tablesCreated;
+
+    private static DSLContext staticDSLContext;
+    private DSLContext dslContext = TestJooqConfig.create();
+    private PLContext plContext = new PLContext.Builder(dslContext).build();
+    private PersistenceLayer<ParentEntity> parentPersistence = new PersistenceLayer<>(plContext);
+
+    @Before
+    public void setup() {
+        if (!tablesCreated) {
+            staticDSLContext = dslContext;
+            ALL_TABLES.forEach(table -> DataTableUtils.createTable(dslContext, table));
+            tablesCreated = true;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ALL_TABLES.forEach(table -> dslContext.deleteFrom(table).execute());
+    }
+
+    @AfterClass
+    public static void dropTables() {
+        ALL_TABLES.forEach(table -> staticDSLContext.dropTableIfExists(table).execute());
+    }
+
+    @Test
+    public void parents_and_children_are_created_with_ids_of_the_sequences() {
+        CreateParent parent1 = new CreateParent().with(ParentEntity.NAME, "parent1");
+        parent1.addChild(new CreateChild().with(ChildEntity.ORDINAL, 1).with(ChildEntity.FIELD_1, "child1"));
+        parent1.addChild(new CreateChild().with(ChildEntity.ORDINAL, 2).with(ChildEntity.FIELD_1, "child2"));
+        CreateParent parent2 = new CreateParent().with(ParentEntity.NAME, "parent2");
+        parent2.addChild(new CreateChild().with(ChildEntity.ORDINAL, 1).with(ChildEntity.FIELD_1, "child3"));
+
+        parentPersistence.create(asList(parent1, parent2), parentFlow(new HiLoIdGenerator(dslContext, "parent"), new HiLoIdGenerator(dslContext, "child")).build());
+
+        Map<String, Integer> parentIdsByName = dslContext.select(parentTable.name, parentTable.id).from(parentTable).fetchMap(parentTable.name, parentTable.id);
+        assertThat(parentIdsByName.get("parent1"), is(1));
+        assertThat(parentIdsByName.get("parent2"), is(2));
+        Map<String, Integer> parentIdsByChild = dslContext.select(childTable.field1, childTable.parent_id).from(childTable).fetchMap(childTable.field1, childTable.parent_id);
+        assertThat(parentIdsByChild.get("child1"), is(1));
+        assertThat(parentIdsByChild.get("child2"), is(1));
+        assertThat(parentIdsByChild.get("child3"), is(2));
+        List<Integer> childIds = dslContext.select(childTable.id).from(childTable).fetch(childTable.id);
+        assertThat(childIds, containsInAnyOrder(1, 2, 3));
+    }
+
+    @Test
+    public void ids_given_by_the_user_are_kept() {
+        CreateParent parent1 = new CreateParent().with(ParentEntity.ID, 100).with(ParentEntity.NAME, "parent1");
+        CreateParent parent2 = new CreateParent().with(ParentEntity.NAME, "parent2");
+
+        parentPersistence.create(asList(parent1, parent2), parentFlow(new HiLoIdGenerator(dslContext, "parent"), new HiLoIdGenerator(dslContext, "child")).build());
+
+        List<Integer> parentIds = dslContext.select(parentTable.id).from(parentTable).orderBy(parentTable.id).fetch(parentTable.id);
+        assertThat(parentIds, contains(1, 100));
+    }
+
+    @Test
+    public void generators_of_the_same_sequence_reserve_different_blocks() {
+        HiLoIdGenerator generator1 = new HiLoIdGenerator(dslContext, sequenceTable, "parent", 3);
+        HiLoIdGenerator generator2 = new HiLoIdGenerator(dslContext, sequenceTable, "parent", 3);
+
+        List<Long> ids = new ArrayList<>();
+        ids.addAll(generator1.generate(2));
+        ids.addAll(generator2.generate(2));
+        ids.addAll(generator1.generate(2));
+        ids.addAll(generator2.generate(5));
+
+        assertThat(ids, contains(1L, 2L, 4L, 5L, 3L, 7L, 6L, 10L, 11L, 12L, 13L));
+        assertThat(ids, allItemsAreDifferent());
+    }
+
+    private ChangeFlowConfig.Builder<ParentEntity> parentFlow(HiLoIdGenerator parentIds, HiLoIdGenerator childIds) {
+        return ChangeFlowConfigBuilderFactory.newInstance(plContext, ParentEntity.INSTANCE)
+                .withPostFetchCommandEnricher(new ClientSideIdEnricher<>(ParentEntity.ID, parentIds.map(Math::toIntExact)))
+                .withChildFlowBuilder(ChangeFlowConfigBuilderFactory.newInstance(plContext, ChildEntity.INSTANCE)
+                        .withPostFetchCommandEnricher(new ClientSideIdEnricher<>(ChildEntity.ID, childIds.map(Math::toIntExact))));
+    }
+
+    private static class CreateParent extends CreateEntityCommand<ParentEntity> implements EntityCommandExt<ParentEntity, CreateParent> {
+        public CreateParent() {
+            super(ParentEntity.INSTANCE);
+        }
+    }
+
+    private static class CreateChild extends CreateEntityCommand<ChildEntity> implements EntityCommandExt<ChildEntity, CreateChild> {
+        public CreateChild() {
+            super(ChildEntity.INSTANCE);
+        }
+    }
+}
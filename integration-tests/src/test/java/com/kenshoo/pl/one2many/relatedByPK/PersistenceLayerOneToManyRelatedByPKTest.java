@@ -556,6 +556,85 @@ public class PersistenceLayerOneToManyRelatedByPKTest {
         assertThat(childrenByOrdinal.get(2).field1, is("child2 updated"));
     }
 
+    @Test
+    public void delete_missing_children_by_condition_when_nothing_else_needs_them() {
+
+        insert(newParent()
+                .with(upsertChild(1).with(FIELD_1, "child1"))
+                .with(upsertChild(2).with(FIELD_1, "child2"))
+                .with(upsertChild(3).with(FIELD_1, "child3"))
+        );
+        insert(newParent()
+                .with(upsertChild(2).with(FIELD_1, "other parent child2"))
+        );
+
+        final ParentCmdBuilder parentBuilder = existingParentWithId(generatedId(0))
+                .with(upsertChild(1).with(FIELD_1, "child1 updated").get())
+                .with(upsertChild(4).with(FIELD_1, "child4").get())
+                .with(deletionOfOther);
+
+        update(parentFlow(createChildEntityFlowBuilder()), parentBuilder);
+
+        assertThat("No delete command is supplied per missing child", parentBuilder.cmd.getChildren(ChildEntity.INSTANCE).count(), is(2L));
+        assertThat(seq(childrenInDb()).map(child -> child.field1).toList(),
+                   containsInAnyOrder("child1 updated", "child4", "other parent child2"));
+    }
+
+    @Test
+    public void delete_all_children_by_condition_when_none_is_kept() {
+
+        insert(newParent()
+                .with(upsertChild(1).with(FIELD_1, "child1"))
+                .with(upsertChild(2).with(FIELD_1, "child2"))
+        );
+        insert(newParent()
+                .with(upsertChild(1).with(FIELD_1, "other parent child1"))
+        );
+
+        update(parentFlow(createChildEntityFlowBuilder()), existingParentWithId(generatedId(0)).with(deletionOfOther));
+
+        assertThat(seq(childrenInDb()).map(child -> child.field1).toList(), contains("other parent child1"));
+    }
+
+    @Test
+    public void delete_missing_children_of_several_parents_by_a_single_statement() {
+
+        insert(newParent()
+                .with(upsertChild(1).with(FIELD_1, "first parent child1"))
+                .with(upsertChild(2).with(FIELD_1, "first parent child2"))
+        );
+        insert(newParent()
+                .with(upsertChild(1).with(FIELD_1, "second parent child1"))
+                .with(upsertChild(2).with(FIELD_1, "second parent child2"))
+        );
+
+        final UpdateResult<ParentEntity, ParentEntity.Key> result = update(parentFlow(createChildEntityFlowBuilder()),
+                existingParentWithId(generatedId(0)).with(upsertChild(1).get()).with(deletionOfOther),
+                existingParentWithId(generatedId(1)).with(upsertChild(2).get()).with(deletionOfOther));
+
+        assertThat(result.getStats().getAffectedRowsOf(CHILD.getName()).getDeleted(), is(2));
+        assertThat(result.getStats().getChunksOf(CHILD.getName()), is(1));
+        assertThat(seq(childrenInDb()).map(child -> child.field1).toList(),
+                   containsInAnyOrder("first parent child1", "second parent child2"));
+    }
+
+    @Test
+    public void deleteWhere_deletes_the_children_and_grand_children_of_matching_parents() {
+
+        insert(newParent().with(NAME, "deleted")
+                .with(upsertChild(1).withChild(upsertGrandChild("red")))
+        );
+        insert(newParent().with(NAME, "kept")
+                .with(upsertChild(1).withChild(upsertGrandChild("white")))
+        );
+
+        persistenceLayer.deleteWhere(NAME.eq("deleted"), parentFlow(childFlow()).build());
+
+        assertThat(parentIdsInDB(), contains(generatedId(1)));
+        assertThat(seq(childrenInDb()).map(child -> child.parentId).toList(), contains(generatedId(1)));
+        assertThat(grandChildrenColorsInDB(), contains("white"));
+    }
+
     @Test
     public void when_deleting_parent_with_cascade_then_delete_children_and_grand() {
 
@@ -572,6 +651,31 @@ public class PersistenceLayerOneToManyRelatedByPKTest {
         assertThat(grandChildrenColorsInDB(), empty());
     }
 
+    @Test
+    public void delete_children_and_grand_children_of_parents_deleted_with_cascade_by_a_single_statement() {
+
+        insert(newParent()
+                .with(upsertChild(1).withChild(upsertGrandChild("red")).withChild(upsertGrandChild("blue")))
+                .with(upsertChild(2).withChild(upsertGrandChild("green")))
+        );
+        insert(newParent()
+                .with(upsertChild(1).withChild(upsertGrandChild("white")))
+        );
+        insert(newParent()
+                .with(upsertChild(1).withChild(upsertGrandChild("black")))
+        );
+
+        final ParentCmdBuilder firstParent = new ParentCmdBuilder(deleteParentWithId(generatedId(0)).setCascade());
+        final ParentCmdBuilder thirdParent = new ParentCmdBuilder(deleteParentWithId(generatedId(2)).setCascade());
+        final DeleteResult<ParentEntity, ParentEntity.Key> result = delete(parentFlow(childFlow()), firstParent, thirdParent);
+
+        assertThat("No delete command is supplied per child", firstParent.cmd.getChildren(ChildEntity.INSTANCE).count(), is(0L));
+        assertThat(result.getStats().getChunksOf(CHILD.getName()), is(1));
+        assertThat(parentIdsInDB(), contains(generatedId(1)));
+        assertThat(seq(childrenInDb()).map(child -> child.parentId).toList(), contains(generatedId(1)));
+        assertThat(grandChildrenColorsInDB(), contains("white"));
+    }
+
     @Test
     public void dont_crash_when_upserting_children_with_deletion_of_other_grandchildren() {
 
@@ -1,12 +1,15 @@
 package com.kenshoo.jooq;
 
 import com.google.common.collect.ImmutableList;
+import org.jooq.Condition;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.Record;
+import org.jooq.Table;
 import org.jooq.impl.TableImpl;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Provides a convenient (and MySQL-friendly) way of solving the use-case of deleting records by N identifiers.
@@ -37,6 +40,15 @@ public class DeleteQueryBuilder {
     }
 
 
+    /**
+     * Deletes the records of <code>table</code> matching both one of the tuples of <code>fieldsWithValues</code> (the
+     * values of all the fields are zipped by position) and <code>additionalCondition</code>, if not null.
+     * Several fields, or more than {@link QueryExtension#JOIN_TEMP_TABLE_LIMIT} values, are matched by a join with a temp table.
+     */
+    public DeleteQueryExtension delete(final Table<Record> table, final List<FieldAndValues<?>> fieldsWithValues, final Condition additionalCondition) {
+        return new DeleteQueryExtension(table, fieldsWithValues, additionalCondition, dslContext);
+    }
+
     public interface BuilderWith {
         <T> BuilderIn1 withCondition(Field<T> field);
     }
@@ -1,10 +1,11 @@
 package com.kenshoo.jooq;
 
 
+import org.jooq.Condition;
 import org.jooq.DSLContext;
 import org.jooq.Query;
 import org.jooq.Record;
-import org.jooq.impl.TableImpl;
+import org.jooq.Table;
 
 import java.util.List;
 
@@ -16,21 +17,29 @@ public class DeleteQueryExtension implements AutoCloseable {
     private Query query;
     private TempTableCreator tempTableCreator;
 
-    DeleteQueryExtension(final TableImpl<Record> table,
+    DeleteQueryExtension(final Table<Record> table,
                          final List<FieldAndValues<?>> fieldWithValues,
                          final DSLContext dslContext) {
+        this(table, fieldWithValues, null, dslContext);
+    }
 
-        tempTableCreator = new TempTableCreator(dslContext, fieldWithValues);
+    DeleteQueryExtension(final Table<Record> table,
+                         final List<FieldAndValues<?>> fieldWithValues,
+                         final Condition additionalCondition,
+                         final DSLContext dslContext) {
 
         String query = "";
 
         if (shouldUseTempTable(fieldWithValues)) {
+            tempTableCreator = new TempTableCreator(dslContext, fieldWithValues);
             query = "DELETE " + table.getName() +
                     " FROM " + table.getName() +
-                    buildJoinToTempTableQuery(fieldWithValues);
+                    buildJoinToTempTableQuery(fieldWithValues) +
+                    (additionalCondition != null ? " WHERE " + dslContext.renderInlined(additionalCondition) : "");
         } else {
             query = "DELETE FROM " + table.getName() +
-                    buildSimpleWhereInQuery(fieldWithValues);
+                    buildSimpleWhereInQuery(fieldWithValues) +
+                    (additionalCondition != null ? " AND " + dslContext.renderInlined(additionalCondition) : "");
         }
 
         this.query = dslContext.query(query);
@@ -56,6 +65,8 @@ public class DeleteQueryExtension implements AutoCloseable {
 
     @Override
     public void close() {
-        tempTableCreator.close();
+        if (tempTableCreator != null) {
+            tempTableCreator.close();
+        }
     }
 }
@@ -1,39 +1,84 @@
 package com.kenshoo.pl.data;
 
 import com.kenshoo.jooq.DataTable;
-import gnu.trove.map.hash.THashMap;
 import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.TableField;
 import org.jooq.UniqueKey;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
+/**
+ * The values of a record to write. They are kept in two small arrays in the order they were set rather than in a
+ * hash map, since a record has few fields and a write may create millions of records. The value of a field is found by
+ * scanning its few fields, which are the same instances for all the records, and only a record with more than
+ * {@value #MAX_SCANNED_FIELDS} fields indexes them. Statements copy the values from the arrays as they bind them.
+ */
 public abstract class AbstractRecordCommand {
 
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final int MAX_SCANNED_FIELDS = 16;
+
     private final DataTable table;
-    private final Map<Field<?>, Object> values = new THashMap<>();
+    private Field<?>[] fields = new Field<?>[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size;
+    // The position of every field in the arrays, once there are too many fields to scan
+    private Map<Field<?>, Integer> fieldIndexes;
 
     protected AbstractRecordCommand(DataTable table) {
         this.table = table;
     }
 
     public <T> void set(Field<T> field, T value) {
-        values.put(field, value);
+        int index = indexOf(field);
+        if (index < 0) {
+            if (size == fields.length) {
+                fields = Arrays.copyOf(fields, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            fields[size] = field;
+            index = size++;
+            if (fieldIndexes != null) {
+                fieldIndexes.put(field, index);
+            } else if (size > MAX_SCANNED_FIELDS) {
+                fieldIndexes = new HashMap<>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    fieldIndexes.put(fields[i], i);
+                }
+            }
+        }
+        values[index] = value;
     }
 
+    /**
+     * Sets the field to a value computed by the database from its current value
+     */
+    public <T> void setExpression(Field<T> field, ColumnExpression<T> expression) {
+        //noinspection unchecked
+        set((Field<Object>) field, (Object) expression);
+    }
+
+    /**
+     * @return the value of the field, or its {@link ColumnExpression} if it was set to one
+     */
     public <T> T get(Field<T> field) {
-        return (T) values.get(field);
+        int index = indexOf(field);
+        //noinspection unchecked
+        return index < 0 ? null : (T) values[index];
     }
 
     public Stream<Field<?>> getFields() {
-        return values.keySet().stream();
+        return Arrays.stream(fields, 0, size);
     }
 
     public Stream<Object> getValues(Stream<Field<?>> fields) {
-        return fields.map(values::get);
+        return fields.map(this::get);
     }
 
     public DataTable getTable() {
@@ -41,7 +86,60 @@ public abstract class AbstractRecordCommand {
     }
 
     public boolean isEmpty() {
-        return values.isEmpty();
+        return size == 0;
+    }
+
+    public boolean hasExpressions() {
+        for (int i = 0; i < size; i++) {
+            if (values[i] instanceof ColumnExpression) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Field<?> fieldAt(int index) {
+        return fields[index];
+    }
+
+    Object valueAt(int index) {
+        return values[index];
+    }
+
+    /**
+     * Copies the values of the given fields to <code>target</code> in their order, an expression by its argument which
+     * is what a statement binds.
+     *
+     * @return the position in <code>target</code> following the values copied
+     */
+    int copyValues(List<Field<?>> fields, Object[] target, int offset) {
+        for (Field<?> field : fields) {
+            Object value = get(field);
+            target[offset++] = value instanceof ColumnExpression ? ((ColumnExpression<?>) value).getArgument() : value;
+        }
+        return offset;
+    }
+
+    // The same field instances are used for all the records, so equals() is seldom needed
+    private int indexOf(Field<?> field) {
+        if (fieldIndexes != null) {
+            return fieldIndexes.getOrDefault(field, -1);
+        }
+        for (int i = 0; i < size; i++) {
+            if (fields[i] == field) {
+                return i;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (fields[i].equals(field)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     protected static TableField<Record, ?> getPrimaryKeyField(DataTable table, Class dataType) {
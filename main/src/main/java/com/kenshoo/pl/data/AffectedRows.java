@@ -2,16 +2,18 @@ package com.kenshoo.pl.data;
 
 public class AffectedRows {
 
-    private static final AffectedRows EMPTY = new AffectedRows(0, 0, 0);
+    private static final AffectedRows EMPTY = new AffectedRows(0, 0, 0, 0);
 
     private final int inserted;
     private final int updated;
     private final int deleted;
+    private final int chunks;
 
-    private AffectedRows(int inserted, int updated, int deleted) {
+    private AffectedRows(int inserted, int updated, int deleted, int chunks) {
         this.inserted = inserted;
         this.updated = updated;
         this.deleted = deleted;
+        this.chunks = chunks;
     }
 
     public int getInserted() {
@@ -26,8 +28,19 @@ public class AffectedRows {
         return deleted;
     }
 
+    /**
+     * @return the number of chunks (JDBC batches) the commands were sent to the database in
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
     public AffectedRows plus(AffectedRows another) {
-        return new AffectedRows(inserted + another.inserted, updated + another.updated, deleted + another.deleted);
+        return new AffectedRows(inserted + another.inserted, updated + another.updated, deleted + another.deleted, chunks + another.chunks);
+    }
+
+    public AffectedRows plusChunks(int chunks) {
+        return new AffectedRows(inserted, updated, deleted, this.chunks + chunks);
     }
 
     public static AffectedRows empty() {
@@ -35,14 +48,14 @@ public class AffectedRows {
     }
 
     public static AffectedRows updated(int updated) {
-        return new AffectedRows(0, updated, 0);
+        return new AffectedRows(0, updated, 0, 0);
     }
 
     public static AffectedRows deleted(int deleted) {
-        return new AffectedRows(0, 0, deleted);
+        return new AffectedRows(0, 0, deleted, 0);
     }
 
     public static AffectedRows insertedAndUpdated(int inserted, int updated) {
-        return new AffectedRows(inserted, updated, 0);
+        return new AffectedRows(inserted, updated, 0, 0);
     }
 }
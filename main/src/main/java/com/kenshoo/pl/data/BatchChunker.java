@@ -0,0 +1,91 @@
+package com.kenshoo.pl.data;
+
+import com.google.common.base.Stopwatch;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Splits the commands of a table into JDBC batches bounded by {@link CommandsExecutorConfig#getMaxRowsPerBatch()}
+ * and {@link CommandsExecutorConfig#getMaxBytesPerBatch()}. When a target latency is configured, the number of rows
+ * per batch is halved after every batch slower than the target and grows by half after every batch faster than
+ * half the target, so it converges to what the database handles in the given time. The size learned is kept
+ * for the next commands of the same table.
+ */
+class BatchChunker {
+
+    // Rough size of a value bound to a statement that is neither a string nor a byte array
+    private static final int FIXED_VALUE_BYTES = 8;
+
+    private final CommandsExecutorConfig config;
+    private volatile int rowsPerBatch;
+
+    BatchChunker(CommandsExecutorConfig config) {
+        this.config = config;
+        this.rowsPerBatch = config.getMaxRowsPerBatch();
+    }
+
+    <C> AffectedRows execute(List<C> commands, ToLongFunction<C> rowBytes, Function<List<C>, AffectedRows> chunkExecutor) {
+        AffectedRows affectedRows = AffectedRows.empty();
+        int from = 0;
+        while (from < commands.size()) {
+            int to = chunkEnd(commands, from, rowBytes);
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            affectedRows = affectedRows.plus(chunkExecutor.apply(commands.subList(from, to))).plusChunks(1);
+            adapt(to - from, stopwatch.elapsed(TimeUnit.NANOSECONDS));
+            from = to;
+        }
+        return affectedRows;
+    }
+
+    int getRowsPerBatch() {
+        return rowsPerBatch;
+    }
+
+    static long estimatedBytes(Stream<Object> values) {
+        return values.mapToLong(BatchChunker::estimatedBytes).sum();
+    }
+
+    private static long estimatedBytes(Object value) {
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return FIXED_VALUE_BYTES;
+    }
+
+    private <C> int chunkEnd(List<C> commands, int from, ToLongFunction<C> rowBytes) {
+        int maxEnd = (int) Math.min(commands.size(), (long) from + rowsPerBatch);
+        if (config.getMaxBytesPerBatch() == Long.MAX_VALUE) {
+            return maxEnd;
+        }
+        // A batch takes at least one row, even if it is larger than the limit
+        long bytes = rowBytes.applyAsLong(commands.get(from));
+        int end = from + 1;
+        while (end < maxEnd) {
+            bytes += rowBytes.applyAsLong(commands.get(end));
+            if (bytes > config.getMaxBytesPerBatch()) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    private void adapt(int rows, long elapsedNanos) {
+        if (!config.getTargetBatchLatency().isPresent()) {
+            return;
+        }
+        long targetNanos = config.getTargetBatchLatency().map(Duration::toNanos).get();
+        if (elapsedNanos > targetNanos) {
+            rowsPerBatch = Math.max(1, Math.min(rowsPerBatch, rows) / 2);
+        } else if (elapsedNanos < targetNanos / 2 && rows == rowsPerBatch) {
+            rowsPerBatch = (int) Math.min(config.getMaxRowsPerBatch(), rowsPerBatch + Math.max(1L, rowsPerBatch / 2));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.kenshoo.pl.data;
+
+import org.jooq.Field;
+import org.jooq.impl.DSL;
+
+import java.util.Objects;
+
+/**
+ * A value of a record computed by the database from the current value of its column, such as
+ * <code>col = col + ?</code>. Only the argument is bound, so records of the same expressions share a statement.
+ * A record inserted rather than updated gets the argument itself, as if the column had been empty.
+ */
+public final class ColumnExpression<T> {
+
+    public enum Operator {
+        /**
+         * Adds the argument to the current value, a <code>NULL</code> counting as zero
+         */
+        ADD {
+            @Override
+            <T> Field<T> apply(Field<T> column, Field<T> argument) {
+                return DSL.coalesce(column, DSL.zero()).plus(argument);
+            }
+        },
+        /**
+         * Keeps the greater of the current value and the argument. A <code>NULL</code> column stays <code>NULL</code>
+         */
+        GREATEST {
+            @Override
+            <T> Field<T> apply(Field<T> column, Field<T> argument) {
+                return DSL.greatest(column, argument);
+            }
+        },
+        /**
+         * Keeps the lesser of the current value and the argument. A <code>NULL</code> column stays <code>NULL</code>
+         */
+        LEAST {
+            @Override
+            <T> Field<T> apply(Field<T> column, Field<T> argument) {
+                return DSL.least(column, argument);
+            }
+        },
+        /**
+         * Appends the argument to the current value, a <code>NULL</code> counting as an empty string
+         */
+        CONCAT {
+            @Override
+            <T> Field<T> apply(Field<T> column, Field<T> argument) {
+                //noinspection unchecked
+                return (Field<T>) DSL.concat(DSL.coalesce(column, DSL.inline("")), argument);
+            }
+        };
+
+        /**
+         * @return the new value of <code>column</code>, rendered with <code>argument</code> as its only bind value
+         */
+        abstract <T> Field<T> apply(Field<T> column, Field<T> argument);
+    }
+
+    private final Operator operator;
+    private final T argument;
+
+    public ColumnExpression(Operator operator, T argument) {
+        this.operator = Objects.requireNonNull(operator, "An operator must be provided");
+        this.argument = argument;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public T getArgument() {
+        return argument;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ColumnExpression)) return false;
+        ColumnExpression<?> that = (ColumnExpression<?>) o;
+        return operator == that.operator && Objects.equals(argument, that.argument);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(operator, argument);
+    }
+
+    @Override
+    public String toString() {
+        return operator + "(" + argument + ")";
+    }
+}
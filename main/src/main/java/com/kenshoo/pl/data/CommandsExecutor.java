@@ -1,11 +1,33 @@
 package com.kenshoo.pl.data;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.ObjectArrays;
 import com.kenshoo.jooq.DataTable;
+import com.kenshoo.jooq.DeleteQueryBuilder;
+import com.kenshoo.jooq.DeleteQueryExtension;
 import com.kenshoo.jooq.FieldAndValue;
+import com.kenshoo.jooq.FieldAndValues;
+import com.kenshoo.jooq.TempTableHelper;
+import com.kenshoo.jooq.TempTableResource;
+import com.kenshoo.pl.data.CommandsExecutorConfig.GeneratedKeysStrategy;
+import com.kenshoo.pl.data.CommandsExecutorConfig.InsertStrategy;
+import com.kenshoo.pl.data.CommandsExecutorConfig.UpdateStrategy;
 import com.kenshoo.pl.data.CreateRecordCommand.OnDuplicateKey;
+import com.kenshoo.pl.data.StatementsCache.StatementKey;
 import org.jooq.*;
+import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -16,102 +38,437 @@ import static org.jooq.lambda.Seq.seq;
 public class CommandsExecutor {
 
     final private DSLContext dslContext;
+    final private CommandsExecutorConfig config;
+    final private Map<String, BatchChunker> chunkers = new ConcurrentHashMap<>();
+    final private Supplier<OptionalLong> consecutiveAutoIncrementStep = Suppliers.memoize(this::resolveConsecutiveAutoIncrementStep);
 
     public CommandsExecutor(DSLContext dslContext) {
+        this(dslContext, CommandsExecutorConfig.DEFAULT);
+    }
+
+    public CommandsExecutor(DSLContext dslContext, CommandsExecutorConfig config) {
         this.dslContext = dslContext;
+        this.config = config;
     }
 
     public static CommandsExecutor of(DSLContext dslContext) {
         return new CommandsExecutor(dslContext);
     }
 
+    public static CommandsExecutor of(DSLContext dslContext, CommandsExecutorConfig config) {
+        return new CommandsExecutor(dslContext, config);
+    }
+
+    public CommandsExecutorConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return a pipeline collecting writes to several tables to be sent as a single batch
+     */
+    public Pipeline pipeline() {
+        return new Pipeline();
+    }
+
+    /**
+     * @return <code>true</code> if inserting the commands generates keys that have to be read back into them
+     */
+    public boolean needsGeneratedKeys(DataTable table, Collection<? extends CreateRecordCommand> commands) {
+        Identity<Record, ?> identity = table.getIdentity();
+        return identity != null && commands.stream().anyMatch(command -> command.get(identity.getField()) == null);
+    }
+
     public AffectedRows executeInserts(final DataTable table, Collection<? extends CreateRecordCommand> commands) {
-        return executeCommands(commands, homogeneousCommands -> executeInsertCommands(table, homogeneousCommands, OnDuplicateKey.FAIL));
+        return executeCommands(table, commands, this::rowBytes, (signature, fields, homogeneousCommands) -> executeInsertCommands(table, signature, fields, homogeneousCommands, OnDuplicateKey.FAIL));
     }
 
     public AffectedRows executeInsertsOnDuplicateKeyIgnore(final DataTable table, Collection<? extends CreateRecordCommand> commands) {
-        return executeCommands(commands, homogeneousCommands -> executeInsertCommands(table, homogeneousCommands, OnDuplicateKey.IGNORE));
+        return executeCommands(table, commands, this::rowBytes, (signature, fields, homogeneousCommands) -> executeInsertCommands(table, signature, fields, homogeneousCommands, OnDuplicateKey.IGNORE));
     }
 
     public AffectedRows executeInsertsOnDuplicateKeyUpdate(final DataTable table, Collection<? extends CreateRecordCommand> commands) {
-        return executeCommands(commands, homogeneousCommands -> executeInsertCommands(table, homogeneousCommands, OnDuplicateKey.UPDATE));
+        return executeCommands(table, commands, this::rowBytes, (signature, fields, homogeneousCommands) -> executeInsertCommands(table, signature, fields, homogeneousCommands, OnDuplicateKey.UPDATE));
     }
 
     public AffectedRows executeUpdates(final DataTable table, Collection<? extends UpdateRecordCommand> commands) {
-        return executeCommands(commands, homogeneousCommands -> executeUpdateCommands(table, homogeneousCommands));
+        return executeCommands(table, commands, command -> rowBytes(command) + BatchChunker.estimatedBytes(Stream.of(command.getId().getValues())),
+                (signature, fields, homogeneousCommands) -> executeUpdateCommands(table, signature, fields, homogeneousCommands));
     }
 
     public AffectedRows executeDeletes(final DataTable table, Collection<? extends DeleteRecordCommand> commands) {
         if (commands.isEmpty()) {
             return AffectedRows.empty();
         }
-        return executeDeleteCommands(table, commands);
+        return chunkerOf(table).execute(ImmutableList.copyOf(commands),
+                command -> BatchChunker.estimatedBytes(Stream.of(command.getId().getValues())),
+                chunk -> executeDeleteCommands(table, chunk));
     }
 
-    private <C extends AbstractRecordCommand> AffectedRows executeCommands(Collection<? extends C> commands, HomogeneousChunkExecutor<C> homogeneousChunkExecutor) {
-        AffectedRows updated = AffectedRows.empty();
-        List<C> commandsLeft = new LinkedList<>(commands);
-        while (!commandsLeft.isEmpty()) {
-            C firstCommand = commandsLeft.remove(0);
-            List<C> commandsToExecute = new ArrayList<>(Collections.singletonList(firstCommand));
-            Set<String> firstCommandFields = getFieldsNames(firstCommand);
-            Iterator<C> iterator = commandsLeft.iterator();
-            while (iterator.hasNext()) {
-                C command = iterator.next();
-                if (getFieldsNames(command).equals(firstCommandFields)) {
-                    commandsToExecute.add(command);
-                    iterator.remove();
+    /**
+     * Sets the values of the command on all the rows of its table matching its condition and the virtual partition of
+     * the table. A table with a single integer primary key is updated a range of
+     * {@link CommandsExecutorConfig#getConditionalKeyRange()} matching keys at a time, each range ending at the last of
+     * the keys selected for it, so that no statement locks the rows of the whole table. Every statement is counted as a
+     * chunk.
+     */
+    public AffectedRows executeUpdate(ConditionalUpdateRecordCommand command) {
+        return executeUpdate(command, RangeWriter.DIRECT);
+    }
+
+    /**
+     * Updates as {@link #executeUpdate(ConditionalUpdateRecordCommand)} does, the statement of every range being run by
+     * <code>rangeWriter</code>, such as in a transaction of its own
+     */
+    public AffectedRows executeUpdate(ConditionalUpdateRecordCommand command, RangeWriter rangeWriter) {
+        if (command.isEmpty()) {
+            return AffectedRows.empty();
+        }
+        DataTable table = command.getTable();
+        List<Field<?>> fields = command.getFields().collect(toList());
+        return executeByKeyRanges(table, command.getCondition(), rangeWriter, condition -> {
+            UpdateSetFirstStep<Record> update1 = dslContext.update(table);
+            UpdateSetMoreStep<Record> update = null;
+            for (Field<?> field : fields) {
+                update = setValue(update != null ? update : update1, field, command.get(field));
+            }
+            assert update != null;
+            return AffectedRows.updated(update.where(condition).execute());
+        });
+    }
+
+    /**
+     * Deletes all the rows of the table matching the condition and the virtual partition of the table, together with
+     * the rows of the joined tables, by key ranges as {@link #executeUpdate(ConditionalUpdateRecordCommand)} does. The
+     * tables are joined as by {@link #executeDelete(DataTable, List, Map)}, and the rows deleted from all the tables
+     * are counted together.
+     */
+    public AffectedRows executeDelete(DataTable table, Condition condition, Map<DataTable, Condition> joinedTables) {
+        return executeDelete(table, condition, joinedTables, RangeWriter.DIRECT);
+    }
+
+    /**
+     * Deletes as {@link #executeDelete(DataTable, Condition, Map)} does, the statement of every range being run by
+     * <code>rangeWriter</code>, such as in a transaction of its own
+     */
+    public AffectedRows executeDelete(DataTable table, Condition condition, Map<DataTable, Condition> joinedTables, RangeWriter rangeWriter) {
+        if (joinedTables.isEmpty()) {
+            return executeByKeyRanges(table, condition, rangeWriter, rangeCondition -> AffectedRows.deleted(dslContext.deleteFrom(table).where(rangeCondition).execute()));
+        }
+        return executeByKeyRanges(table, condition, rangeWriter, rangeCondition -> deleteJoined(table, joinedTables, rangeCondition));
+    }
+
+    /**
+     * Runs the writes under a savepoint of the transaction of the current connection. If they fail, the rows they wrote
+     * are rolled back to the savepoint and the failure is thrown, leaving the rest of the transaction as it was.
+     */
+    public AffectedRows executeInSavepoint(Supplier<AffectedRows> writes) {
+        return dslContext.connectionResult(connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                AffectedRows affectedRows = writes.get();
+                connection.releaseSavepoint(savepoint);
+                return affectedRows;
+            } catch (RuntimeException e) {
+                try {
+                    connection.rollback(savepoint);
+                } catch (SQLException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
                 }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Deletes the rows of the table matching any of the conditions, together with the rows of the joined tables, by
+     * multi-table <code>DELETE t, j1, j2 FROM t LEFT JOIN j1 ON ... LEFT JOIN j2 ON ... WHERE ...</code> statements.
+     * The tables are joined in the given order on their conditions, so every joined table may refer to any table
+     * before it. Up to {@link CommandsExecutorConfig#getMaxRowsPerStatement()} conditions are combined per statement,
+     * and every statement is counted as a chunk. The rows deleted from all the tables are counted together.
+     */
+    public AffectedRows executeDelete(DataTable table, List<Condition> conditions, Map<DataTable, Condition> joinedTables) {
+        AffectedRows deleted = AffectedRows.empty();
+        for (List<Condition> chunk : Lists.partition(conditions, config.getMaxRowsPerStatement())) {
+            deleted = deleted.plus(deleteJoined(table, joinedTables, DSL.or(chunk).and(partitionCondition(table))).plusChunks(1));
+        }
+        return deleted;
+    }
+
+    private AffectedRows deleteJoined(DataTable table, Map<DataTable, Condition> joinedTables, Condition matching) {
+        Table<?> from = table;
+        for (Map.Entry<DataTable, Condition> joined : joinedTables.entrySet()) {
+            from = from.leftJoin(joined.getKey()).on(joined.getValue().and(partitionCondition(joined.getKey())));
+        }
+        QueryPart deletedTables = DSL.list(seq(joinedTables.keySet()).prepend(table).toList());
+        return AffectedRows.deleted(dslContext.query("delete {0} from {1} where {2}", deletedTables, from, matching).execute());
+    }
+
+    // Every range ends at the last of the next matching keys, so the ranges follow the matching rows however sparse
+    // their keys are, and a range of fewer keys than the configured one is the last
+    private AffectedRows executeByKeyRanges(DataTable table, Condition condition, RangeWriter rangeWriter, Function<Condition, AffectedRows> statement) {
+        Condition matching = condition.and(partitionCondition(table));
+        //noinspection unchecked
+        Field<Object> key = (Field<Object>) rangeKeyOf(table);
+        if (key == null) {
+            return rangeWriter.write(() -> statement.apply(matching)).plusChunks(1);
+        }
+        int range = config.getConditionalKeyRange();
+        AffectedRows affected = AffectedRows.empty();
+        Condition remaining = matching;
+        while (true) {
+            List<Object> keys = dslContext.select(key).from(table).where(remaining).orderBy(key).limit(range).fetch(key);
+            if (keys.isEmpty()) {
+                return affected;
             }
-            updated = updated.plus(homogeneousChunkExecutor.execute(commandsToExecute));
+            Object last = keys.get(keys.size() - 1);
+            Condition rangeCondition = remaining.and(key.le(last));
+            affected = affected.plus(rangeWriter.write(() -> statement.apply(rangeCondition)).plusChunks(1));
+            if (keys.size() < range) {
+                return affected;
+            }
+            remaining = matching.and(key.gt(last));
+        }
+    }
+
+    private TableField<Record, ?> rangeKeyOf(DataTable table) {
+        UniqueKey<Record> primaryKey = table.getPrimaryKey();
+        if (primaryKey == null || primaryKey.getFields().size() != 1) {
+            return null;
+        }
+        TableField<Record, ?> key = primaryKey.getFields().get(0);
+        return key.getType() == Integer.class || key.getType() == Long.class ? key : null;
+    }
+
+    private <T> UpdateSetMoreStep<Record> setValue(UpdateSetStep<Record> update, Field<T> field, Object value) {
+        return update.set(field, valueOf(field, value));
+    }
+
+    // Commands are grouped by the signature of their fields in a single pass, keeping the order of first appearance
+    private <C extends AbstractRecordCommand> AffectedRows executeCommands(DataTable table, Collection<? extends C> commands, ToLongFunction<C> rowBytes, HomogeneousChunkExecutor<C> homogeneousChunkExecutor) {
+        StatementsCache statementsCache = StatementsCache.of(table);
+        Map<FieldsSignature, List<C>> commandsBySignature = new LinkedHashMap<>();
+        for (C command : commands) {
+            commandsBySignature.computeIfAbsent(statementsCache.signatureOf(command), signature -> new ArrayList<>()).add(command);
+        }
+        AffectedRows updated = AffectedRows.empty();
+        for (Map.Entry<FieldsSignature, List<C>> entry : commandsBySignature.entrySet()) {
+            List<C> commandsToExecute = entry.getValue();
+            List<Field<?>> fields = statementsCache.inColumnsOrder(commandsToExecute.get(0).getFields());
+            updated = updated.plus(chunkerOf(table).execute(commandsToExecute, rowBytes,
+                    chunk -> homogeneousChunkExecutor.execute(entry.getKey(), fields, chunk)));
         }
         return updated;
     }
 
-    private AffectedRows executeDeleteCommands(DataTable table, Collection<? extends DeleteRecordCommand> commandsToExecute) {
-        DeleteWhereStep<Record> delete = dslContext.delete(table);
-        Iterator<? extends DeleteRecordCommand> commandIt = commandsToExecute.iterator();
-        DeleteRecordCommand command = commandIt.next();
-        Condition condition = DSL.trueCondition();
-        TableField[] tableFields = command.getId().getTableFields();
-        for (TableField id : tableFields) {
+    private BatchChunker chunkerOf(DataTable table) {
+        return chunkers.computeIfAbsent(table.getName(), tableName -> new BatchChunker(config));
+    }
+
+    private long rowBytes(AbstractRecordCommand command) {
+        return BatchChunker.estimatedBytes(command.getValues(command.getFields()));
+    }
+
+    // Keys are deleted as a set, either in IN lists of up to maxRowsPerStatement keys or by a join with a temp table
+    private AffectedRows executeDeleteCommands(DataTable table, List<? extends DeleteRecordCommand> commandsToExecute) {
+        TableField[] idFields = commandsToExecute.get(0).getId().getTableFields();
+        if (commandsToExecute.size() >= config.getTempTableDeleteThreshold()) {
+            return executeTempTableDeleteCommands(table, idFields, commandsToExecute);
+        }
+        AffectedRows deleted = AffectedRows.empty();
+        for (List<? extends DeleteRecordCommand> commands : Lists.partition(commandsToExecute, config.rowsPerStatement(idFields.length))) {
+            int count = dslContext.deleteFrom(table)
+                    .where(idsIn(idFields, seq(commands).map(DeleteRecordCommand::getId).toList()))
+                    .and(partitionCondition(table))
+                    .execute();
+            deleted = deleted.plus(AffectedRows.deleted(count));
+        }
+        return deleted;
+    }
+
+    private AffectedRows executeTempTableDeleteCommands(DataTable table, TableField[] idFields, List<? extends DeleteRecordCommand> commandsToExecute) {
+        List<FieldAndValues<?>> fieldsWithValues = new ArrayList<>(idFields.length);
+        for (int i = 0; i < idFields.length; i++) {
+            int fieldIndex = i;
             //noinspection unchecked
-            condition = condition.and(id.eq((Object) null));
+            fieldsWithValues.add(new FieldAndValues<>(idFields[i], seq(commandsToExecute).map(command -> command.getId().getValues()[fieldIndex]).toList()));
         }
-        for (FieldAndValue<?> partitionFieldAndValue : table.getVirtualPartition()) {
+        Condition partitionCondition = table.getVirtualPartition().isEmpty() ? null : partitionCondition(table);
+        try (DeleteQueryExtension deleteQuery = new DeleteQueryBuilder(dslContext).delete(table, fieldsWithValues, partitionCondition)) {
+            return AffectedRows.deleted(deleteQuery.getQuery().execute());
+        }
+    }
+
+    private Condition idsIn(TableField[] idFields, List<DatabaseId> ids) {
+        if (idFields.length == 1) {
+            return idFields[0].in(seq(ids).map(id -> id.getValues()[0]).toList());
+        }
+        RowN idRow = DSL.row((Field<?>[]) idFields);
+        return idRow.in(seq(ids).map(id -> idValuesRow(idFields, id.getValues())).toList());
+    }
+
+    private RowN idValuesRow(TableField[] idFields, Object[] values) {
+        Field<?>[] typedValues = new Field<?>[idFields.length];
+        for (int i = 0; i < idFields.length; i++) {
             //noinspection unchecked
-            condition = condition.and(((Field) partitionFieldAndValue.getField()).eq((Object) null));
+            typedValues[i] = DSL.val(values[i], idFields[i]);
         }
-        delete.where(condition);
+        return DSL.row(typedValues);
+    }
 
-        BatchBindStep batch = dslContext.batch(delete);
-        while (command != null) {
-            List<Object> values = Stream.concat(Stream.of(command.getId().getValues()),
-                    table.getVirtualPartition().stream().map(FieldAndValue::getValue)).collect(toList());
-            batch.bind(values.toArray());
-            command = commandIt.hasNext() ? commandIt.next() : null;
+    private Condition partitionCondition(DataTable table) {
+        Condition partitionCondition = DSL.trueCondition();
+        for (FieldAndValue<?> partitionFieldAndValue : table.getVirtualPartition()) {
+            //noinspection unchecked
+            partitionCondition = partitionCondition.and(((Field) partitionFieldAndValue.getField()).eq(partitionFieldAndValue.getValue()));
         }
-        return AffectedRows.deleted(IntStream.of(batch.execute()).sum());
+        return partitionCondition;
     }
 
-    private AffectedRows executeUpdateCommands(DataTable table, List<? extends UpdateRecordCommand> commandsToExecute) {
-        UpdateSetFirstStep update1 = dslContext.update(table);
-        UpdateSetMoreStep update = null;
-        UpdateRecordCommand command1 = commandsToExecute.get(0);
-        if (!command1.getFields().findFirst().isPresent()) {
+    private AffectedRows executeUpdateCommands(DataTable table, FieldsSignature signature, List<Field<?>> fields, List<? extends UpdateRecordCommand> commandsToExecute) {
+        if (fields.isEmpty()) {
             return AffectedRows.empty();
         }
-        for (Field<?> field : seq(command1.getFields())) {
-            if (update != null) {
-                update = update.set(field, (Object) null);
-            } else {
-                update = update1.set(field, (Object) null);
+        TableField[] tableFields = commandsToExecute.get(0).getId().getTableFields();
+        if (commandsToExecute.size() >= config.getTempTableUpdateThreshold() && canUpdateByTempTable(signature, fields, tableFields)) {
+            return executeTempTableUpdateCommands(table, fields, tableFields, commandsToExecute);
+        }
+        if (config.getUpdateStrategy() == UpdateStrategy.CASE_WHEN && !updatesId(fields, tableFields)) {
+            int valuesPerRow = fields.size() * (tableFields.length + 1) + tableFields.length;
+            int rowsPerStatement = UpdateCostModel.rowsPerStatement(fields.size(), config.rowsPerStatement(valuesPerRow));
+            if (UpdateCostModel.isCaseCheaper(commandsToExecute.size(), fields.size(), rowsPerStatement)) {
+                return executeCaseUpdateCommands(table, fields, tableFields, commandsToExecute, rowsPerStatement);
             }
         }
+        Query update = StatementsCache.of(table).statement(dslContext, StatementKey.update(signature, tableFields),
+                () -> batchUpdate(table, signature, fields, tableFields));
+
+        BatchBindStep batch = dslContext.batch(update);
+        Object[] partitionValues = partitionValues(table);
+        for (UpdateRecordCommand command : commandsToExecute) {
+            batch.bind(rowOf(command, fields, command.getId().getValues(), partitionValues));
+        }
+        int[] execute = batch.execute();
+        for (int i = 0; i < execute.length; i++) {
+            commandsToExecute.get(i).setUpdated(execute[i] != 0);
+        }
+        return AffectedRows.updated(IntStream.of(execute).sum());
+    }
+
+    // The new values are loaded along with the IDs into a temp table and copied to the table by a single UPDATE ... JOIN
+    private AffectedRows executeTempTableUpdateCommands(DataTable table, List<Field<?>> fields, TableField[] idFields, List<? extends UpdateRecordCommand> commandsToExecute) {
+        ImpersonatorTable tempTable = new ImpersonatorTable(table);
+        Stream.of(idFields).forEach(tempTable::createField);
+        fields.forEach(tempTable::createField);
+
+        try (TempTableResource<ImpersonatorTable> tempTableResource = TempTableHelper.tempInMemoryTable(dslContext, tempTable, batchBindStep -> {
+            for (UpdateRecordCommand command : commandsToExecute) {
+                batchBindStep.bind(Stream.concat(Stream.of(command.getId().getValues()), command.getValues(fields.stream())).toArray());
+            }
+        })) {
+            ImpersonatorTable values = tempTableResource.getTable();
+            Condition joinCondition = DSL.trueCondition();
+            for (TableField idField : idFields) {
+                //noinspection unchecked
+                joinCondition = joinCondition.and(idField.eq(values.getField(idField)));
+            }
+            UpdateSetFirstStep<Record> update1 = dslContext.update(table.join(values).on(joinCondition));
+            UpdateSetMoreStep<Record> update = null;
+            for (Field<?> field : fields) {
+                update = setFromTempTable(update != null ? update : update1, field, values);
+            }
+            assert update != null;
+            return AffectedRows.updated(update.where(partitionCondition(table)).execute());
+        }
+    }
+
+    private <T> UpdateSetMoreStep<Record> setFromTempTable(UpdateSetStep<Record> update, Field<T> field, ImpersonatorTable tempTable) {
+        //noinspection unchecked
+        return update.set(field, (Field<T>) tempTable.field(field.getName()));
+    }
+
+    // Every field gets its own CASE over the IDs. An ELSE keeping the current value covers rows the IN list matches
+    // but no branch does, so that such rows are never nulled.
+    private AffectedRows executeCaseUpdateCommands(DataTable table, List<Field<?>> fields, TableField[] idFields, List<? extends UpdateRecordCommand> commandsToExecute, int rowsPerStatement) {
+        AffectedRows updated = AffectedRows.empty();
+        for (List<? extends UpdateRecordCommand> commands : Lists.partition(commandsToExecute, rowsPerStatement)) {
+            UpdateSetFirstStep<Record> update1 = dslContext.update(table);
+            UpdateSetMoreStep<Record> update = null;
+            for (Field<?> field : fields) {
+                update = setByCase(update != null ? update : update1, field, commands);
+            }
+            assert update != null;
+            int count = update.where(idsIn(idFields, seq(commands).map(UpdateRecordCommand::getId).toList()))
+                    .and(partitionCondition(table))
+                    .execute();
+            updated = updated.plus(AffectedRows.updated(count));
+        }
+        return updated;
+    }
+
+    private <T> UpdateSetMoreStep<Record> setByCase(UpdateSetStep<Record> update, Field<T> field, List<? extends UpdateRecordCommand> commands) {
+        CaseConditionStep<T> value = null;
+        for (UpdateRecordCommand command : commands) {
+            Condition idCondition = idEquals(command.getId());
+            Field<T> commandValue = valueOf(field, command.get(field));
+            value = value == null ? DSL.when(idCondition, commandValue) : value.when(idCondition, commandValue);
+        }
+        assert value != null;
+        return update.set(field, value.otherwise(field));
+    }
+
+    // A MEMORY temp table cannot hold LOBs, and holds the arguments of expressions rather than the values to set
+    private boolean canUpdateByTempTable(FieldsSignature signature, List<Field<?>> fields, TableField[] idFields) {
+        return !signature.hasExpressions() && fields.stream().noneMatch(field -> field.getDataType().isLob()) && !updatesId(fields, idFields);
+    }
+
+    // An expression is rendered in place of the value, with its argument bound
+    private <T> Field<T> valueOf(Field<T> field, Object value) {
+        if (value instanceof ColumnExpression) {
+            ColumnExpression<?> expression = (ColumnExpression<?>) value;
+            return expression.getOperator().apply(field, DSL.val(expression.getArgument(), field));
+        }
+        return DSL.val(value, field);
+    }
+
+    // The placeholder of a field set by an expression is the argument of its operator
+    private <T> Field<T> placeholderOf(FieldsSignature signature, Field<T> field, Field<T> value) {
+        ColumnExpression.Operator operator = signature.operatorOf(field);
+        return operator == null ? value : operator.apply(field, value);
+    }
+
+    // A field cannot be both updated and matched by
+    private boolean updatesId(List<Field<?>> fields, TableField[] idFields) {
+        Set<String> idFieldNames = Stream.of(idFields).map(Field::getName).collect(toSet());
+        return fields.stream().anyMatch(field -> idFieldNames.contains(field.getName()));
+    }
+
+    private Update<Record> batchUpdate(DataTable table, FieldsSignature signature, List<Field<?>> fields, TableField[] idFields) {
+        UpdateSetFirstStep update1 = dslContext.update(table);
+        UpdateSetMoreStep update = null;
+        for (Field<?> field : fields) {
+            update = setPlaceholder(update != null ? update : update1, signature, field);
+        }
         assert update != null;
+        //noinspection unchecked
+        return update.where(whereIdAndPartition(table, idFields));
+    }
+
+    private <T> UpdateSetMoreStep<Record> setPlaceholder(UpdateSetStep<Record> update, FieldsSignature signature, Field<T> field) {
+        return update.set(field, placeholderOf(signature, field, DSL.val(null, field)));
+    }
+
+    private Condition idEquals(DatabaseId id) {
+        Condition condition = DSL.trueCondition();
+        for (int i = 0; i < id.getTableFields().length; i++) {
+            //noinspection unchecked
+            condition = condition.and(((Field) id.getTableFields()[i]).eq(id.getValues()[i]));
+        }
+        return condition;
+    }
+
+    private Condition whereIdAndPartition(DataTable table, TableField[] idFields) {
         Condition condition = DSL.trueCondition();
-        TableField[] tableFields = command1.getId().getTableFields();
-        for (TableField id : tableFields) {
+        for (TableField id : idFields) {
             //noinspection unchecked
             condition = condition.and(id.eq((Object) null));
         }
@@ -119,77 +476,410 @@ public class CommandsExecutor {
             //noinspection unchecked
             condition = condition.and(((Field) partitionFieldAndValue.getField()).eq((Object) null));
         }
-        update.where(condition);
+        return condition;
+    }
 
-        BatchBindStep batch = dslContext.batch(update);
-        for (UpdateRecordCommand command : commandsToExecute) {
-            List<Object> values = Stream.of(command.getValues(command1.getFields()),
-                    Stream.of(command.getId().getValues()),
-                    table.getVirtualPartition().stream().map(FieldAndValue::getValue)).flatMap(s -> s).collect(toList());
-            batch.bind(values.toArray());
+    private AffectedRows executeInsertCommands(DataTable table, FieldsSignature signature, List<Field<?>> commandFields, List<? extends CreateRecordCommand> commandsToExecute, OnDuplicateKey onDuplicateKey) {
+        if (canComputeGeneratedKeys(table, commandsToExecute, onDuplicateKey)) {
+            OptionalLong autoIncrementStep = consecutiveAutoIncrementStep.get();
+            if (autoIncrementStep.isPresent()) {
+                return executeLastInsertIdInsertCommands(table, signature, commandFields, commandsToExecute, autoIncrementStep.getAsLong());
+            }
         }
-        int[] execute = batch.execute();
-        return AffectedRows.updated(IntStream.of(execute).sum());
+        if (config.getInsertStrategy() == InsertStrategy.MULTI_ROW_VALUES && canInsertMultiRow(table, commandsToExecute, onDuplicateKey)) {
+            return executeMultiRowInsertCommands(table, signature, commandFields, commandsToExecute, onDuplicateKey);
+        }
+        if (config.getInsertStrategy() == InsertStrategy.LOAD_DATA && canLoadData(table, commandsToExecute, onDuplicateKey)) {
+            Optional<AffectedRows> loaded = executeLoadDataInsertCommands(table, commandFields, commandsToExecute, onDuplicateKey);
+            if (loaded.isPresent()) {
+                return loaded.get();
+            }
+        }
+        return executeBatchInsertCommands(table, signature, commandFields, commandsToExecute, onDuplicateKey);
     }
 
-    private AffectedRows executeInsertCommands(DataTable table, List<? extends CreateRecordCommand> commandsToExecute, OnDuplicateKey onDuplicateKey) {
+    private AffectedRows executeBatchInsertCommands(DataTable table, FieldsSignature signature, List<Field<?>> commandFields, List<? extends CreateRecordCommand> commandsToExecute, OnDuplicateKey onDuplicateKey) {
 
         final Optional<GeneratedKeyRecorder> generatedKeyRecorder = Optional.ofNullable(table.getIdentity())
                 .map(identity -> new GeneratedKeyRecorder(identity.getField(), commandsToExecute.size()));
 
         DSLContext dslContext = generatedKeyRecorder.map(g -> g.newRecordingJooq(this.dslContext)).orElse(this.dslContext);
 
-        CreateRecordCommand firstCommand = commandsToExecute.get(0);
-        Collection<Field<?>> fields = Stream.concat(firstCommand.getFields(), table.getVirtualPartition().stream().map(FieldAndValue::getField)).collect(toList());
+        Query insert = StatementsCache.of(table).statement(dslContext, StatementKey.batchInsert(signature, onDuplicateKey),
+                () -> batchInsert(dslContext, table, signature, commandFields, onDuplicateKey));
+
+        BatchBindStep batch = dslContext.batch(insert);
+
+        Object[] partitionValues = partitionValues(table);
+        for (CreateRecordCommand command : commandsToExecute) {
+            Object[] values = rowOf(command, commandFields, partitionValues);
+            batch.bind(onDuplicateKey == OnDuplicateKey.UPDATE ? ObjectArrays.concat(values, values, Object.class) : values);
+        }
+        int[] result = batch.execute();
+        // See https://dev.mysql.com/doc/refman/5.7/en/mysql-affected-rows.html for explanation
+        // In case of regular INSERT (without IGNORE or ON DUPLICATE KEY UPDATE) the result is -2 for every inserted row
+        int inserted = (int) IntStream.of(result).filter(i -> i == 1 || i == -2).count();
+        int updated = (int) IntStream.of(result).filter(i -> i == 2).count();
+
+        generatedKeyRecorder
+                .map(GeneratedKeyRecorder::getGeneratedKeys)
+                .ifPresent(generatedKeys -> setIdsToCommands(table.getIdentity().getField(), commandsToExecute, generatedKeys));
+
+        return AffectedRows.insertedAndUpdated(inserted, updated);
+    }
+
+    private Insert<Record> batchInsert(DSLContext dslContext, DataTable table, FieldsSignature signature, List<Field<?>> commandFields, OnDuplicateKey onDuplicateKey) {
+        Collection<Field<?>> fields = Stream.concat(commandFields.stream(), table.getVirtualPartition().stream().map(FieldAndValue::getField)).collect(toList());
         InsertValuesStepN<Record> insertValuesStepN = dslContext.insertInto(table, fields).values(new Object[fields.size()]);
-        Insert insert = insertValuesStepN;
         switch (onDuplicateKey) {
             case IGNORE:
-                insert = insertValuesStepN.onDuplicateKeyIgnore();
-                break;
+                return insertValuesStepN.onDuplicateKeyIgnore();
             case UPDATE:
                 InsertOnDuplicateSetStep<Record> insertOnDuplicateSetStep = insertValuesStepN.onDuplicateKeyUpdate();
-                for (Field<?> field : seq(firstCommand.getFields())) {
-                    //noinspection unchecked
-                    insertOnDuplicateSetStep = insertOnDuplicateSetStep.set((Field) field, (Object) null);
+                for (Field<?> field : commandFields) {
+                    insertOnDuplicateSetStep = setPlaceholder(insertOnDuplicateSetStep, signature, field);
                 }
-                insert = (Insert) insertOnDuplicateSetStep;
-                break;
+                //noinspection unchecked
+                return (Insert<Record>) insertOnDuplicateSetStep;
+            case FAIL:
+            default:
+                return insertValuesStepN;
         }
+    }
 
-        BatchBindStep batch = dslContext.batch(insert);
+    private <T> InsertOnDuplicateSetStep<Record> setPlaceholder(InsertOnDuplicateSetStep<Record> insertOnDuplicateSetStep, FieldsSignature signature, Field<T> field) {
+        return insertOnDuplicateSetStep.set(field, placeholderOf(signature, field, DSL.val(null, field)));
+    }
 
-        for (AbstractRecordCommand command : commandsToExecute) {
-            List<Object> values = Stream.concat(command.getValues(firstCommand.getFields()), table.getVirtualPartition().stream().map(FieldAndValue::getValue)).collect(toList());
-            if (onDuplicateKey == OnDuplicateKey.UPDATE) {
-                values = Stream.concat(values.stream(), values.stream()).collect(toList());
+    private AffectedRows executeMultiRowInsertCommands(DataTable table, FieldsSignature signature, List<Field<?>> commandFields, List<? extends CreateRecordCommand> commandsToExecute, OnDuplicateKey onDuplicateKey) {
+
+        final Optional<GeneratedKeyRecorder> generatedKeyRecorder = Optional.ofNullable(table.getIdentity())
+                .filter(identity -> isMissingIdentityValue(identity, commandsToExecute))
+                .map(identity -> new GeneratedKeyRecorder(identity.getField(), commandsToExecute.size()));
+
+        DSLContext dslContext = generatedKeyRecorder.map(g -> g.newRecordingJooq(this.dslContext)).orElse(this.dslContext);
+
+        List<Field<?>> fields = Stream.concat(commandFields.stream(), table.getVirtualPartition().stream().map(FieldAndValue::getField)).collect(toList());
+        int rowsPerStatement = config.rowsPerStatement(fields.size());
+
+        AffectedRows affectedRows = AffectedRows.empty();
+        // All the chunks but the last one are of the same size so they share a statement and a batch
+        for (List<? extends List<? extends CreateRecordCommand>> sameSizeChunks : sameSizeChunks(commandsToExecute, rowsPerStatement)) {
+            int rows = sameSizeChunks.get(0).size();
+            Query insert = StatementsCache.of(table).statement(dslContext, StatementKey.multiRowInsert(signature, onDuplicateKey, rows),
+                    () -> multiRowInsert(dslContext, table, signature, fields, commandFields, rows, onDuplicateKey));
+            BatchBindStep batch = dslContext.batch(insert);
+            for (List<? extends CreateRecordCommand> chunk : sameSizeChunks) {
+                batch.bind(multiRowValues(table, commandFields, fields.size(), chunk));
+            }
+            for (int count : batch.execute()) {
+                affectedRows = affectedRows.plus(multiRowInsertAffectedRows(count, rows, onDuplicateKey));
             }
-            batch.bind(values.toArray());
         }
-        int[] result = batch.execute();
-        // See https://dev.mysql.com/doc/refman/5.7/en/mysql-affected-rows.html for explanation
-        // In case of regular INSERT (without IGNORE or ON DUPLICATE KEY UPDATE) the result is -2 for every inserted row
-        int inserted = (int) IntStream.of(result).filter(i -> i == 1 || i == -2).count();
-        int updated = (int) IntStream.of(result).filter(i -> i == 2).count();
 
         generatedKeyRecorder
                 .map(GeneratedKeyRecorder::getGeneratedKeys)
                 .ifPresent(generatedKeys -> setIdsToCommands(table.getIdentity().getField(), commandsToExecute, generatedKeys));
 
-        return AffectedRows.insertedAndUpdated(inserted, updated);
+        return affectedRows;
+    }
+
+    // Each statement is followed by LAST_INSERT_ID() on the same connection, which is the key generated for its first row
+    private AffectedRows executeLastInsertIdInsertCommands(DataTable table, FieldsSignature signature, List<Field<?>> commandFields, List<? extends CreateRecordCommand> commandsToExecute, long autoIncrementStep) {
+        List<Field<?>> fields = Stream.concat(commandFields.stream(), table.getVirtualPartition().stream().map(FieldAndValue::getField)).collect(toList());
+        Field<?> identityField = table.getIdentity().getField();
+
+        return dslContext.connectionResult(connection -> {
+            DSLContext connectionContext = DSL.using(connection, dslContext.dialect(), dslContext.settings());
+            AffectedRows affectedRows = AffectedRows.empty();
+            for (List<? extends CreateRecordCommand> chunk : Lists.partition(commandsToExecute, config.rowsPerStatement(fields.size()))) {
+                int rows = chunk.size();
+                Query insert = StatementsCache.of(table).statement(connectionContext, StatementKey.multiRowInsert(signature, OnDuplicateKey.FAIL, rows),
+                        () -> multiRowInsert(connectionContext, table, signature, fields, commandFields, rows, OnDuplicateKey.FAIL));
+                int count = connectionContext.batch(insert).bind(multiRowValues(table, commandFields, fields.size(), chunk)).execute()[0];
+                long firstKey = connectionContext.lastID().longValue();
+                for (int i = 0; i < rows; i++) {
+                    //noinspection unchecked
+                    chunk.get(i).set((Field<Object>) identityField, identityField.getDataType().convert(firstKey + i * autoIncrementStep));
+                }
+                affectedRows = affectedRows.plus(multiRowInsertAffectedRows(count, rows, OnDuplicateKey.FAIL));
+            }
+            return affectedRows;
+        });
+    }
+
+    private boolean canComputeGeneratedKeys(DataTable table, List<? extends CreateRecordCommand> commands, OnDuplicateKey onDuplicateKey) {
+        Identity<Record, ?> identity = table.getIdentity();
+        return config.getGeneratedKeysStrategy() != GeneratedKeysStrategy.RETURN_GENERATED_KEYS &&
+                identity != null &&
+                onDuplicateKey == OnDuplicateKey.FAIL &&
+                commands.stream().allMatch(command -> command.get(identity.getField()) == null);
+    }
+
+    // Empty if the keys generated by a multi-row insert are not guaranteed to be consecutive
+    private OptionalLong resolveConsecutiveAutoIncrementStep() {
+        if (config.getGeneratedKeysStrategy() == GeneratedKeysStrategy.DETECT) {
+            Record2<Integer, Long> variables = dslContext.select(
+                    DSL.field("@@innodb_autoinc_lock_mode", Integer.class),
+                    DSL.field("@@auto_increment_increment", Long.class)).fetchOne();
+            return variables.value1() < 2 ? OptionalLong.of(variables.value2()) : OptionalLong.empty();
+        }
+        return OptionalLong.of(dslContext.select(DSL.field("@@auto_increment_increment", Long.class)).fetchOne().value1());
+    }
+
+    private Insert<Record> multiRowInsert(DSLContext dslContext, DataTable table, FieldsSignature signature, List<Field<?>> fields, List<Field<?>> commandFields, int rows, OnDuplicateKey onDuplicateKey) {
+        return multiRowInsert(dslContext, table, signature, fields, commandFields, Collections.nCopies(rows, new Object[fields.size()]), onDuplicateKey);
+    }
+
+    private Insert<Record> multiRowInsert(DSLContext dslContext, DataTable table, FieldsSignature signature, List<Field<?>> fields, List<Field<?>> commandFields, List<Object[]> rows, OnDuplicateKey onDuplicateKey) {
+        InsertValuesStepN<Record> insertValuesStepN = dslContext.insertInto(table, fields);
+        for (Object[] row : rows) {
+            insertValuesStepN = insertValuesStepN.values(row);
+        }
+        switch (onDuplicateKey) {
+            case IGNORE:
+                return insertValuesStepN.onDuplicateKeyIgnore();
+            case UPDATE:
+                InsertOnDuplicateSetStep<Record> insertOnDuplicateSetStep = insertValuesStepN.onDuplicateKeyUpdate();
+                for (Field<?> field : commandFields) {
+                    insertOnDuplicateSetStep = setToInsertedValue(insertOnDuplicateSetStep, signature, field);
+                }
+                //noinspection unchecked
+                return (Insert<Record>) insertOnDuplicateSetStep;
+            case FAIL:
+            default:
+                return insertValuesStepN;
+        }
+    }
+
+    // VALUES(col) refers to the value the row would have been inserted with, which is the argument of an expression
+    private <T> InsertOnDuplicateSetStep<Record> setToInsertedValue(InsertOnDuplicateSetStep<Record> insertOnDuplicateSetStep, FieldsSignature signature, Field<T> field) {
+        return insertOnDuplicateSetStep.set(field, placeholderOf(signature, field, DSL.field("values({0})", field.getDataType(), DSL.name(field.getName()))));
+    }
+
+    private Object[] multiRowValues(DataTable table, List<Field<?>> commandFields, int valuesPerRow, List<? extends CreateRecordCommand> chunk) {
+        Object[] values = new Object[chunk.size() * valuesPerRow];
+        Object[] partitionValues = partitionValues(table);
+        int i = 0;
+        for (CreateRecordCommand command : chunk) {
+            i = command.copyValues(commandFields, values, i);
+            System.arraycopy(partitionValues, 0, values, i, partitionValues.length);
+            i += partitionValues.length;
+        }
+        return values;
+    }
+
+    /**
+     * @return the values of the command in the order of the fields, followed by the given values
+     */
+    private static Object[] rowOf(AbstractRecordCommand command, List<Field<?>> fields, Object[]... tails) {
+        int length = fields.size();
+        for (Object[] tail : tails) {
+            length += tail.length;
+        }
+        Object[] values = new Object[length];
+        int i = command.copyValues(fields, values, 0);
+        for (Object[] tail : tails) {
+            System.arraycopy(tail, 0, values, i, tail.length);
+            i += tail.length;
+        }
+        return values;
+    }
+
+    private Object[] partitionValues(DataTable table) {
+        return table.getVirtualPartition().stream().map(FieldAndValue::getValue).toArray();
+    }
+
+    // A multi-row statement reports one count for all its rows. See https://dev.mysql.com/doc/refman/5.7/en/mysql-affected-rows.html
+    // With ON DUPLICATE KEY UPDATE every inserted row counts 1 and every updated row counts 2, so the surplus over the number of rows is the number of updates
+    private AffectedRows multiRowInsertAffectedRows(int count, int rows, OnDuplicateKey onDuplicateKey) {
+        if (count == Statement.SUCCESS_NO_INFO) {
+            return AffectedRows.insertedAndUpdated(rows, 0);
+        }
+        if (onDuplicateKey == OnDuplicateKey.UPDATE) {
+            int updated = Math.max(0, count - rows);
+            return AffectedRows.insertedAndUpdated(count - 2 * updated, updated);
+        }
+        return AffectedRows.insertedAndUpdated(count, 0);
+    }
+
+    private <C> List<List<List<C>>> sameSizeChunks(List<C> commands, int chunkSize) {
+        List<List<C>> chunks = Lists.partition(commands, chunkSize);
+        int fullChunks = commands.size() / chunkSize;
+        if (fullChunks == 0 || fullChunks == chunks.size()) {
+            return ImmutableList.of(chunks);
+        }
+        return ImmutableList.of(chunks.subList(0, fullChunks), chunks.subList(fullChunks, chunks.size()));
+    }
+
+    // Empty if the connection is not of Connector/J, so the records have to be inserted otherwise
+    private Optional<AffectedRows> executeLoadDataInsertCommands(DataTable table, List<Field<?>> commandFields, List<? extends CreateRecordCommand> commandsToExecute, OnDuplicateKey onDuplicateKey) {
+        List<Field<?>> fields = Stream.concat(commandFields.stream(), table.getVirtualPartition().stream().map(FieldAndValue::getField)).collect(toList());
+        String sql = "LOAD DATA LOCAL INFILE 'records.tsv'" +
+                (onDuplicateKey == OnDuplicateKey.IGNORE ? " IGNORE" : "") +
+                " INTO TABLE " + dslContext.render(table) +
+                " CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' " +
+                seq(fields).map(field -> dslContext.render(DSL.name(field.getName()))).toString(", ", "(", ")");
+        Iterator<Object[]> rows = commandsToExecute.stream().map(command -> loadDataRow(table, commandFields, fields.size(), command)).iterator();
+
+        Optional<Integer> inserted = dslContext.connectionResult(connection -> {
+            try (java.sql.Statement statement = connection.createStatement()) {
+                if (!statement.isWrapperFor(com.mysql.jdbc.Statement.class)) {
+                    return Optional.empty();
+                }
+                statement.unwrap(com.mysql.jdbc.Statement.class).setLocalInfileInputStream(new TsvInputStream(rows));
+                return Optional.of(statement.executeUpdate(sql));
+            }
+        });
+        if (inserted.isPresent() && onDuplicateKey == OnDuplicateKey.FAIL && inserted.get() < commandsToExecute.size()) {
+            throw new DataAccessException("LOAD DATA into " + table.getName() + " inserted " + inserted.get() + " of " +
+                    commandsToExecute.size() + " records, the others were rejected as duplicate keys or invalid values");
+        }
+        return inserted.map(count -> AffectedRows.insertedAndUpdated(count, 0));
+    }
+
+    // Values are passed to the server as text, so they are converted to their database types first
+    private Object[] loadDataRow(DataTable table, List<Field<?>> commandFields, int valuesPerRow, CreateRecordCommand command) {
+        Object[] values = new Object[valuesPerRow];
+        command.copyValues(commandFields, values, 0);
+        int i = 0;
+        for (Field<?> field : commandFields) {
+            values[i] = toDatabaseValue(field, values[i]);
+            i++;
+        }
+        for (FieldAndValue<?> partitionFieldAndValue : table.getVirtualPartition()) {
+            values[i++] = toDatabaseValue(partitionFieldAndValue.getField(), partitionFieldAndValue.getValue());
+        }
+        return values;
+    }
+
+    private <T> Object toDatabaseValue(Field<T> field, Object value) {
+        //noinspection unchecked
+        return ((Converter<Object, T>) field.getConverter()).to((T) value);
+    }
+
+    private boolean canLoadData(DataTable table, List<? extends CreateRecordCommand> commands, OnDuplicateKey onDuplicateKey) {
+        Identity<Record, ?> identity = table.getIdentity();
+        return onDuplicateKey != OnDuplicateKey.UPDATE && (identity == null || !isMissingIdentityValue(identity, commands));
+    }
+
+    // Generated keys of a multi-row insert are the consecutive values starting at the first generated one, so they can be
+    // mapped back to records only if every record gets a generated key, and only when no record is ignored or updated instead
+    private boolean canInsertMultiRow(DataTable table, List<? extends CreateRecordCommand> commands, OnDuplicateKey onDuplicateKey) {
+        Identity<Record, ?> identity = table.getIdentity();
+        if (identity == null || !isMissingIdentityValue(identity, commands)) {
+            return true;
+        }
+        return onDuplicateKey == OnDuplicateKey.FAIL && commands.stream().allMatch(command -> command.get(identity.getField()) == null);
+    }
+
+    private boolean isMissingIdentityValue(Identity<Record, ?> identity, List<? extends CreateRecordCommand> commands) {
+        return commands.stream().anyMatch(command -> command.get(identity.getField()) == null);
     }
 
     private void setIdsToCommands(Field idField, List<? extends CreateRecordCommand> commandsToExecute, List<Object> generatedKeys) {
         seq(commandsToExecute).zip(generatedKeys).forEach(pair -> pair.v1.set(idField, pair.v2));
     }
 
-    private Set<String> getFieldsNames(AbstractRecordCommand command) {
-        return command.getFields().map(Field::getName).collect(toSet());
+    /**
+     * Collects the writes of several tables and sends them as a single static JDBC batch with the values inlined, in
+     * the order they were added. With <code>allowMultiQueries</code> or <code>rewriteBatchedStatements</code> the
+     * driver sends the whole batch in one round trip, otherwise it still executes the statements one by one. Deletes
+     * and inserts of a table take a statement per {@link CommandsExecutorConfig#getMaxRowsPerStatement()} records and
+     * updates a statement per record, so it pays off for a handful of records at most. Generated keys are not read
+     * back, see {@link #needsGeneratedKeys(DataTable, Collection)}.
+     */
+    public class Pipeline {
+
+        private final List<Query> queries = new ArrayList<>();
+        private final List<String> tableNames = new ArrayList<>();
+        private final List<IntFunction<AffectedRows>> affectedRowsOfCounts = new ArrayList<>();
+
+        private Pipeline() {
+        }
+
+        public Pipeline deletes(DataTable table, Collection<? extends DeleteRecordCommand> commands) {
+            if (commands.isEmpty()) {
+                return this;
+            }
+            TableField[] idFields = commands.iterator().next().getId().getTableFields();
+            for (List<? extends DeleteRecordCommand> chunk : Lists.partition(ImmutableList.copyOf(commands), config.rowsPerStatement(idFields.length))) {
+                add(table, dslContext.deleteFrom(table).where(idsIn(idFields, seq(chunk).map(DeleteRecordCommand::getId).toList())).and(partitionCondition(table)), count -> AffectedRows.deleted(Math.max(0, count)));
+            }
+            return this;
+        }
+
+        public Pipeline inserts(DataTable table, Collection<? extends CreateRecordCommand> commands, OnDuplicateKey onDuplicateKey) {
+            StatementsCache statementsCache = StatementsCache.of(table);
+            Map<FieldsSignature, List<CreateRecordCommand>> commandsBySignature = new LinkedHashMap<>();
+            for (CreateRecordCommand command : commands) {
+                commandsBySignature.computeIfAbsent(statementsCache.signatureOf(command), signature -> new ArrayList<>()).add(command);
+            }
+            for (Map.Entry<FieldsSignature, List<CreateRecordCommand>> entry : commandsBySignature.entrySet()) {
+                List<CreateRecordCommand> homogeneousCommands = entry.getValue();
+                List<Field<?>> commandFields = statementsCache.inColumnsOrder(homogeneousCommands.get(0).getFields());
+                List<Field<?>> fields = Stream.concat(commandFields.stream(), table.getVirtualPartition().stream().map(FieldAndValue::getField)).collect(toList());
+                for (List<CreateRecordCommand> chunk : Lists.partition(homogeneousCommands, config.rowsPerStatement(fields.size()))) {
+                    Object[] partitionValues = partitionValues(table);
+                    List<Object[]> rows = chunk.stream().map(command -> rowOf(command, commandFields, partitionValues)).collect(toList());
+                    add(table, multiRowInsert(dslContext, table, entry.getKey(), fields, commandFields, rows, onDuplicateKey),
+                            count -> multiRowInsertAffectedRows(Math.max(0, count), chunk.size(), onDuplicateKey));
+                }
+            }
+            return this;
+        }
+
+        public Pipeline updates(DataTable table, Collection<? extends UpdateRecordCommand> commands) {
+            for (UpdateRecordCommand command : commands) {
+                if (command.getFields().findAny().isPresent()) {
+                    Map<Field<?>, Object> values = new LinkedHashMap<>();
+                    command.getFields().forEach(field -> values.put(field, valueOf(field, command.get(field))));
+                    add(table, dslContext.update(table).set(values).where(idEquals(command.getId())).and(partitionCondition(table)), count -> {
+                        command.setUpdated(count != 0);
+                        return AffectedRows.updated(Math.max(0, count));
+                    });
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return the rows affected by the pipeline by the name of their table
+         */
+        public Map<String, AffectedRows> execute() {
+            Map<String, AffectedRows> affectedRows = new LinkedHashMap<>();
+            if (queries.isEmpty()) {
+                return affectedRows;
+            }
+            int[] counts = dslContext.batch(queries).execute();
+            for (int i = 0; i < queries.size(); i++) {
+                affectedRows.merge(tableNames.get(i), affectedRowsOfCounts.get(i).apply(counts[i]), AffectedRows::plus);
+            }
+            affectedRows.replaceAll((tableName, tableAffectedRows) -> tableAffectedRows.plusChunks(1));
+            return affectedRows;
+        }
+
+        private void add(DataTable table, Query query, IntFunction<AffectedRows> affectedRowsOfCount) {
+            queries.add(query);
+            tableNames.add(table.getName());
+            affectedRowsOfCounts.add(affectedRowsOfCount);
+        }
+    }
+
+    /**
+     * Runs the statement of a range of keys of a set-based update or delete, such as in a transaction of its own
+     */
+    @FunctionalInterface
+    public interface RangeWriter {
+
+        RangeWriter DIRECT = Supplier::get;
+
+        AffectedRows write(Supplier<AffectedRows> statement);
     }
 
     @FunctionalInterface
     interface HomogeneousChunkExecutor<C extends AbstractRecordCommand> {
-        AffectedRows execute(List<C> commands);
+        AffectedRows execute(FieldsSignature signature, List<Field<?>> fields, List<C> commands);
     }
 
 }
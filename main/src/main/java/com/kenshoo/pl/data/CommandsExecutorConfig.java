@@ -0,0 +1,422 @@
+package com.kenshoo.pl.data;
+
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Tuning knobs of {@link CommandsExecutor}. By default inserts and updates are sent as one JDBC batch entry per
+ * record, except for updates of at least {@link #DEFAULT_TEMP_TABLE_UPDATE_THRESHOLD} records of the same fields
+ * which are applied through a temp table. Deletes are sent as <code>IN</code> lists, or through a temp table from
+ * {@link #DEFAULT_TEMP_TABLE_DELETE_THRESHOLD} records. Every other strategy has to be turned on explicitly through
+ * the {@link Builder}.
+ */
+public class CommandsExecutorConfig {
+
+    /**
+     * MySQL refuses prepared statements with more than 65535 placeholders
+     */
+    public static final int MAX_BIND_VALUES_PER_STATEMENT = 65535;
+
+    public static final int DEFAULT_TEMP_TABLE_UPDATE_THRESHOLD = 10000;
+
+    public static final int DEFAULT_TEMP_TABLE_DELETE_THRESHOLD = 10000;
+
+    public static final int DEFAULT_CONDITIONAL_KEY_RANGE = 10000;
+
+    public static final int DEFAULT_CONDITIONAL_FLOW_CHUNK_SIZE = 1000;
+
+    public static final int DEFAULT_SAVEPOINT_RETRIES = 1;
+
+    public static final Duration DEFAULT_SAVEPOINT_RETRY_DELAY = Duration.ofMillis(100);
+
+    public static final CommandsExecutorConfig DEFAULT = new Builder().build();
+
+    private final InsertStrategy insertStrategy;
+    private final int maxRowsPerStatement;
+    private final int maxBindValuesPerStatement;
+    private final int maxRowsPerBatch;
+    private final long maxBytesPerBatch;
+    private final Duration targetBatchLatency;
+    private final int tempTableUpdateThreshold;
+    private final int tempTableDeleteThreshold;
+    private final GeneratedKeysStrategy generatedKeysStrategy;
+    private final int maxPipelinedRecords;
+    private final boolean lockOrderedWrites;
+    private final UpdateStrategy updateStrategy;
+    private final int conditionalKeyRange;
+    private final int conditionalFlowChunkSize;
+    private final int savepointChunkSize;
+    private final int savepointRetries;
+    private final Duration savepointRetryDelay;
+
+    private CommandsExecutorConfig(InsertStrategy insertStrategy,
+                                   int maxRowsPerStatement,
+                                   int maxBindValuesPerStatement,
+                                   int maxRowsPerBatch,
+                                   long maxBytesPerBatch,
+                                   Duration targetBatchLatency,
+                                   int tempTableUpdateThreshold,
+                                   int tempTableDeleteThreshold,
+                                   GeneratedKeysStrategy generatedKeysStrategy,
+                                   int maxPipelinedRecords,
+                                   boolean lockOrderedWrites,
+                                   UpdateStrategy updateStrategy,
+                                   int conditionalKeyRange,
+                                   int conditionalFlowChunkSize,
+                                   int savepointChunkSize,
+                                   int savepointRetries,
+                                   Duration savepointRetryDelay) {
+        this.insertStrategy = insertStrategy;
+        this.maxRowsPerStatement = maxRowsPerStatement;
+        this.maxBindValuesPerStatement = maxBindValuesPerStatement;
+        this.maxRowsPerBatch = maxRowsPerBatch;
+        this.maxBytesPerBatch = maxBytesPerBatch;
+        this.targetBatchLatency = targetBatchLatency;
+        this.tempTableUpdateThreshold = tempTableUpdateThreshold;
+        this.tempTableDeleteThreshold = tempTableDeleteThreshold;
+        this.generatedKeysStrategy = generatedKeysStrategy;
+        this.maxPipelinedRecords = maxPipelinedRecords;
+        this.lockOrderedWrites = lockOrderedWrites;
+        this.updateStrategy = updateStrategy;
+        this.conditionalKeyRange = conditionalKeyRange;
+        this.conditionalFlowChunkSize = conditionalFlowChunkSize;
+        this.savepointChunkSize = savepointChunkSize;
+        this.savepointRetries = savepointRetries;
+        this.savepointRetryDelay = savepointRetryDelay;
+    }
+
+    public InsertStrategy getInsertStrategy() {
+        return insertStrategy;
+    }
+
+    public int getMaxRowsPerStatement() {
+        return maxRowsPerStatement;
+    }
+
+    public int getMaxBindValuesPerStatement() {
+        return maxBindValuesPerStatement;
+    }
+
+    /**
+     * @return the maximal number of records sent to the database in a single JDBC batch
+     */
+    public int getMaxRowsPerBatch() {
+        return maxRowsPerBatch;
+    }
+
+    /**
+     * @return the maximal estimated size in bytes of the values bound to a single JDBC batch. Keep it below
+     * <code>max_allowed_packet</code> when the driver rewrites batches into multi-row statements.
+     */
+    public long getMaxBytesPerBatch() {
+        return maxBytesPerBatch;
+    }
+
+    /**
+     * @return the latency a single batch should take. When set, the number of records per batch shrinks after
+     * slower batches and grows back after faster ones, never exceeding {@link #getMaxRowsPerBatch()}.
+     */
+    public Optional<Duration> getTargetBatchLatency() {
+        return Optional.ofNullable(targetBatchLatency);
+    }
+
+    /**
+     * @return the number of updates of the same fields from which they are loaded into a temp table and applied by a
+     * single <code>UPDATE ... JOIN</code> instead of a statement per record
+     */
+    public int getTempTableUpdateThreshold() {
+        return tempTableUpdateThreshold;
+    }
+
+    /**
+     * @return the number of deletes from which their keys are loaded into a temp table and the records are deleted by a
+     * single <code>DELETE ... JOIN</code>. Fewer deletes are sent as <code>IN</code> lists of up to
+     * {@link #getMaxRowsPerStatement()} keys, composite keys as <code>(a, b) IN ((?, ?), ...)</code>.
+     */
+    public int getTempTableDeleteThreshold() {
+        return tempTableDeleteThreshold;
+    }
+
+    public GeneratedKeysStrategy getGeneratedKeysStrategy() {
+        return generatedKeysStrategy;
+    }
+
+    /**
+     * @return the number of records up to which all the writes of a commit, to all its tables, are sent as a single
+     * static JDBC batch (see {@link CommandsExecutor.Pipeline}) rather than a batch per table and operation. The
+     * driver sends such a batch in one round trip when the connection has <code>allowMultiQueries</code> or
+     * <code>rewriteBatchedStatements</code> set. 0, the default, never pipelines.
+     */
+    public int getMaxPipelinedRecords() {
+        return maxPipelinedRecords;
+    }
+
+    /**
+     * @return <code>true</code> if the tables of a commit are written in a fixed order, referenced tables first, and
+     * the records of every table by ascending key, so that concurrent writers of overlapping rows lock them in the
+     * same order instead of deadlocking. Off by default.
+     */
+    public boolean isLockOrderedWrites() {
+        return lockOrderedWrites;
+    }
+
+    public UpdateStrategy getUpdateStrategy() {
+        return updateStrategy;
+    }
+
+    /**
+     * @return the number of matching rows a single statement updates or deletes by condition, see
+     * {@link CommandsExecutor#executeUpdate(ConditionalUpdateRecordCommand)}
+     */
+    public int getConditionalKeyRange() {
+        return conditionalKeyRange;
+    }
+
+    /**
+     * @return the number of matching entities changed by a single flow when a change by condition goes through the
+     * flow rather than by set-based statements, as it does for an audited flow
+     */
+    public int getConditionalFlowChunkSize() {
+        return conditionalFlowChunkSize;
+    }
+
+    /**
+     * @return the number of records of a table written under a savepoint of their own. A chunk failing to be written
+     * is rolled back to its savepoint and bisected until the failing records are isolated, so that only their entities
+     * fail while the rest of the transaction goes on. 0, the default, writes all the records of a commit without
+     * savepoints, so any failure fails the whole transaction. Failures are isolated per record, so an entity whose
+     * record fails in one table keeps the records already written to others.
+     */
+    public int getSavepointChunkSize() {
+        return savepointChunkSize;
+    }
+
+    /**
+     * @return the number of times a chunk written under a savepoint, together with the halves it is bisected into, is
+     * retried after lock wait timeouts, before the records still timing out fail all together
+     */
+    public int getSavepointRetries() {
+        return savepointRetries;
+    }
+
+    /**
+     * @return the time waited before the first retry of a chunk after a lock wait timeout, doubled before every
+     * further retry, so that the transaction holding the lock gets a chance to finish
+     */
+    public Duration getSavepointRetryDelay() {
+        return savepointRetryDelay;
+    }
+
+    /**
+     * @return how many rows of the given width fit into a single multi-row statement without exceeding either
+     * the row limit or the bind values limit. Always at least 1.
+     */
+    public int rowsPerStatement(int valuesPerRow) {
+        return Math.max(1, Math.min(maxRowsPerStatement, maxBindValuesPerStatement / Math.max(1, valuesPerRow)));
+    }
+
+    public enum InsertStrategy {
+        /**
+         * A single-row <code>INSERT ... VALUES (?, ...)</code> bound once per record in a JDBC batch. Unless the
+         * driver rewrites batches, this costs a round trip per record.
+         */
+        BATCH,
+        /**
+         * <code>INSERT ... VALUES (...),(...),...</code> statements chunked by {@link #getMaxRowsPerStatement()} and
+         * {@link #getMaxBindValuesPerStatement()}. Generated keys of a table identity are derived by the driver from
+         * the first ID of every statement, hence rely on the consecutive allocation of auto-increment values
+         * (<code>innodb_autoinc_lock_mode</code> 0 or 1). Inserts that cannot map generated keys back to their records
+         * (e.g. <code>IGNORE</code> into a table with identity) fall back to {@link #BATCH}.
+         */
+        MULTI_ROW_VALUES,
+        /**
+         * The records are streamed as tab separated text into <code>LOAD DATA LOCAL INFILE</code> through the
+         * Connector/J input stream hook, with no file written to disk. This requires <code>local_infile</code> to be
+         * enabled on the server and <code>allowLoadLocalInfile</code> on the connection. Generated keys are not
+         * retrieved, so inserts with missing values of a table identity fall back to {@link #BATCH}, as do inserts
+         * <code>ON DUPLICATE KEY UPDATE</code> and connections of other drivers. The server turns errors of
+         * <code>LOAD DATA LOCAL</code> into warnings, so a plain insert fails only afterwards, when fewer rows than
+         * records were inserted.
+         */
+        LOAD_DATA
+    }
+
+    public enum UpdateStrategy {
+        /**
+         * A single-row <code>UPDATE ... WHERE id = ?</code> bound once per record in a JDBC batch
+         */
+        BATCH,
+        /**
+         * Records updating the same fields are sent as <code>UPDATE ... SET f = CASE WHEN id = ? THEN ? ... END
+         * WHERE id IN (...)</code> statements, as long as a cost model of statement overhead against CASE evaluation
+         * estimates them cheaper than {@link #BATCH}. The rows per statement are chosen by the same model and bounded
+         * by {@link #getMaxRowsPerStatement()} and {@link #getMaxBindValuesPerStatement()}. Updates of an ID field fall
+         * back to {@link #BATCH}, and updates reaching {@link #getTempTableUpdateThreshold()} still go through a temp
+         * table.
+         */
+        CASE_WHEN
+    }
+
+    public enum GeneratedKeysStrategy {
+        /**
+         * Every insert statement is prepared with <code>RETURN_GENERATED_KEYS</code> and the keys are read from the
+         * result set the driver returns for it.
+         */
+        RETURN_GENERATED_KEYS,
+        /**
+         * Relies on the server to allocate consecutive auto-increment values to the rows of a multi-row insert, as it
+         * does with <code>innodb_autoinc_lock_mode</code> 0 or 1. Records missing their identity value are inserted by
+         * multi-row statements whatever the {@link InsertStrategy}, and the keys of every statement are computed from
+         * <code>LAST_INSERT_ID()</code> and <code>auto_increment_increment</code>. Inserts that are not plain, or
+         * that set the identity of some of the records only, fall back to {@link #RETURN_GENERATED_KEYS}.
+         */
+        LAST_INSERT_ID,
+        /**
+         * {@link #LAST_INSERT_ID} if the server reports <code>innodb_autoinc_lock_mode</code> 0 or 1 the first time
+         * keys are generated, {@link #RETURN_GENERATED_KEYS} otherwise
+         */
+        DETECT
+    }
+
+    public static class Builder {
+
+        private InsertStrategy insertStrategy = InsertStrategy.BATCH;
+        private int maxRowsPerStatement = 1000;
+        private int maxBindValuesPerStatement = MAX_BIND_VALUES_PER_STATEMENT;
+        private int maxRowsPerBatch = Integer.MAX_VALUE;
+        private long maxBytesPerBatch = Long.MAX_VALUE;
+        private Duration targetBatchLatency = null;
+        private int tempTableUpdateThreshold = DEFAULT_TEMP_TABLE_UPDATE_THRESHOLD;
+        private int tempTableDeleteThreshold = DEFAULT_TEMP_TABLE_DELETE_THRESHOLD;
+        private GeneratedKeysStrategy generatedKeysStrategy = GeneratedKeysStrategy.RETURN_GENERATED_KEYS;
+        private int maxPipelinedRecords = 0;
+        private boolean lockOrderedWrites = false;
+        private UpdateStrategy updateStrategy = UpdateStrategy.BATCH;
+        private int conditionalKeyRange = DEFAULT_CONDITIONAL_KEY_RANGE;
+        private int conditionalFlowChunkSize = DEFAULT_CONDITIONAL_FLOW_CHUNK_SIZE;
+        private int savepointChunkSize = 0;
+        private int savepointRetries = DEFAULT_SAVEPOINT_RETRIES;
+        private Duration savepointRetryDelay = DEFAULT_SAVEPOINT_RETRY_DELAY;
+
+        public Builder withInsertStrategy(InsertStrategy insertStrategy) {
+            this.insertStrategy = Preconditions.checkNotNull(insertStrategy, "insertStrategy");
+            return this;
+        }
+
+        public Builder withMaxRowsPerStatement(int maxRowsPerStatement) {
+            Preconditions.checkArgument(maxRowsPerStatement > 0, "maxRowsPerStatement must be positive");
+            this.maxRowsPerStatement = maxRowsPerStatement;
+            return this;
+        }
+
+        public Builder withMaxBindValuesPerStatement(int maxBindValuesPerStatement) {
+            Preconditions.checkArgument(maxBindValuesPerStatement > 0 && maxBindValuesPerStatement <= MAX_BIND_VALUES_PER_STATEMENT,
+                    "maxBindValuesPerStatement must be between 1 and " + MAX_BIND_VALUES_PER_STATEMENT);
+            this.maxBindValuesPerStatement = maxBindValuesPerStatement;
+            return this;
+        }
+
+        public Builder withMaxRowsPerBatch(int maxRowsPerBatch) {
+            Preconditions.checkArgument(maxRowsPerBatch > 0, "maxRowsPerBatch must be positive");
+            this.maxRowsPerBatch = maxRowsPerBatch;
+            return this;
+        }
+
+        public Builder withMaxBytesPerBatch(long maxBytesPerBatch) {
+            Preconditions.checkArgument(maxBytesPerBatch > 0, "maxBytesPerBatch must be positive");
+            this.maxBytesPerBatch = maxBytesPerBatch;
+            return this;
+        }
+
+        public Builder withTargetBatchLatency(Duration targetBatchLatency) {
+            Preconditions.checkArgument(targetBatchLatency == null || !targetBatchLatency.isNegative() && !targetBatchLatency.isZero(),
+                    "targetBatchLatency must be positive");
+            this.targetBatchLatency = targetBatchLatency;
+            return this;
+        }
+
+        public Builder withTempTableUpdateThreshold(int tempTableUpdateThreshold) {
+            Preconditions.checkArgument(tempTableUpdateThreshold > 0, "tempTableUpdateThreshold must be positive");
+            this.tempTableUpdateThreshold = tempTableUpdateThreshold;
+            return this;
+        }
+
+        public Builder withTempTableDeleteThreshold(int tempTableDeleteThreshold) {
+            Preconditions.checkArgument(tempTableDeleteThreshold > 0, "tempTableDeleteThreshold must be positive");
+            this.tempTableDeleteThreshold = tempTableDeleteThreshold;
+            return this;
+        }
+
+        public Builder withGeneratedKeysStrategy(GeneratedKeysStrategy generatedKeysStrategy) {
+            this.generatedKeysStrategy = Preconditions.checkNotNull(generatedKeysStrategy, "generatedKeysStrategy");
+            return this;
+        }
+
+        public Builder withMaxPipelinedRecords(int maxPipelinedRecords) {
+            Preconditions.checkArgument(maxPipelinedRecords >= 0, "maxPipelinedRecords must not be negative");
+            this.maxPipelinedRecords = maxPipelinedRecords;
+            return this;
+        }
+
+        public Builder withLockOrderedWrites(boolean lockOrderedWrites) {
+            this.lockOrderedWrites = lockOrderedWrites;
+            return this;
+        }
+
+        public Builder withUpdateStrategy(UpdateStrategy updateStrategy) {
+            this.updateStrategy = Preconditions.checkNotNull(updateStrategy, "updateStrategy");
+            return this;
+        }
+
+        public Builder withConditionalKeyRange(int conditionalKeyRange) {
+            Preconditions.checkArgument(conditionalKeyRange > 0, "conditionalKeyRange must be positive");
+            this.conditionalKeyRange = conditionalKeyRange;
+            return this;
+        }
+
+        public Builder withConditionalFlowChunkSize(int conditionalFlowChunkSize) {
+            Preconditions.checkArgument(conditionalFlowChunkSize > 0, "conditionalFlowChunkSize must be positive");
+            this.conditionalFlowChunkSize = conditionalFlowChunkSize;
+            return this;
+        }
+
+        public Builder withSavepointChunkSize(int savepointChunkSize) {
+            Preconditions.checkArgument(savepointChunkSize >= 0, "savepointChunkSize must not be negative");
+            this.savepointChunkSize = savepointChunkSize;
+            return this;
+        }
+
+        public Builder withSavepointRetries(int savepointRetries) {
+            Preconditions.checkArgument(savepointRetries >= 0, "savepointRetries must not be negative");
+            this.savepointRetries = savepointRetries;
+            return this;
+        }
+
+        public Builder withSavepointRetryDelay(Duration savepointRetryDelay) {
+            Preconditions.checkArgument(!savepointRetryDelay.isNegative(), "savepointRetryDelay must not be negative");
+            this.savepointRetryDelay = savepointRetryDelay;
+            return this;
+        }
+
+        public CommandsExecutorConfig build() {
+            return new CommandsExecutorConfig(insertStrategy,
+                                              maxRowsPerStatement,
+                                              maxBindValuesPerStatement,
+                                              maxRowsPerBatch,
+                                              maxBytesPerBatch,
+                                              targetBatchLatency,
+                                              tempTableUpdateThreshold,
+                                              tempTableDeleteThreshold,
+                                              generatedKeysStrategy,
+                                              maxPipelinedRecords,
+                                              lockOrderedWrites,
+                                              updateStrategy,
+                                              conditionalKeyRange,
+                                              conditionalFlowChunkSize,
+                                              savepointChunkSize,
+                                              savepointRetries,
+                                              savepointRetryDelay);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.kenshoo.pl.data;
+
+import com.kenshoo.jooq.DataTable;
+import org.jooq.Condition;
+
+/**
+ * The values to set on all the rows of a table matching a condition, rather than on a single record
+ */
+public class ConditionalUpdateRecordCommand extends AbstractRecordCommand {
+
+    private final Condition condition;
+
+    public ConditionalUpdateRecordCommand(DataTable table, Condition condition) {
+        super(table);
+        this.condition = condition;
+    }
+
+    public Condition getCondition() {
+        return condition;
+    }
+}
@@ -0,0 +1,55 @@
+package com.kenshoo.pl.data;
+
+import org.jooq.Field;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The set of table columns populated by a record command, as a bit per column index, along with the operator of
+ * every column set to a {@link ColumnExpression}. Commands of the same signature are bound to the same statement.
+ */
+final class FieldsSignature {
+
+    private final BitSet columns;
+    private final Map<String, ColumnExpression.Operator> operators;
+
+    FieldsSignature(BitSet columns) {
+        this(columns, Collections.emptyMap());
+    }
+
+    FieldsSignature(BitSet columns, Map<String, ColumnExpression.Operator> operators) {
+        this.columns = columns;
+        this.operators = operators;
+    }
+
+    boolean hasExpressions() {
+        return !operators.isEmpty();
+    }
+
+    /**
+     * @return the operator of the expression the field is set to, or <code>null</code> if it is set to plain values
+     */
+    ColumnExpression.Operator operatorOf(Field<?> field) {
+        return operators.get(field.getName());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FieldsSignature)) return false;
+        FieldsSignature that = (FieldsSignature) o;
+        return columns.equals(that.columns) && operators.equals(that.operators);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * columns.hashCode() + operators.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return operators.isEmpty() ? columns.toString() : columns + " " + operators;
+    }
+}
@@ -0,0 +1,172 @@
+package com.kenshoo.pl.data;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.kenshoo.jooq.DataTable;
+import com.kenshoo.pl.data.CreateRecordCommand.OnDuplicateKey;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Query;
+import org.jooq.SQLDialect;
+import org.jooq.conf.ParamType;
+import org.jooq.conf.Settings;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.util.Comparator.comparingInt;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Per-table cache of the SQL of the statements {@link CommandsExecutor} binds commands to. Flushing commands of a
+ * shape that was already seen binds them to the SQL rendered the first time instead of building and rendering the
+ * jOOQ query again. The cache is held weakly by the table and keeps a bounded number of statements per table.
+ */
+class StatementsCache {
+
+    private static final int MAX_STATEMENTS_PER_TABLE = 256;
+
+    private static final LoadingCache<DataTable, StatementsCache> CACHE = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(CacheLoader.from(StatementsCache::new));
+
+    private final String tableName;
+    private final TableColumns columns;
+    private final Cache<StatementKey, RenderedStatement> statements = CacheBuilder.newBuilder()
+            .maximumSize(MAX_STATEMENTS_PER_TABLE)
+            .build();
+
+    private StatementsCache(DataTable table) {
+        this.tableName = table.getName();
+        this.columns = TableColumns.of(table);
+    }
+
+    static StatementsCache of(DataTable table) {
+        return CACHE.getUnchecked(table);
+    }
+
+    FieldsSignature signatureOf(AbstractRecordCommand command) {
+        BitSet columns = new BitSet(this.columns.size());
+        Map<String, ColumnExpression.Operator> operators = null;
+        for (int i = 0; i < command.size(); i++) {
+            Field<?> field = command.fieldAt(i);
+            columns.set(columnIndexOf(field));
+            if (command.valueAt(i) instanceof ColumnExpression) {
+                if (operators == null) {
+                    operators = new HashMap<>();
+                }
+                operators.put(field.getName(), ((ColumnExpression<?>) command.valueAt(i)).getOperator());
+            }
+        }
+        return operators == null ? new FieldsSignature(columns) : new FieldsSignature(columns, operators);
+    }
+
+    List<Field<?>> inColumnsOrder(Stream<Field<?>> fields) {
+        return fields.sorted(comparingInt(this::columnIndexOf)).collect(toList());
+    }
+
+    /**
+     * @return a query of the given key, attached to <code>dslContext</code> and ready to be batched. The query built by
+     * <code>queryBuilder</code> is rendered only if the key is not found in the cache.
+     */
+    Query statement(DSLContext dslContext, StatementKey key, Supplier<Query> queryBuilder) {
+        StatementKey fullKey = key.renderedBy(dslContext.dialect(), dslContext.settings());
+        try {
+            return statements.get(fullKey, () -> new RenderedStatement(queryBuilder.get())).bindTo(dslContext);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to build statement for table " + tableName, e.getCause());
+        }
+    }
+
+    private int columnIndexOf(Field<?> field) {
+        int index = columns.indexOf(field);
+        if (index < 0) {
+            throw new IllegalArgumentException("Field " + field.getName() + " is not a column of table " + tableName);
+        }
+        return index;
+    }
+
+    // A batched insert binds its values once more for ON DUPLICATE KEY UPDATE, while a multi-row insert updates from
+    // VALUES(), so the two render differently even for a single row
+    enum Operation {
+        BATCH_INSERT, MULTI_ROW_INSERT, UPDATE
+    }
+
+    static class StatementKey {
+
+        private final Operation operation;
+        private final FieldsSignature fields;
+        private final List<Field<?>> whereFields;
+        private final OnDuplicateKey onDuplicateKey;
+        private final int rows;
+        private final SQLDialect dialect;
+        private final Settings settings;
+
+        private StatementKey(Operation operation, FieldsSignature fields, List<Field<?>> whereFields, OnDuplicateKey onDuplicateKey, int rows, SQLDialect dialect, Settings settings) {
+            this.operation = operation;
+            this.fields = fields;
+            this.whereFields = whereFields;
+            this.onDuplicateKey = onDuplicateKey;
+            this.rows = rows;
+            this.dialect = dialect;
+            this.settings = settings;
+        }
+
+        static StatementKey batchInsert(FieldsSignature fields, OnDuplicateKey onDuplicateKey) {
+            return new StatementKey(Operation.BATCH_INSERT, fields, Collections.emptyList(), onDuplicateKey, 1, null, null);
+        }
+
+        static StatementKey multiRowInsert(FieldsSignature fields, OnDuplicateKey onDuplicateKey, int rows) {
+            return new StatementKey(Operation.MULTI_ROW_INSERT, fields, Collections.emptyList(), onDuplicateKey, rows, null, null);
+        }
+
+        static StatementKey update(FieldsSignature fields, Field<?>[] whereFields) {
+            return new StatementKey(Operation.UPDATE, fields, Arrays.asList(whereFields), null, 1, null, null);
+        }
+
+        // The same statement renders differently under different dialects or settings (e.g. schema mapping)
+        private StatementKey renderedBy(SQLDialect dialect, Settings settings) {
+            return new StatementKey(operation, fields, whereFields, onDuplicateKey, rows, dialect, settings);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof StatementKey)) return false;
+            StatementKey that = (StatementKey) o;
+            return rows == that.rows &&
+                    operation == that.operation &&
+                    onDuplicateKey == that.onDuplicateKey &&
+                    dialect == that.dialect &&
+                    Objects.equals(fields, that.fields) &&
+                    whereFields.equals(that.whereFields) &&
+                    Objects.equals(settings, that.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operation, fields, whereFields, onDuplicateKey, rows, dialect);
+        }
+    }
+
+    // The SQL with indexed placeholders along with the typed params it was rendered from, so values bound later
+    // are converted by the data types of the original fields. Inlined params, such as constants of expressions, have
+    // no placeholder
+    private static class RenderedStatement {
+
+        private final String sql;
+        private final Object[] params;
+
+        private RenderedStatement(Query query) {
+            this.sql = query.getSQL(ParamType.INDEXED);
+            this.params = query.getParams().values().stream().filter(param -> !param.isInline()).toArray();
+        }
+
+        private Query bindTo(DSLContext dslContext) {
+            return dslContext.query(sql, params);
+        }
+    }
+}
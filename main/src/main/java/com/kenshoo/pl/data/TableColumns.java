@@ -0,0 +1,49 @@
+package com.kenshoo.pl.data;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.kenshoo.jooq.DataTable;
+import org.jooq.Field;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The positions of the columns of a table, by which the signature of a statement records the columns it writes. Held
+ * weakly by the table.
+ */
+class TableColumns {
+
+    private static final LoadingCache<DataTable, TableColumns> CACHE = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(CacheLoader.from(TableColumns::new));
+
+    private final Map<String, Integer> columnIndexes;
+
+    private TableColumns(DataTable table) {
+        Field<?>[] columns = table.fields();
+        int size = columns == null ? 0 : columns.length;
+        Map<String, Integer> columnIndexes = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            columnIndexes.put(columns[i].getName(), i);
+        }
+        this.columnIndexes = columnIndexes;
+    }
+
+    static TableColumns of(DataTable table) {
+        return CACHE.getUnchecked(table);
+    }
+
+    int size() {
+        return columnIndexes.size();
+    }
+
+    /**
+     * @return the position of the column of the field, or <code>-1</code> if it is not a column of the table
+     */
+    int indexOf(Field<?> field) {
+        Integer index = columnIndexes.get(field.getName());
+        return index == null ? -1 : index;
+    }
+}
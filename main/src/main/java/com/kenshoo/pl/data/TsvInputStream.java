@@ -0,0 +1,131 @@
+package com.kenshoo.pl.data;
+
+import org.jooq.EnumType;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+
+/**
+ * Renders rows of database values as the tab separated text read by <code>LOAD DATA ... FIELDS TERMINATED BY '\t'
+ * ESCAPED BY '\\' LINES TERMINATED BY '\n'</code> in UTF-8. A row is rendered only when the reader gets to it, so the
+ * data set is never held in memory or written to disk as a whole.
+ */
+class TsvInputStream extends InputStream {
+
+    private static final byte[] NULL = {'\\', 'N'};
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+
+    private final Iterator<Object[]> rows;
+    private final ByteArrayOutputStream rowBuffer = new ByteArrayOutputStream();
+    private byte[] row = new byte[0];
+    private int position = 0;
+
+    TsvInputStream(Iterator<Object[]> rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public int read() {
+        if (!hasRemaining()) {
+            return -1;
+        }
+        return row[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int read = 0;
+        while (read < len && hasRemaining()) {
+            int count = Math.min(len - read, row.length - position);
+            System.arraycopy(row, position, b, off + read, count);
+            position += count;
+            read += count;
+        }
+        return read == 0 ? -1 : read;
+    }
+
+    private boolean hasRemaining() {
+        while (position == row.length) {
+            if (!rows.hasNext()) {
+                return false;
+            }
+            row = render(rows.next());
+            position = 0;
+        }
+        return true;
+    }
+
+    private byte[] render(Object[] values) {
+        rowBuffer.reset();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                rowBuffer.write('\t');
+            }
+            writeValue(values[i]);
+        }
+        rowBuffer.write('\n');
+        return rowBuffer.toByteArray();
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            rowBuffer.write(NULL, 0, NULL.length);
+        } else if (value instanceof byte[]) {
+            writeEscaped((byte[]) value);
+        } else {
+            writeEscaped(asText(value).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private String asText(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof LocalDateTime) {
+            return DATE_TIME_FORMAT.format((LocalDateTime) value);
+        }
+        if (value instanceof EnumType) {
+            return ((EnumType) value).getLiteral();
+        }
+        return value.toString();
+    }
+
+    private void writeEscaped(byte[] bytes) {
+        for (byte b : bytes) {
+            switch (b) {
+                case '\\':
+                    rowBuffer.write('\\');
+                    rowBuffer.write('\\');
+                    break;
+                case '\t':
+                    rowBuffer.write('\\');
+                    rowBuffer.write('t');
+                    break;
+                case '\n':
+                    rowBuffer.write('\\');
+                    rowBuffer.write('n');
+                    break;
+                case '\r':
+                    rowBuffer.write('\\');
+                    rowBuffer.write('r');
+                    break;
+                case 0:
+                    rowBuffer.write('\\');
+                    rowBuffer.write('0');
+                    break;
+                default:
+                    rowBuffer.write(b);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.kenshoo.pl.data;
+
+/**
+ * Estimates whether updates of the same fields with different values are cheaper as a JDBC batch of single-row
+ * statements or as multi-row <code>UPDATE ... SET f = CASE WHEN id = ? THEN ? ... END WHERE id IN (...)</code>
+ * statements. Costs are in units of a row looked up and written by the server. Every statement adds
+ * {@link #STATEMENT_COST} for parsing, planning and its share of the round trips, while the CASE of every field
+ * evaluates half of its branches on average for every row written. A CASE statement of <i>k</i> rows and <i>f</i>
+ * fields thus costs <code>STATEMENT_COST + k + f * k * k / 2 * BRANCH_COST</code>, which per row is lowest when
+ * <code>k = sqrt(2 * STATEMENT_COST / (f * BRANCH_COST))</code>.
+ */
+class UpdateCostModel {
+
+    static final double STATEMENT_COST = 20;
+
+    static final double BRANCH_COST = 0.02;
+
+    private UpdateCostModel() {
+    }
+
+    /**
+     * @return the number of rows per CASE statement with the lowest cost per row, bounded by <code>maxRows</code>
+     */
+    static int rowsPerStatement(int fields, int maxRows) {
+        int cheapestRows = (int) Math.round(Math.sqrt(2 * STATEMENT_COST / (Math.max(1, fields) * BRANCH_COST)));
+        return Math.max(1, Math.min(maxRows, cheapestRows));
+    }
+
+    static boolean isCaseCheaper(int rows, int fields, int rowsPerStatement) {
+        return rows > 1 && caseCost(rows, fields, rowsPerStatement) < batchCost(rows);
+    }
+
+    static double batchCost(int rows) {
+        return rows * (STATEMENT_COST + 1);
+    }
+
+    static double caseCost(int rows, int fields, int rowsPerStatement) {
+        int remainder = rows % rowsPerStatement;
+        return rows / rowsPerStatement * caseStatementCost(rowsPerStatement, fields)
+                + (remainder > 0 ? caseStatementCost(remainder, fields) : 0);
+    }
+
+    private static double caseStatementCost(int rows, int fields) {
+        return STATEMENT_COST + rows + fields * (double) rows * rows / 2 * BRANCH_COST;
+    }
+}
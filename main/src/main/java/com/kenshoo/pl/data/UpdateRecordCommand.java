@@ -8,6 +8,7 @@ import org.jooq.TableField;
 public class UpdateRecordCommand extends AbstractRecordCommand {
 
     private final DatabaseId id;
+    private boolean updated = true;
 
     public UpdateRecordCommand(DataTable table, DatabaseId id) {
         super(table);
@@ -37,4 +38,17 @@ public class UpdateRecordCommand extends AbstractRecordCommand {
     public DatabaseId getId() {
         return id;
     }
+
+    /**
+     * @return <code>false</code> if the database reported that the command updated no row, either because no row
+     * matched its ID or because the row already had its values. Reported only where the command was executed by a
+     * statement of its own, otherwise <code>true</code>
+     */
+    public boolean isUpdated() {
+        return updated;
+    }
+
+    void setUpdated(boolean updated) {
+        this.updated = updated;
+    }
 }
@@ -5,6 +5,7 @@ import com.google.common.collect.BiMap;
 import com.kenshoo.jooq.DataTable;
 import com.kenshoo.pl.entity.annotation.Id;
 import com.kenshoo.pl.entity.annotation.IdGeneration;
+import com.kenshoo.pl.entity.annotation.Version;
 import com.kenshoo.pl.entity.converters.EnumAsStringValueConverter;
 import com.kenshoo.pl.entity.converters.IdentityValueConverter;
 import com.kenshoo.pl.entity.equalityfunctions.EntityValueEqualityFunction;
@@ -26,6 +27,7 @@ import static com.kenshoo.pl.entity.internal.EntityTypeReflectionUtil.getFieldAn
 public abstract class AbstractEntityType<E extends EntityType<E>> implements EntityType<E> {
 
     private final Supplier<Optional<IdField<E>>> idField = memoize(this::scanForIdField);
+    private final Supplier<Optional<EntityField<E, ? extends Number>>> versionField = memoize(this::scanForVersionField);
     private EntityField<E, Object> primaryIdentityField;
 
     private final String name;
@@ -153,6 +155,28 @@ public abstract class AbstractEntityType<E extends EntityType<E>> implements Ent
         return idField;
     }
 
+    private Optional<EntityField<E, ? extends Number>> scanForVersionField() {
+        //noinspection unchecked
+        Optional<EntityField<E, ? extends Number>> versionField = getFields()
+                .filter(field -> getFieldAnnotation(this, field, Version.class) != null)
+                .<EntityField<E, ? extends Number>>map(field -> (EntityField<E, ? extends Number>) field)
+                .findFirst();
+
+        versionField.ifPresent(field -> {
+            Class<?> valueClass = field.getValueClass();
+            if ((valueClass != Integer.class && valueClass != Long.class) || field.getDbAdapter().getTable() != getPrimaryTable()) {
+                throw new RuntimeException("Field marked with " + Version.class.getName() + " should be an Integer or Long field of the primary table" +
+                        ", field " + this.toFieldName(field) + " is of type " + valueClass.getName() + " in table " + field.getDbAdapter().getTable().getName());
+            }
+        });
+        return versionField;
+    }
+
+    @Override
+    public Optional<EntityField<E, ? extends Number>> getVersionField() {
+        return versionField.get();
+    }
+
     @Override
     public Optional<EntityField<E, ? extends Number>> getIdField() {
         return idField.get().map(IdField::getField);
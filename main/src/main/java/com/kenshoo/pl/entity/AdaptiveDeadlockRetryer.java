@@ -0,0 +1,144 @@
+package com.kenshoo.pl.entity;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.kenshoo.jooq.DataTable;
+import com.kenshoo.pl.entity.spi.DeadlockDetector;
+import com.kenshoo.pl.entity.spi.PersistenceLayerRetryer;
+import com.kenshoo.pl.entity.spi.ThrowingAction;
+import com.kenshoo.pl.entity.spi.TransactionDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Retries the transaction of a flow which failed on a deadlock or a lock wait timeout, unless it runs within an
+ * outer transaction which the failure rolled back too.
+ * <p>
+ * The waits between attempts follow decorrelated jitter: every wait is drawn uniformly between the base delay and three
+ * times the previous wait, capped by the maximal delay, so that transactions which failed together don't collide again.
+ * The base delay of every primary table adapts to its recent conflict rate, an exponentially weighted average of the
+ * attempts on the table which failed on a conflict, growing from the minimal to the maximal base delay as conflicts
+ * become common.
+ * <p>
+ * The conflicts, retries and waits of a flow are counted in its {@link PersistentLayerStats}.
+ */
+public class AdaptiveDeadlockRetryer implements PersistenceLayerRetryer {
+
+    private final static Logger logger = LoggerFactory.getLogger(AdaptiveDeadlockRetryer.class);
+
+    private int maxRetries = 4;
+    private long minBaseDelayMillis = 10;
+    private long maxBaseDelayMillis = 500;
+    private long maxDelayMillis = 5000;
+    private double conflictRateWeight = 0.1;
+
+    private final DeadlockDetector deadlockDetector;
+    private final TransactionDetector transactionDetector;
+    private final LongConsumer sleeper;
+    private final Map<String, ConflictRate> conflictRates = new ConcurrentHashMap<>();
+
+    public AdaptiveDeadlockRetryer(DeadlockDetector deadlockDetector, TransactionDetector transactionDetector) {
+        this(deadlockDetector, transactionDetector, millis -> Uninterruptibles.sleepUninterruptibly(millis, TimeUnit.MILLISECONDS));
+    }
+
+    @VisibleForTesting
+    AdaptiveDeadlockRetryer(DeadlockDetector deadlockDetector, TransactionDetector transactionDetector, LongConsumer sleeper) {
+        this.deadlockDetector = deadlockDetector;
+        this.transactionDetector = transactionDetector;
+        this.sleeper = sleeper;
+    }
+
+    @Override
+    public void run(ThrowingAction action) {
+        run(null, new PersistentLayerStats(), action);
+    }
+
+    @Override
+    public void run(DataTable primaryTable, PersistentLayerStats stats, ThrowingAction action) {
+        ConflictRate conflictRate = conflictRates.computeIfAbsent(primaryTable == null ? "" : primaryTable.getName(), name -> new ConflictRate());
+        long delay = 0;
+        for (int retry = 0; ; retry++) {
+            try {
+                action.run();
+                conflictRate.record(false);
+                return;
+            } catch (Exception e) {
+                if (!deadlockDetector.isDeadlock(e)) {
+                    throw Throwables.propagate(e);
+                }
+                conflictRate.record(true);
+                stats.addConflict();
+                if (retry >= maxRetries || transactionDetector.isActiveTransactionExist()) {
+                    logger.error("AdaptiveDeadlockRetryer: Unsuccessfully retried conflicting transaction {} times", retry);
+                    throw Throwables.propagate(e);
+                }
+                long baseDelay = baseDelayMillis(conflictRate.get());
+                delay = Math.min(maxDelayMillis, ThreadLocalRandom.current().nextLong(baseDelay, Math.max(baseDelay, delay * 3) + 1));
+                logger.warn("AdaptiveDeadlockRetryer: got conflict when saving to database, retry {} out of {} in {} milliseconds", retry + 1, maxRetries, delay);
+                sleeper.accept(delay);
+                stats.addRetry(delay);
+            }
+        }
+    }
+
+    /**
+     * @return the recent share of conflicting attempts on the given table, between 0 and 1
+     */
+    public double getConflictRate(DataTable primaryTable) {
+        ConflictRate conflictRate = conflictRates.get(primaryTable.getName());
+        return conflictRate == null ? 0 : conflictRate.get();
+    }
+
+    @VisibleForTesting
+    long baseDelayMillis(double conflictRate) {
+        return minBaseDelayMillis + Math.round((maxBaseDelayMillis - minBaseDelayMillis) * conflictRate);
+    }
+
+    public AdaptiveDeadlockRetryer setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public AdaptiveDeadlockRetryer setMinBaseDelayMillis(long minBaseDelayMillis) {
+        this.minBaseDelayMillis = minBaseDelayMillis;
+        return this;
+    }
+
+    public AdaptiveDeadlockRetryer setMaxBaseDelayMillis(long maxBaseDelayMillis) {
+        this.maxBaseDelayMillis = maxBaseDelayMillis;
+        return this;
+    }
+
+    public AdaptiveDeadlockRetryer setMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * @param conflictRateWeight the weight of the latest attempt in the conflict rate of its table, between 0 and 1
+     */
+    public AdaptiveDeadlockRetryer setConflictRateWeight(double conflictRateWeight) {
+        this.conflictRateWeight = conflictRateWeight;
+        return this;
+    }
+
+    private class ConflictRate {
+
+        private double rate = 0;
+
+        synchronized void record(boolean conflict) {
+            rate += conflictRateWeight * ((conflict ? 1 : 0) - rate);
+        }
+
+        synchronized double get() {
+            return rate;
+        }
+    }
+}
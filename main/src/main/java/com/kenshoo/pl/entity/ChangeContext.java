@@ -32,4 +32,12 @@ public interface ChangeContext {
 
     Hierarchy getHierarchy();
 
+    /**
+     * @return <code>true</code> if the entities of the changes were not fetched, and the changes are to be written by
+     * <code>INSERT ... ON DUPLICATE KEY UPDATE</code> whether their entities exist or not
+     */
+    default boolean isBlindUpsert() {
+        return false;
+    }
+
 }
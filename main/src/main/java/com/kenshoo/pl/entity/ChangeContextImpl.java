@@ -1,8 +1,10 @@
 package com.kenshoo.pl.entity;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.kenshoo.pl.entity.internal.Errors;
 import org.jooq.lambda.Seq;
 
 import java.util.Collection;
@@ -15,16 +17,25 @@ import static org.jooq.lambda.Seq.seq;
 
 public class ChangeContextImpl implements ChangeContext {
 
+    private static final Set<String> WRITE_ERRORS = ImmutableSet.of(Errors.WRITE_FAILED, Errors.VERSION_CONFLICT);
+
     private final Multimap<EntityChange, ValidationError> validationErrors = HashMultimap.create();
     private final Map<EntityChange, CurrentEntityState> entities = new IdentityHashMap<>();
+    private final Map<EntityChange, EntityChange> coalescedChanges = new IdentityHashMap<>();
     private final PersistentLayerStats stats = new PersistentLayerStats();
     private final Set<FieldFetchRequest> fieldsToFetchRequests = Sets.newHashSet();
     private final Hierarchy hierarchy;
     private final FeatureSet features;
+    private final boolean blindUpsert;
 
     public ChangeContextImpl(Hierarchy hierarchy, FeatureSet features) {
+        this(hierarchy, features, false);
+    }
+
+    public ChangeContextImpl(Hierarchy hierarchy, FeatureSet features, boolean blindUpsert) {
         this.hierarchy = hierarchy;
         this.features = features;
+        this.blindUpsert = blindUpsert;
     }
 
     @Override
@@ -34,7 +45,7 @@ public class ChangeContextImpl implements ChangeContext {
 
     @Override
     public CurrentEntityState getEntity(EntityChange entityChange) {
-        return entities.get(entityChange);
+        return entities.get(changeOf(entityChange));
     }
 
     @Override
@@ -47,13 +58,21 @@ public class ChangeContextImpl implements ChangeContext {
         validationErrors.put(entityChange, error);
     }
 
+    /**
+     * Removes the errors of changes which failed to be written, so that a retry of the write starts without them
+     */
+    void clearWriteErrors() {
+        validationErrors.entries().removeIf(entry -> WRITE_ERRORS.contains(entry.getValue().getErrorCode()));
+    }
+
     @Override
     public boolean hasValidationErrors() {
         return !validationErrors.isEmpty();
     }
 
     @Override
-    public Seq<ValidationError> getValidationErrors(EntityChange cmd) {
+    public Seq<ValidationError> getValidationErrors(EntityChange entityChange) {
+        EntityChange cmd = changeOf(entityChange);
         final Seq<ValidationError> parentErrors = seq(validationErrors.get(cmd));
         if (cmd.getChildren().findAny().isPresent()) {
             Stream<ChangeEntityCommand> children = cmd.getChildren();
@@ -70,7 +89,7 @@ public class ChangeContextImpl implements ChangeContext {
 
     @Override
     public boolean containsErrorNonRecursive(EntityChange entityChange) {
-        return validationErrors.containsKey(entityChange);
+        return validationErrors.containsKey(changeOf(entityChange));
     }
 
     @Override
@@ -78,6 +97,18 @@ public class ChangeContextImpl implements ChangeContext {
         return stats;
     }
 
+    /**
+     * Makes the given changes, each coalesced into another, report the state and errors of the change they were
+     * coalesced into
+     */
+    void addCoalescedChanges(Map<? extends EntityChange, ? extends EntityChange> coalescedChanges) {
+        this.coalescedChanges.putAll(coalescedChanges);
+    }
+
+    private EntityChange changeOf(EntityChange entityChange) {
+        return coalescedChanges.isEmpty() ? entityChange : coalescedChanges.getOrDefault(entityChange, entityChange);
+    }
+
     void addFetchRequests(Collection<FieldFetchRequest> fetchRequests) {
         this.fieldsToFetchRequests.addAll(fetchRequests);
     }
@@ -91,4 +122,9 @@ public class ChangeContextImpl implements ChangeContext {
     public Hierarchy getHierarchy() {
         return hierarchy;
     }
+
+    @Override
+    public boolean isBlindUpsert() {
+        return blindUpsert;
+    }
 }
@@ -5,6 +5,7 @@ import com.kenshoo.pl.entity.internal.EntityTypeReflectionUtil;
 import com.kenshoo.pl.entity.internal.LazyDelegatingMultiSupplier;
 import com.kenshoo.pl.entity.internal.MissingChildrenSupplier;
 import com.kenshoo.pl.entity.spi.*;
+import org.jooq.Condition;
 
 import java.util.*;
 import java.util.stream.Stream;
@@ -19,8 +20,10 @@ abstract public class ChangeEntityCommand<E extends EntityType<E>> implements Mu
     private final Map<EntityField<E, ?>, Object> values = new HashMap<>();
     private final Map<TransientProperty<?>, Object> transientProperties = new HashMap<>(0);
     private final Map<EntityField<E, ?>, FieldValueSupplierDelegate<E,?>> suppliers = new HashMap<>();
+    private final Map<EntityField<E, ?>, FieldExpression<?>> expressions = new HashMap<>(0);
     private final List<ChangeEntityCommand<? extends EntityType>> children = newArrayListWithCapacity(1);
     private final List<MissingChildrenSupplier<? extends EntityType>> missingChildrenSuppliers = newArrayListWithCapacity(1);
+    private final Map<EntityType<?>, Condition> otherChildrenDeletions = new HashMap<>(0);
 
     private ChangeEntityCommand parent;
     private Identifier<E> keysToParent;
@@ -36,6 +39,21 @@ abstract public class ChangeEntityCommand<E extends EntityType<E>> implements Mu
     @Override
     public <T> void set(EntityField<E, T> field, T newValue) {
         values.put(field, newValue);
+        expressions.remove(field);
+    }
+
+    /**
+     * Sets the field to a value computed by the database from its current value.
+     *
+     * @see FieldExpression
+     */
+    public <T> void set(EntityField<E, T> field, FieldExpression<T> expression) {
+        requireNonNull(expression, "An expression must be provided");
+        if (field.isVirtual() || field.getDbAdapter().getTableFields().count() != 1 || field.getDbAdapter().getTable() != entityType.getPrimaryTable()) {
+            throw new IllegalArgumentException("Field " + field + " is not of a single column of the primary table so it cannot be set to an expression");
+        }
+        expressions.put(field, expression);
+        values.remove(field);
     }
 
     @Override
@@ -93,6 +111,15 @@ abstract public class ChangeEntityCommand<E extends EntityType<E>> implements Mu
         return values.entrySet().stream().map(entry -> new FieldChange(entry.getKey(), entry.getValue()));
     }
 
+    @Override
+    public Stream<FieldExpressionChange<E, ?>> getExpressionChanges() {
+        if (expressions.isEmpty()) {
+            return Stream.empty();
+        }
+        //noinspection unchecked
+        return expressions.entrySet().stream().map(entry -> new FieldExpressionChange(entry.getKey(), entry.getValue()));
+    }
+
     @Override
     public <T> boolean containsField(EntityField<E, T> field) {
         return isFieldChanged(field);
@@ -141,6 +168,14 @@ abstract public class ChangeEntityCommand<E extends EntityType<E>> implements Mu
         values.remove(field);
     }
 
+    /**
+     * Whether all the changes of the command are plain values, so it can be told from the current state of its entity
+     * alone whether it changes the entity
+     */
+    boolean hasValuesOnly() {
+        return suppliers.isEmpty() && expressions.isEmpty() && children.isEmpty() && missingChildrenSuppliers.isEmpty();
+    }
+
     void resolveSuppliers(CurrentEntityState currentState) throws ValidationException {
         // HashMap creates keySet/entrySet on demand so if the map is empty, calling these method implicitly increases its
         // memory consumption. Since in many cases the suppliers HashMap is empty, we can short-circuit this.
@@ -174,6 +209,51 @@ abstract public class ChangeEntityCommand<E extends EntityType<E>> implements Mu
         return entityFields.iterator().next();
     }
 
+    /**
+     * Whether the changes of a later command of the same entity can be taken over by this command with the same effect
+     * as making both, see {@link #merge(ChangeEntityCommand, FieldValueMerger)}. A later expression can't be combined
+     * with an earlier expression of another operator, and a later supplier, which gets the current state of the
+     * entity from the database, can't follow an earlier change of its field.
+     */
+    boolean canMerge(ChangeEntityCommand<E> later) {
+        for (Map.Entry<EntityField<E, ?>, FieldExpression<?>> entry : later.expressions.entrySet()) {
+            EntityField<E, ?> field = entry.getKey();
+            if (suppliers.containsKey(field)
+                    || values.containsKey(field) && !entry.getValue().canApplyTo(values.get(field))
+                    || expressions.containsKey(field) && !expressions.get(field).canBeFollowedBy(entry.getValue())) {
+                return false;
+            }
+        }
+        return later.suppliers.keySet().stream().noneMatch(field -> values.containsKey(field) || expressions.containsKey(field) || suppliers.containsKey(field));
+    }
+
+    /**
+     * Takes over the changes of a later command of the same entity, as if they were made after those of this command.
+     * A field set to plain values by both commands gets the value decided by <code>merger</code>, and a later
+     * expression is applied to an earlier value or combined with an earlier expression.
+     */
+    void merge(ChangeEntityCommand<E> later, FieldValueMerger<E> merger) {
+        later.values.forEach((field, value) -> {
+            values.put(field, values.containsKey(field) ? merger.merge(field, values.get(field), value) : value);
+            suppliers.remove(field);
+            expressions.remove(field);
+        });
+        later.suppliers.forEach(suppliers::put);
+        later.expressions.forEach((field, expression) -> {
+            if (values.containsKey(field)) {
+                //noinspection unchecked
+                values.put(field, ((FieldExpression<Object>) expression).applyTo(values.get(field)));
+            } else if (expressions.containsKey(field)) {
+                //noinspection unchecked
+                expressions.put(field, ((FieldExpression<Object>) expressions.get(field)).andThen((FieldExpression<Object>) expression));
+            } else {
+                expressions.put(field, expression);
+            }
+        });
+        transientProperties.putAll(later.transientProperties);
+        missingChildrenSuppliers.addAll(later.missingChildrenSuppliers);
+    }
+
     static <E extends EntityType<E>> void copy(ChangeEntityCommand<E> toCommand, Identifier<E> identifier) {
         copyFields(toCommand, identifier.getUniqueKey().getFields(), identifier);
     }
@@ -212,6 +292,17 @@ abstract public class ChangeEntityCommand<E extends EntityType<E>> implements Mu
         return missingChildrenSupplier.map(supplier -> (MissingChildrenSupplier<CHILD>) supplier);
     }
 
+    /**
+     * Deletes the children of the given type matching the condition by set-based statements, instead of a
+     * delete command per child
+     */
+    void deleteOtherChildrenWhere(EntityType<?> childType, Condition condition) {
+        otherChildrenDeletions.put(childType, condition);
+    }
+
+    Optional<Condition> getOtherChildrenDeletion(EntityType<?> childType) {
+        return Optional.ofNullable(otherChildrenDeletions.get(childType));
+    }
 
     interface FieldValueSupplierDelegate<E extends EntityType<E>, T> extends FieldValueSupplier<T>, CurrentStateConsumer<E> {
 
@@ -37,6 +37,8 @@ public class ChangeFlowConfig<E extends EntityType<E>> {
     private final AuditRequiredFieldsCalculator<E> auditRequiredFieldsCalculator;
     private final AuditRecordGenerator<E> auditRecordGenerator;
     private final FeatureSet features;
+    private final boolean blindUpserts;
+    private final FieldValueMerger<E> coalescingMerger;
 
 
     private ChangeFlowConfig(E entityType,
@@ -49,7 +51,9 @@ public class ChangeFlowConfig<E extends EntityType<E>> {
                              PersistenceLayerRetryer retryer,
                              final AuditRequiredFieldsCalculator<E> auditRequiredFieldsCalculator,
                              final AuditRecordGenerator<E> auditRecordGenerator,
-                             FeatureSet features) {
+                             FeatureSet features,
+                             boolean blindUpserts,
+                             FieldValueMerger<E> coalescingMerger) {
         this.entityType = entityType;
         this.postFetchCommandEnrichers = postFetchCommandEnrichers;
         this.outputGenerators = outputGenerators;
@@ -63,6 +67,8 @@ public class ChangeFlowConfig<E extends EntityType<E>> {
         this.auditRequiredFieldsCalculator = auditRequiredFieldsCalculator;
         this.auditRecordGenerator = auditRecordGenerator;
         this.features = features;
+        this.blindUpserts = blindUpserts;
+        this.coalescingMerger = coalescingMerger;
     }
 
     public E getEntityType() {
@@ -130,6 +136,22 @@ public class ChangeFlowConfig<E extends EntityType<E>> {
         return this.features;
     }
 
+    /**
+     * @return <code>true</code> if upserts of this flow may skip fetching the current state of their entities, see
+     * {@link Builder#withBlindUpserts()}
+     */
+    public boolean isBlindUpserts() {
+        return blindUpserts;
+    }
+
+    /**
+     * @return the merger of the values of commands coalesced by this flow, or empty if commands are not coalesced,
+     * see {@link Builder#withCommandsCoalescing(FieldValueMerger)}
+     */
+    public Optional<FieldValueMerger<E>> commandsCoalescing() {
+        return Optional.ofNullable(coalescingMerger);
+    }
+
 
     public static class Builder<E extends EntityType<E>> {
         private final E entityType;
@@ -143,6 +165,8 @@ public class ChangeFlowConfig<E extends EntityType<E>> {
         private PersistenceLayerRetryer retryer = JUST_RUN_WITHOUT_CHECKING_DEADLOCKS;
         private AuditedEntityTypeResolver auditedEntityTypeResolver;
         private FeatureSet features = FeatureSet.EMPTY;
+        private boolean blindUpserts = false;
+        private FieldValueMerger<E> coalescingMerger = null;
 
         public Builder(E entityType) {
             this.entityType = entityType;
@@ -272,6 +296,51 @@ public class ChangeFlowConfig<E extends EntityType<E>> {
             this.withValidator(compositeValidator);
         }
 
+        /**
+         * Lets {@link PersistenceLayer#upsert} write the commands by <code>INSERT ... ON DUPLICATE KEY UPDATE</code>
+         * without fetching their entities first, when nothing in the flow needs their current state. That is, the flow
+         * has no child flows, no auditing and no identity field, and no component requires fields other than the
+         * identifier of the commands (so typically the false updates purger is removed too). Since the commands are
+         * made as creations, the flow must also treat creations and updates alike: no required fields, and no enricher,
+         * validator or output generator for one of them only, such as the enrichers of creation dates and default
+         * values, which would overwrite existing entities. Otherwise upserts go the usual way.
+         * <p>
+         * The identifier of the commands must be a unique key in the database. All the commands are validated and
+         * written as creations, whether their entities exist or not, and the numbers of records actually inserted and
+         * updated are reported by the stats of the result.
+         */
+        public Builder<E> withBlindUpserts() {
+            this.blindUpserts = true;
+            return this;
+        }
+
+        /**
+         * Coalesces update and upsert commands of the same entity into one before anything else is done, the value
+         * of a field set by several commands being the last one. See
+         * {@link #withCommandsCoalescing(FieldValueMerger)}.
+         */
+        public Builder<E> withCommandsCoalescing() {
+            return withCommandsCoalescing(FieldValueMerger.lastWriteWins());
+        }
+
+        /**
+         * Coalesces update and upsert commands of the same entity into one before anything else is done, so that the
+         * entity is fetched, validated and written once. Commands are of the same entity if they are of the same class
+         * and have equal identifiers. Commands with children are not coalesced.
+         * <p>
+         * The changes of the commands of an entity are merged, in their order, into a new command, which is validated,
+         * written and audited instead of them, and whose outcome their results report. The commands themselves are not
+         * changed. The value of a field set to plain values by more than one command is decided by <code>merger</code>,
+         * and an expression is applied to an earlier value or combined with an earlier expression of the same
+         * operator, so that two increments of a field add up. A command whose changes can't be combined with those
+         * before it, such as an expression following a supplier or an expression of another operator, isn't coalesced
+         * with them, and is written after them as it would be without coalescing.
+         */
+        public Builder<E> withCommandsCoalescing(FieldValueMerger<E> merger) {
+            this.coalescingMerger = Objects.requireNonNull(merger, "A merger must be provided");
+            return this;
+        }
+
         public Builder<E> withRetryer(PersistenceLayerRetryer retryer) {
             this.retryer = retryer;
             return this;
@@ -300,7 +369,9 @@ public class ChangeFlowConfig<E extends EntityType<E>> {
                                           retryer,
                                           auditRequiredFieldsCalculator,
                                           auditRecordGenerator,
-                                          features
+                                          features,
+                                          blindUpserts,
+                                          coalescingMerger
             );
         }
 
@@ -11,6 +11,7 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
 import java.util.function.Function;
 
 /**
@@ -44,6 +45,7 @@ public class CommonTypesStringConverter<T> implements ValueConverter<T, String>
             .put(Timestamp.class, s -> new Timestamp(Long.parseLong(s)))
             .put(Instant.class, s -> Instant.ofEpochMilli(Long.parseLong(s)))
             .put(LocalDate.class, s -> DATE_FORMATTER.parse(s, LocalDate::from))
+            .put(UUID.class, UUID::fromString)
             .build();
 
     private Class<T> valueClass;
@@ -0,0 +1,60 @@
+package com.kenshoo.pl.entity;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The values to set on all the entities matching a condition, see
+ * {@link PersistenceLayer#updateWhere(ConditionalUpdateCommand, ChangeFlowConfig)}. Only fields of the primary table
+ * can be set, either to a value or to a {@link FieldExpression}.
+ *
+ * @param <E> entity type
+ */
+public class ConditionalUpdateCommand<E extends EntityType<E>> {
+
+    private final E entityType;
+    private final PLCondition condition;
+    private final Map<EntityField<E, ?>, Object> values = new LinkedHashMap<>();
+
+    public ConditionalUpdateCommand(E entityType, PLCondition condition) {
+        this.entityType = requireNonNull(entityType, "An entity type must be provided");
+        this.condition = requireNonNull(condition, "A condition must be provided");
+    }
+
+    public E getEntityType() {
+        return entityType;
+    }
+
+    public PLCondition getCondition() {
+        return condition;
+    }
+
+    public <T> void set(EntityField<E, T> field, T newValue) {
+        values.put(requirePrimaryTableField(field), newValue);
+    }
+
+    public <T> void set(EntityField<E, T> field, FieldExpression<T> expression) {
+        requireNonNull(expression, "An expression must be provided");
+        if (requirePrimaryTableField(field).getDbAdapter().getTableFields().count() != 1) {
+            throw new IllegalArgumentException("Field " + field + " is not of a single column so it cannot be set to an expression");
+        }
+        values.put(field, expression);
+    }
+
+    /**
+     * @return the fields set, mapped to their values or to their {@link FieldExpression}s
+     */
+    public Map<EntityField<E, ?>, Object> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    private <T> EntityField<E, T> requirePrimaryTableField(EntityField<E, T> field) {
+        if (field.isVirtual() || field.getDbAdapter().getTable() != entityType.getPrimaryTable()) {
+            throw new IllegalArgumentException("Field " + field + " is not of the primary table so it cannot be updated by condition");
+        }
+        return field;
+    }
+}
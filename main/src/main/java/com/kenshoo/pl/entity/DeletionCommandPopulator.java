@@ -1,12 +1,27 @@
 package com.kenshoo.pl.entity;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.kenshoo.jooq.DataTable;
+import com.kenshoo.pl.data.DatabaseId;
 import com.kenshoo.pl.entity.internal.ChildrenIdFetcher;
-import org.jooq.DSLContext;
+import com.kenshoo.pl.entity.internal.DbCommandsOutputGenerator;
+import com.kenshoo.pl.entity.internal.EntityDbUtil;
+import com.kenshoo.pl.entity.spi.ChangesValidator;
+import com.kenshoo.pl.entity.spi.CurrentStateConsumer;
+import com.kenshoo.pl.entity.spi.OutputGenerator;
+import com.kenshoo.pl.entity.spi.helpers.EntityChangeCompositeValidator;
+import org.jooq.Condition;
+import org.jooq.Field;
+import org.jooq.RowN;
+import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
 
 import java.util.*;
 import java.util.stream.Stream;
 
+import static com.kenshoo.pl.entity.ChangeOperation.CREATE;
+import static com.kenshoo.pl.entity.ChangeOperation.DELETE;
 import static com.kenshoo.pl.entity.UniqueKeyValue.concat;
 import static java.util.Collections.emptyMap;
 import static java.util.stream.Collectors.*;
@@ -15,14 +30,20 @@ import static org.jooq.lambda.Seq.seq;
 public class DeletionCommandPopulator {
 
     private final ChildrenIdFetcher childrenIdFetcher;
+    private final int maxBindValuesPerStatement;
 
     public DeletionCommandPopulator(PLContext plContext) {
         childrenIdFetcher = new ChildrenIdFetcher(plContext);
+        maxBindValuesPerStatement = plContext.commandsExecutorConfig().getMaxBindValuesPerStatement();
     }
 
+    /**
+     * Every child to delete gets a command of its own, there being no database to delete them by condition
+     */
     @VisibleForTesting
     public DeletionCommandPopulator(ChildrenIdFetcher childrenIdFetcher) {
         this.childrenIdFetcher = childrenIdFetcher;
+        this.maxBindValuesPerStatement = 0;
     }
 
     public <PARENT extends EntityType<PARENT>>
@@ -40,13 +61,175 @@ public class DeletionCommandPopulator {
     }
 
     private <PARENT extends EntityType<PARENT>, CHILD extends EntityType<CHILD>>
-    void handleChildFlow(Collection<? extends ChangeEntityCommand<PARENT>> parents, ChangeFlowConfig<CHILD> childFlow) {
+    void handleChildFlow(Collection<? extends ChangeEntityCommand<PARENT>> allParents, ChangeFlowConfig<CHILD> childFlow) {
         final CHILD childType = childFlow.getEntityType();
-        ChildrenFromDB<PARENT, CHILD> childrenFromDB = getExistingChildrenFromDB(parents, childType);
-        addDeletionChildCommands(seq(parents).filter(this::isCascadeDeletion), childType, childrenFromDB);
-        supplyChildCommands(seq(parents).filter(this::withMissingChildSupplier), childType, childrenFromDB);
-        populateKeyToParent(parents, childType, childrenFromDB);
-        handleRecursive(seq(parents).flatMap(p -> p.getChildren(childType)).filter(child -> child.getKeysToParent() != null), childFlow);
+        final boolean othersBySet = canDeleteOthersBySet(childFlow);
+        final boolean descendantsBySet = canDeleteDescendantsBySet(childFlow);
+        final List<? extends ChangeEntityCommand<PARENT>> parents = othersBySet || descendantsBySet ?
+                seq(allParents).filter(parent -> !(othersBySet && deleteOthersBySet(parent, childType))
+                                              && !(descendantsBySet && deleteDescendantsBySet(parent, childType))).toList() :
+                ImmutableList.copyOf(allParents);
+        if (!parents.isEmpty()) {
+            ChildrenFromDB<PARENT, CHILD> childrenFromDB = getExistingChildrenFromDB(parents, childType);
+            addDeletionChildCommands(seq(parents).filter(this::isCascadeDeletion), childType, childrenFromDB);
+            supplyChildCommands(seq(parents).filter(this::withMissingChildSupplier), childType, childrenFromDB);
+            populateKeyToParent(parents, childType, childrenFromDB);
+        }
+        handleRecursive(seq(allParents).flatMap(p -> p.getChildren(childType)).filter(child -> child.getKeysToParent() != null), childFlow);
+    }
+
+    private <CHILD extends EntityType<CHILD>> boolean canDeleteOthersBySet(ChangeFlowConfig<CHILD> childFlow) {
+        return maxBindValuesPerStatement > 0 && childFlow.childFlows().isEmpty() && deletedByDatabaseOnly(childFlow);
+    }
+
+    // The descendants are deleted along with the children, so every table below must be joinable to the one above it
+    private <CHILD extends EntityType<CHILD>> boolean canDeleteDescendantsBySet(ChangeFlowConfig<CHILD> childFlow) {
+        return maxBindValuesPerStatement > 0 && deletedByDatabaseOnly(childFlow) && descendantsDeletableBySet(childFlow);
+    }
+
+    /**
+     * @return <code>true</code> if nothing but the database needs the entities of the flows below the given one when
+     * they are deleted, and the table of every one of them refers to the table of its parent flow, so that they can be
+     * deleted along with the entities of the flow by a multi-table statement
+     */
+    <E extends EntityType<E>> boolean descendantsDeletableBySet(ChangeFlowConfig<E> flow) {
+        final Set<DataTable> tables = new HashSet<>();
+        tables.add(flow.getEntityType().getPrimaryTable());
+        return descendantsJoinable(flow, tables);
+    }
+
+    private <E extends EntityType<E>> boolean descendantsJoinable(ChangeFlowConfig<E> flow, Set<DataTable> tables) {
+        final DataTable table = flow.getEntityType().getPrimaryTable();
+        return seq(flow.childFlows()).allMatch(childFlow -> {
+            final DataTable childTable = childFlow.getEntityType().getPrimaryTable();
+            return tables.add(childTable)
+                    && childTable.getReferencesTo(table).size() == 1
+                    && deletedByDatabaseOnly(childFlow)
+                    && descendantsJoinable(childFlow, tables);
+        });
+    }
+
+    // Nothing but the database output of the flow may need the entities deleted
+    private <E extends EntityType<E>> boolean deletedByDatabaseOnly(ChangeFlowConfig<E> flow) {
+        return !flow.auditRecordGenerator().isPresent()
+                && seq(flow.getValidators()).noneMatch(this::validatesDeletes)
+                && seq(flow.getPostFetchCommandEnrichers()).noneMatch(CurrentStateConsumer.supporting(DELETE))
+                && deletesByDatabaseOnly(flow.getOutputGenerators());
+    }
+
+    private <CHILD extends EntityType<CHILD>> boolean deletesByDatabaseOnly(List<OutputGenerator<CHILD>> outputGenerators) {
+        final List<OutputGenerator<CHILD>> deletingGenerators = seq(outputGenerators).filter(CurrentStateConsumer.supporting(DELETE)).toList();
+        return deletingGenerators.size() == 1 && deletingGenerators.get(0) instanceof DbCommandsOutputGenerator;
+    }
+
+    private <CHILD extends EntityType<CHILD>> boolean validatesDeletes(ChangesValidator<CHILD> validator) {
+        return validator instanceof EntityChangeCompositeValidator ?
+                ((EntityChangeCompositeValidator<CHILD>) validator).validates(DELETE) :
+                validator.getSupportedChangeOperation().supports(DELETE);
+    }
+
+    /**
+     * Deletes the children of the parent other than those of its commands by condition, if the parent deletes its other
+     * children and its identifier holds the fields its children refer to. The children kept must all be identified by
+     * the same key of the primary table, and few enough to be listed in a single statement. The children commands get
+     * their key to the parent from the parent identifier, as they would have from the database.
+     *
+     * @return <code>true</code> if the children are deleted by condition
+     */
+    private <PARENT extends EntityType<PARENT>, CHILD extends EntityType<CHILD>>
+    boolean deleteOthersBySet(ChangeEntityCommand<PARENT> parent, CHILD childType) {
+        if (isCascadeDeletion(parent) || parent.getChangeOperation() == DELETE || parent.getIdentifier() == null
+                || !parent.getMissingChildrenSupplier(childType).filter(supplier -> supplier instanceof DeletionOfOther).isPresent()) {
+            return false;
+        }
+        final Identifier<PARENT> parentId = parent.getIdentifier();
+        final EntityType.ForeignKey<CHILD, PARENT> keyToParent = childType.getKeyTo(parentId.getUniqueKey().getEntityType());
+        if (!isReferredByIdentifier(keyToParent, parentId)) {
+            return false;
+        }
+        final Set<Identifier<CHILD>> childrenToKeep = childrenIdsOf(childType, parent);
+        final Set<IdentifierType<CHILD>> childKeys = seq(childrenToKeep).map(Identifier::getUniqueKey).toSet();
+        if (childKeys.size() > 1 || !seq(childKeys).flatMap(key -> Stream.of(key.getFields())).allMatch(field -> isOfPrimaryTable(field, childType))
+                || childrenToKeep.size() * (long) (keyToParent.size() + seq(childKeys).map(key -> key.getFields().length).findFirst().orElse(0)) > maxBindValuesPerStatement) {
+            return false;
+        }
+
+        Condition otherChildren = childrenOf(keyToParent, parentId);
+        if (!childrenToKeep.isEmpty()) {
+            final DatabaseId[] keptIds = seq(childrenToKeep).map(EntityDbUtil::getDatabaseId).toArray(DatabaseId[]::new);
+            otherChildren = otherChildren.and(DSL.row(keptIds[0].getTableFields()).notIn(Stream.of(keptIds).map(id -> DSL.row(id.getValues())).toArray(RowN[]::new)));
+        }
+        parent.deleteOtherChildrenWhere(childType, otherChildren);
+
+        final Identifier<CHILD> keysToParent = keysToParentOf(keyToParent, parentId);
+        parent.getChildren(childType)
+              .filter(child -> child.getIdentifier() != null && child.getChangeOperation() != CREATE)
+              .forEach(child -> child.setKeysToParent(keysToParent));
+        return true;
+    }
+
+    /**
+     * Deletes all the children of a parent deleted with cascade by condition, along with their descendants, instead of
+     * fetching their identifiers and deleting every one of them by a command of its own. The parent identifier must hold
+     * the fields its children refer to.
+     *
+     * @return <code>true</code> if the children are deleted by condition
+     */
+    private <PARENT extends EntityType<PARENT>, CHILD extends EntityType<CHILD>>
+    boolean deleteDescendantsBySet(ChangeEntityCommand<PARENT> parent, CHILD childType) {
+        if (!isCascadeDeletion(parent) || parent.getIdentifier() == null) {
+            return false;
+        }
+        final Identifier<PARENT> parentId = parent.getIdentifier();
+        final EntityType.ForeignKey<CHILD, PARENT> keyToParent = childType.getKeyTo(parentId.getUniqueKey().getEntityType());
+        if (!isReferredByIdentifier(keyToParent, parentId)) {
+            return false;
+        }
+        parent.deleteOtherChildrenWhere(childType, childrenOf(keyToParent, parentId));
+        return true;
+    }
+
+    private <PARENT extends EntityType<PARENT>, CHILD extends EntityType<CHILD>>
+    boolean isReferredByIdentifier(EntityType.ForeignKey<CHILD, PARENT> keyToParent, Identifier<PARENT> parentId) {
+        return keyToParent.notEmpty() && seq(keyToParent.to()).allMatch(parentField -> isOfIdentifier(parentField, parentId));
+    }
+
+    private <PARENT extends EntityType<PARENT>, CHILD extends EntityType<CHILD>>
+    Condition childrenOf(EntityType.ForeignKey<CHILD, PARENT> keyToParent, Identifier<PARENT> parentId) {
+        Condition children = DSL.trueCondition();
+        for (Tuple2<EntityField<CHILD, ?>, EntityField<PARENT, ?>> reference : keyToParent.references) {
+            children = children.and(DSL.row(tableFieldsOf(reference.v1)).eq(DSL.row(dbValuesOf(reference.v1, parentId.get(reference.v2)))));
+        }
+        return children;
+    }
+
+    private <PARENT extends EntityType<PARENT>> boolean isOfIdentifier(EntityField<PARENT, ?> field, Identifier<PARENT> identifier) {
+        return Stream.of(identifier.getUniqueKey().getFields()).anyMatch(field::equals);
+    }
+
+    private <CHILD extends EntityType<CHILD>> boolean isOfPrimaryTable(EntityField<CHILD, ?> field, CHILD childType) {
+        return !field.isVirtual() && field.getDbAdapter().getTable() == childType.getPrimaryTable();
+    }
+
+    private <CHILD extends EntityType<CHILD>> Field<?>[] tableFieldsOf(EntityField<CHILD, ?> field) {
+        return field.getDbAdapter().getTableFields().toArray(Field<?>[]::new);
+    }
+
+    private <CHILD extends EntityType<CHILD>, T> Object[] dbValuesOf(EntityField<CHILD, T> field, Object value) {
+        //noinspection unchecked
+        return field.getDbAdapter().getDbValues((T) value).toArray();
+    }
+
+    private <PARENT extends EntityType<PARENT>, CHILD extends EntityType<CHILD>>
+    Identifier<CHILD> keysToParentOf(EntityType.ForeignKey<CHILD, PARENT> keyToParent, Identifier<PARENT> parentId) {
+        final FieldsValueMapImpl<CHILD> values = new FieldsValueMapImpl<>();
+        keyToParent.references.forEach(reference -> setUnchecked(values, reference.v1, parentId.get(reference.v2)));
+        return new UniqueKey<CHILD>(keyToParent.from()).createIdentifier(values);
+    }
+
+    private <CHILD extends EntityType<CHILD>, T> void setUnchecked(FieldsValueMapImpl<CHILD> values, EntityField<CHILD, T> field, Object value) {
+        //noinspection unchecked
+        values.set(field, (T) value);
     }
 
     private <PARENT extends EntityType<PARENT>, CHILD extends EntityType<CHILD>>
@@ -27,6 +27,14 @@ public interface EntityChange<E extends EntityType<E>> extends FieldsValueMap<E>
      */
     Stream<FieldChange<E, ?>> getChanges();
 
+    /**
+     * @return a stream of the fields set to a {@link FieldExpression} by this change, which are not included in
+     * {@link #getChangedFields()} or {@link #getChanges()}
+     */
+    default Stream<FieldExpressionChange<E, ?>> getExpressionChanges() {
+        return Stream.empty();
+    }
+
     /**
      * @return <code>true</code> if the field is affected by this change. A shorthand for <code>getChangedFields().contains(field)</code>
      */
@@ -38,6 +38,13 @@ public interface EntityType<E extends EntityType<E>> {
         return Optional.empty();
     }
 
+    /**
+     * @return the field annotated with {@link com.kenshoo.pl.entity.annotation.Version}, if any
+     */
+    default Optional<EntityField<E, ? extends Number>> getVersionField() {
+        return Optional.empty();
+    }
+
 
     Stream<EntityField<E, ?>> getFields();
 
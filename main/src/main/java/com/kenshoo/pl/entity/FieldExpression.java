@@ -0,0 +1,157 @@
+package com.kenshoo.pl.entity;
+
+import com.kenshoo.pl.data.ColumnExpression.Operator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Objects;
+
+/**
+ * A new value of a field computed by the database from its current value, such as a counter incremented by a given
+ * amount. Setting a field to an expression requires neither fetching the field nor a supplier, and concurrent changes
+ * of the field are not lost. Since its value is known only to the database, the field is not included in
+ * {@link EntityChange#getChangedFields()}, so it is neither validated nor audited. If the entity is created rather than
+ * updated, the field gets the argument itself. Only fields of a single column of the primary table
+ * can be set to an expression.
+ *
+ * @param <T> type of the field
+ */
+public final class FieldExpression<T> {
+
+    private final Operator operator;
+    private final T argument;
+
+    private FieldExpression(Operator operator, T argument) {
+        this.operator = operator;
+        this.argument = Objects.requireNonNull(argument, "An argument must be provided");
+    }
+
+    /**
+     * @return an expression adding <code>amount</code> to the current value, a <code>NULL</code> counting as zero
+     */
+    public static <T extends Number> FieldExpression<T> increment(T amount) {
+        return new FieldExpression<>(Operator.ADD, amount);
+    }
+
+    /**
+     * @return an expression keeping the greater of the current value and <code>value</code>. A <code>NULL</code> value stays <code>NULL</code>
+     */
+    public static <T extends Comparable<? super T>> FieldExpression<T> greatest(T value) {
+        return new FieldExpression<>(Operator.GREATEST, value);
+    }
+
+    /**
+     * @return an expression keeping the lesser of the current value and <code>value</code>. A <code>NULL</code> value stays <code>NULL</code>
+     */
+    public static <T extends Comparable<? super T>> FieldExpression<T> least(T value) {
+        return new FieldExpression<>(Operator.LEAST, value);
+    }
+
+    /**
+     * @return an expression appending <code>suffix</code> to the current value, a <code>NULL</code> counting as an empty string
+     */
+    public static FieldExpression<String> append(String suffix) {
+        return new FieldExpression<>(Operator.CONCAT, suffix);
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public T getArgument() {
+        return argument;
+    }
+
+    /**
+     * Whether this expression followed by <code>later</code> amounts to a single expression, see {@link #andThen(FieldExpression)}
+     */
+    boolean canBeFollowedBy(FieldExpression<?> later) {
+        return operator == later.operator && (operator != Operator.ADD || addable(argument, later.argument));
+    }
+
+    /**
+     * @return the single expression having the effect of this expression followed by <code>later</code>, such as
+     * <code>+3</code> for <code>+1</code> followed by <code>+2</code>
+     */
+    FieldExpression<T> andThen(FieldExpression<T> later) {
+        return new FieldExpression<>(operator, apply(argument, later.argument, operator));
+    }
+
+    /**
+     * Whether the value this expression computes from a known current value can be told, see {@link #applyTo(Object)}
+     */
+    boolean canApplyTo(Object value) {
+        return operator != Operator.ADD || value == null || addable(value, argument);
+    }
+
+    /**
+     * @return the value this expression computes from the given current value, as the database would
+     */
+    T applyTo(T value) {
+        if (value == null) {
+            //noinspection unchecked
+            return operator == Operator.ADD || operator == Operator.CONCAT ? argument : null;
+        }
+        return apply(value, argument, operator);
+    }
+
+    private static <T> T apply(T first, T second, Operator operator) {
+        switch (operator) {
+            case ADD:
+                //noinspection unchecked
+                return (T) add((Number) first, (Number) second);
+            case CONCAT:
+                //noinspection unchecked
+                return (T) (first.toString() + second);
+            case GREATEST:
+                //noinspection unchecked
+                return ((Comparable<T>) first).compareTo(second) >= 0 ? first : second;
+            case LEAST:
+                //noinspection unchecked
+                return ((Comparable<T>) first).compareTo(second) <= 0 ? first : second;
+            default:
+                throw new IllegalArgumentException("Unsupported operator " + operator);
+        }
+    }
+
+    private static boolean addable(Object first, Object second) {
+        return first.getClass() == second.getClass() && (first instanceof Integer || first instanceof Long || first instanceof Short
+                || first instanceof Double || first instanceof Float || first instanceof BigDecimal || first instanceof BigInteger);
+    }
+
+    private static Number add(Number first, Number second) {
+        if (first instanceof Integer) {
+            return first.intValue() + second.intValue();
+        } else if (first instanceof Long) {
+            return first.longValue() + second.longValue();
+        } else if (first instanceof Short) {
+            return (short) (first.shortValue() + second.shortValue());
+        } else if (first instanceof Double) {
+            return first.doubleValue() + second.doubleValue();
+        } else if (first instanceof Float) {
+            return first.floatValue() + second.floatValue();
+        } else if (first instanceof BigDecimal) {
+            return ((BigDecimal) first).add((BigDecimal) second);
+        } else {
+            return ((BigInteger) first).add((BigInteger) second);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FieldExpression)) return false;
+        FieldExpression<?> that = (FieldExpression<?>) o;
+        return operator == that.operator && argument.equals(that.argument);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(operator, argument);
+    }
+
+    @Override
+    public String toString() {
+        return operator + "(" + argument + ")";
+    }
+}
@@ -0,0 +1,20 @@
+package com.kenshoo.pl.entity;
+
+public class FieldExpressionChange<E extends EntityType<E>, T> {
+
+    private final EntityField<E, T> field;
+    private final FieldExpression<T> expression;
+
+    public FieldExpressionChange(EntityField<E, T> field, FieldExpression<T> expression) {
+        this.field = field;
+        this.expression = expression;
+    }
+
+    public EntityField<E, T> getField() {
+        return field;
+    }
+
+    public FieldExpression<T> getExpression() {
+        return expression;
+    }
+}
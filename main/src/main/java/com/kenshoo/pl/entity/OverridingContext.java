@@ -72,6 +72,11 @@ public class OverridingContext implements ChangeContext {
         return original.getHierarchy();
     }
 
+    @Override
+    public boolean isBlindUpsert() {
+        return original.isBlindUpsert();
+    }
+
     private static class OverridingEntity implements CurrentEntityState {
 
         private final CurrentEntityState overriding;
@@ -1,5 +1,6 @@
 package com.kenshoo.pl.entity;
 
+import com.kenshoo.pl.data.CommandsExecutorConfig;
 import com.kenshoo.pl.entity.internal.EntitiesFetcher;
 import com.kenshoo.pl.entity.spi.PersistenceLayerRetryer;
 import com.kenshoo.pl.entity.spi.audit.AuditRecordPublisher;
@@ -17,15 +18,18 @@ public class PLContext {
     final private PersistenceLayerRetryer retryer;
     final private Predicate<Feature> featurePredicate;
     private final AuditRecordPublisher auditRecordPublisher;
+    private final CommandsExecutorConfig commandsExecutorConfig;
 
     private PLContext(final DSLContext dslContext,
                       final PersistenceLayerRetryer retryer,
                       final Predicate<Feature> featurePredicate,
-                      final AuditRecordPublisher auditRecordPublisher) {
+                      final AuditRecordPublisher auditRecordPublisher,
+                      final CommandsExecutorConfig commandsExecutorConfig) {
         this.dslContext = dslContext;
         this.retryer = retryer;
         this.featurePredicate = featurePredicate;
         this.auditRecordPublisher = auditRecordPublisher;
+        this.commandsExecutorConfig = commandsExecutorConfig;
     }
 
     public DSLContext dslContext() {
@@ -44,6 +48,17 @@ public class PLContext {
         return auditRecordPublisher;
     }
 
+    public CommandsExecutorConfig commandsExecutorConfig() {
+        return commandsExecutorConfig;
+    }
+
+    /**
+     * @return a new unit of work making the changes of several flows by a single transaction
+     */
+    public UnitOfWork unitOfWork() {
+        return new UnitOfWork(this);
+    }
+
     /**
      * Start building a query to fetch entities with the given fields.
      *
@@ -64,6 +79,7 @@ public class PLContext {
         private PersistenceLayerRetryer retryer = JUST_RUN_WITHOUT_CHECKING_DEADLOCKS;
         private Predicate<Feature> featurePredicate = __ -> false;
         private AuditRecordPublisher auditRecordPublisher = AuditRecordPublisher.NO_OP;
+        private CommandsExecutorConfig commandsExecutorConfig = CommandsExecutorConfig.DEFAULT;
 
         public Builder withFeaturePredicate(Predicate<Feature> featurePredicate) {
             this.featurePredicate = featurePredicate;
@@ -84,11 +100,17 @@ public class PLContext {
             return this;
         }
 
+        public Builder withCommandsExecutorConfig(final CommandsExecutorConfig commandsExecutorConfig) {
+            this.commandsExecutorConfig = commandsExecutorConfig;
+            return this;
+        }
+
         public PLContext build() {
             return new PLContext(dslContext,
                                  retryer,
                                  featurePredicate,
-                                 auditRecordPublisher);
+                                 auditRecordPublisher,
+                                 commandsExecutorConfig);
         }
 
     }
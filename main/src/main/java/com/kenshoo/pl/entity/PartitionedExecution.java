@@ -0,0 +1,124 @@
+package com.kenshoo.pl.entity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.kenshoo.pl.entity.internal.Errors;
+import com.kenshoo.pl.entity.spi.TransactionDetector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static org.jooq.lambda.Seq.seq;
+
+/**
+ * Splits the root commands of a change by a key chosen by the caller, such as their account, and makes the changes of
+ * every partition by its own flow, in its own transaction and on its own connection, running up to
+ * <code>parallelism</code> partitions concurrently. Whole roots are partitioned, so every hierarchy is still written by
+ * a single transaction, but the partitions are committed independently of each other: a failure in one of them
+ * doesn't roll back the others. The commands of a partition failing with an exception get a
+ * {@link Errors#WRITE_FAILED} error once all the other partitions are done.
+ * <p>
+ * Requires the {@link org.jooq.DSLContext} of the persistence layer to allocate a connection per transaction, as one
+ * backed by a pooled data source does, and the components of the flow to be thread safe. A change can't be partitioned
+ * within a transaction of the caller, whose connection the partitions can't share, so it is rejected if the transaction
+ * detector finds one.
+ * <p>
+ * The partitions are made by a pool of <code>parallelism</code> threads shared by all the changes made with the same
+ * instance, which is meant to be kept and reused, and {@link #close() closed} when no longer needed.
+ *
+ * @see PersistenceLayer#update(Collection, ChangeFlowConfig, PartitionedExecution)
+ */
+public class PartitionedExecution<ROOT extends EntityType<ROOT>> implements AutoCloseable {
+
+    private final Function<? super ChangeEntityCommand<ROOT>, ?> partitionKey;
+    private final int parallelism;
+    private final TransactionDetector transactionDetector;
+    private final ExecutorService executor;
+
+    public PartitionedExecution(Function<? super ChangeEntityCommand<ROOT>, ?> partitionKey, int parallelism, TransactionDetector transactionDetector) {
+        checkArgument(parallelism > 0, "parallelism must be positive");
+        this.partitionKey = partitionKey;
+        this.parallelism = parallelism;
+        this.transactionDetector = transactionDetector;
+        this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                .setNameFormat("pl-partition-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Stops the threads of the partitions, once the changes in progress are done
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    <C extends ChangeEntityCommand<ROOT>> Results<ROOT> execute(Collection<? extends C> commands, Function<List<C>, ? extends ChangeResult<ROOT, ?, ?>> change) {
+        checkState(!transactionDetector.isActiveTransactionExist(), "A partitioned change can't be made within an active transaction");
+        Collection<List<C>> partitions = seq(commands).<C>map(cmd -> cmd).groupBy(partitionKey).values();
+        if (partitions.size() <= 1) {
+            return new Results<ROOT>().add(change.apply(ImmutableList.copyOf(commands)));
+        }
+        List<Future<? extends ChangeResult<ROOT, ?, ?>>> futures = new ArrayList<>(partitions.size());
+        partitions.forEach(partition -> futures.add(executor.submit(() -> change.apply(partition))));
+        Results<ROOT> results = new Results<>();
+        try {
+            // Every partition is waited for, so none is still writing when the results are returned
+            int i = 0;
+            for (List<C> partition : partitions) {
+                Future<? extends ChangeResult<ROOT, ?, ?>> future = futures.get(i++);
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    results.fail(partition, e.getCause());
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    static class Results<ROOT extends EntityType<ROOT>> {
+
+        private final Map<ChangeEntityCommand<ROOT>, Collection<ValidationError>> errors = new IdentityHashMap<>();
+        private PersistentLayerStats stats = new PersistentLayerStats();
+
+        private Results<ROOT> add(ChangeResult<ROOT, ?, ?> result) {
+            result.getChangeResults().forEach(changeResult -> errors.put(changeResult.getCommand(), changeResult.getErrors()));
+            stats = stats.combine(result.getStats());
+            return this;
+        }
+
+        private void fail(Collection<? extends ChangeEntityCommand<ROOT>> partition, Throwable cause) {
+            ValidationError error = new ValidationError(Errors.WRITE_FAILED, ImmutableMap.of("cause", String.valueOf(cause.getMessage())));
+            partition.forEach(command -> errors.put(command, ImmutableList.of(error)));
+        }
+
+        Collection<ValidationError> getErrors(ChangeEntityCommand<ROOT> command) {
+            return errors.get(command);
+        }
+
+        PersistentLayerStats getStats() {
+            return stats;
+        }
+    }
+}
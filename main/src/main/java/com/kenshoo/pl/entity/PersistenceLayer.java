@@ -3,29 +3,54 @@ package com.kenshoo.pl.entity;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.kenshoo.jooq.DataTable;
+import com.kenshoo.pl.data.AffectedRows;
+import com.kenshoo.pl.data.ColumnExpression;
+import com.kenshoo.pl.data.CommandsExecutor;
+import com.kenshoo.pl.data.ConditionalUpdateRecordCommand;
 import com.kenshoo.pl.entity.audit.AuditRecord;
 import com.kenshoo.pl.entity.internal.ChangesFilter;
 import com.kenshoo.pl.entity.internal.EntitiesFetcher;
 import com.kenshoo.pl.entity.internal.EntitiesToContextFetcher;
+import com.kenshoo.pl.entity.internal.Errors;
 import com.kenshoo.pl.entity.internal.RequiredFieldsChangesFilter;
 import com.kenshoo.pl.entity.internal.audit.RecursiveAuditRecordGenerator;
 import com.kenshoo.pl.entity.internal.validators.ValidationFilter;
 import com.kenshoo.pl.entity.spi.CurrentStateConsumer;
+import com.kenshoo.pl.entity.spi.FieldValueMerger;
 import com.kenshoo.pl.entity.spi.OutputGenerator;
 import com.kenshoo.pl.entity.spi.ValidationException;
+import com.kenshoo.pl.entity.spi.helpers.EntityChangeCompositeValidator;
+import org.jooq.Condition;
 import org.jooq.DSLContext;
+import org.jooq.ForeignKey;
+import org.jooq.Record;
+import org.jooq.TableField;
+import org.jooq.impl.DSL;
 import org.jooq.lambda.Seq;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 import static com.kenshoo.pl.entity.ChangeOperation.*;
 import static com.kenshoo.pl.entity.HierarchyKeyPopulator.*;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.newSetFromMap;
 import static java.util.stream.Collectors.toList;
 import static org.jooq.lambda.Seq.seq;
 
@@ -36,6 +61,7 @@ public class PersistenceLayer<ROOT extends EntityType<ROOT>> {
     private final FieldsToFetchBuilder<ROOT> fieldsToFetchBuilder;
     private DeletionCommandPopulator deletionCommandPopulator;
     private final RecursiveAuditRecordGenerator recursiveAuditRecordGenerator;
+    private final CommandsExecutor commandsExecutor;
 
     public PersistenceLayer(final DSLContext dslContext) {
         this(new PLContext.Builder(dslContext).build());
@@ -46,14 +72,21 @@ public class PersistenceLayer<ROOT extends EntityType<ROOT>> {
         this.fieldsToFetchBuilder = new FieldsToFetchBuilder<>();
         this.deletionCommandPopulator = new DeletionCommandPopulator(plContext);
         this.recursiveAuditRecordGenerator = new RecursiveAuditRecordGenerator();
+        this.commandsExecutor = CommandsExecutor.of(plContext.dslContext(), plContext.commandsExecutorConfig());
     }
 
     public <PK extends Identifier<ROOT>>
     CreateResult<ROOT, PK> create(Collection<? extends CreateEntityCommand<ROOT>> commands, ChangeFlowConfig<ROOT> flowConfig, UniqueKey<ROOT> primaryKey) {
-        ChangeContext changeContext = makeChanges(commands, flowConfig);
-        CreateResult<ROOT, PK> results = toCreateResults(commands, changeContext);
-        setIdentifiersToSuccessfulCommands(flowConfig, primaryKey, changeContext, results);
-        return results;
+        return commit(prepareCreate(commands, flowConfig, primaryKey), flowConfig);
+    }
+
+    <PK extends Identifier<ROOT>>
+    PreparedChanges<CreateResult<ROOT, PK>> prepareCreate(Collection<? extends CreateEntityCommand<ROOT>> commands, ChangeFlowConfig<ROOT> flowConfig, UniqueKey<ROOT> primaryKey) {
+        return prepareChanges(commands, flowConfig, changeContext -> {
+            CreateResult<ROOT, PK> results = toCreateResults(commands, changeContext);
+            setIdentifiersToSuccessfulCommands(flowConfig, primaryKey, changeContext, results);
+            return results;
+        });
     }
 
     public CreateResult<ROOT, Identifier<ROOT>> create(Collection<? extends CreateEntityCommand<ROOT>> commands, ChangeFlowConfig<ROOT> flowConfig) {
@@ -81,24 +114,35 @@ public class PersistenceLayer<ROOT extends EntityType<ROOT>> {
     }
 
     public <ID extends Identifier<ROOT>> UpdateResult<ROOT, ID> update(Collection<? extends UpdateEntityCommand<ROOT, ID>> commands, ChangeFlowConfig<ROOT> flowConfig) {
-        ChangeContext changeContext = makeChanges(commands, flowConfig);
-        return new UpdateResult<>(
+        return commit(prepareUpdate(commands, flowConfig), flowConfig);
+    }
+
+    <ID extends Identifier<ROOT>> PreparedChanges<UpdateResult<ROOT, ID>> prepareUpdate(Collection<? extends UpdateEntityCommand<ROOT, ID>> commands, ChangeFlowConfig<ROOT> flowConfig) {
+        return prepareChanges(commands, flowConfig, changeContext -> new UpdateResult<>(
                 seq(commands).map(cmd -> new EntityUpdateResult<>(cmd, changeContext.getValidationErrors(cmd))),
-                changeContext.getStats());
+                changeContext.getStats()));
     }
 
     public <ID extends Identifier<ROOT>> DeleteResult<ROOT, ID> delete(Collection<? extends DeleteEntityCommand<ROOT, ID>> commands, ChangeFlowConfig<ROOT> flowConfig) {
-        ChangeContext changeContext = makeChanges(commands, flowConfig);
-        return new DeleteResult<>(
+        return commit(prepareDelete(commands, flowConfig), flowConfig);
+    }
+
+    <ID extends Identifier<ROOT>> PreparedChanges<DeleteResult<ROOT, ID>> prepareDelete(Collection<? extends DeleteEntityCommand<ROOT, ID>> commands, ChangeFlowConfig<ROOT> flowConfig) {
+        return prepareChanges(commands, flowConfig, changeContext -> new DeleteResult<>(
                 seq(commands).map(cmd -> new EntityDeleteResult<>(cmd, changeContext.getValidationErrors(cmd))),
-                changeContext.getStats());
+                changeContext.getStats()));
     }
 
     public <ID extends Identifier<ROOT>> InsertOnDuplicateUpdateResult<ROOT, ID> upsert(Collection<? extends InsertOnDuplicateUpdateCommand<ROOT, ID>> commands, ChangeFlowConfig<ROOT> flowConfig) {
-        ChangeContext changeContext = makeChanges(commands, flowConfig);
-        InsertOnDuplicateUpdateResult<ROOT, ID> results = toUpsertResults(commands, changeContext);
-        populateIdentityFieldToSuccessfulUpserts(flowConfig, changeContext, results);
-        return results;
+        return commit(prepareUpsert(commands, flowConfig), flowConfig);
+    }
+
+    <ID extends Identifier<ROOT>> PreparedChanges<InsertOnDuplicateUpdateResult<ROOT, ID>> prepareUpsert(Collection<? extends InsertOnDuplicateUpdateCommand<ROOT, ID>> commands, ChangeFlowConfig<ROOT> flowConfig) {
+        return prepareChanges(commands, flowConfig, changeContext -> {
+            InsertOnDuplicateUpdateResult<ROOT, ID> results = toUpsertResults(commands, changeContext);
+            populateIdentityFieldToSuccessfulUpserts(flowConfig, changeContext, results);
+            return results;
+        });
     }
 
     private <ID extends Identifier<ROOT>> InsertOnDuplicateUpdateResult<ROOT, ID> toUpsertResults(Collection<? extends InsertOnDuplicateUpdateCommand<ROOT, ID>> commands, ChangeContext changeContext) {
@@ -115,22 +159,365 @@ public class PersistenceLayer<ROOT extends EntityType<ROOT>> {
                 .forEach(cmd -> populateIdentityField(cmd, changeContext, identityField)));
     }
 
+    /**
+     * Creates the entities of the commands in partitions made in parallel, each in its own transaction.
+     *
+     * @see PartitionedExecution
+     */
+    public CreateResult<ROOT, Identifier<ROOT>> create(Collection<? extends CreateEntityCommand<ROOT>> commands, ChangeFlowConfig<ROOT> flowConfig, PartitionedExecution<ROOT> partitioning) {
+        PartitionedExecution.Results<ROOT> results = partitioning.execute(commands, partition -> create(partition, flowConfig));
+        return new CreateResult<>(
+                seq(commands).map(cmd -> new EntityCreateResult<>(cmd, results.getErrors(cmd))),
+                results.getStats());
+    }
+
+    /**
+     * Updates the entities of the commands in partitions made in parallel, each in its own transaction.
+     *
+     * @see PartitionedExecution
+     */
+    public <ID extends Identifier<ROOT>> UpdateResult<ROOT, ID> update(Collection<? extends UpdateEntityCommand<ROOT, ID>> commands, ChangeFlowConfig<ROOT> flowConfig, PartitionedExecution<ROOT> partitioning) {
+        PartitionedExecution.Results<ROOT> results = partitioning.execute(commands, partition -> update(partition, flowConfig));
+        return new UpdateResult<>(
+                seq(commands).map(cmd -> new EntityUpdateResult<>(cmd, results.getErrors(cmd))),
+                results.getStats());
+    }
+
+    /**
+     * Deletes the entities of the commands in partitions made in parallel, each in its own transaction.
+     *
+     * @see PartitionedExecution
+     */
+    public <ID extends Identifier<ROOT>> DeleteResult<ROOT, ID> delete(Collection<? extends DeleteEntityCommand<ROOT, ID>> commands, ChangeFlowConfig<ROOT> flowConfig, PartitionedExecution<ROOT> partitioning) {
+        PartitionedExecution.Results<ROOT> results = partitioning.execute(commands, partition -> delete(partition, flowConfig));
+        return new DeleteResult<>(
+                seq(commands).map(cmd -> new EntityDeleteResult<>(cmd, results.getErrors(cmd))),
+                results.getStats());
+    }
+
+    /**
+     * Upserts the entities of the commands in partitions made in parallel, each in its own transaction.
+     *
+     * @see PartitionedExecution
+     */
+    public <ID extends Identifier<ROOT>> InsertOnDuplicateUpdateResult<ROOT, ID> upsert(Collection<? extends InsertOnDuplicateUpdateCommand<ROOT, ID>> commands, ChangeFlowConfig<ROOT> flowConfig, PartitionedExecution<ROOT> partitioning) {
+        PartitionedExecution.Results<ROOT> results = partitioning.execute(commands, partition -> upsert(partition, flowConfig));
+        return new InsertOnDuplicateUpdateResult<>(
+                seq(commands).map(cmd -> new EntityInsertOnDuplicateUpdateResult<>(cmd, results.getErrors(cmd))),
+                results.getStats());
+    }
+
+    /**
+     * Reconciles the entities matching the scope condition with the desired state given by the commands. The entities
+     * of the scope are fetched at once and joined with the commands by their identifiers, which must all be of the same
+     * key: a command of a missing entity creates it, a command changing any field of its entity updates it, and the
+     * entities of the scope left without a command are deleted along with their children. Commands which do not change
+     * their entities are dropped up front, so they never reach the validators and output generators of the flow. The
+     * creations, updates and deletions are then made by a single flow.
+     * <p>
+     * A command of an entity which exists but doesn't match the scope is not made, and gets an
+     * {@link Errors#ENTITY_OUT_OF_SCOPE} error, so that a sync never changes anything outside of its scope.
+     * The flow fetches the entities of the changes again, with the fields its components require.
+     *
+     * @return the results of the commands, and of the deletions of the entities missing from them
+     */
+    public <ID extends Identifier<ROOT>> SyncResult<ROOT, ID> sync(PLCondition scope, Collection<? extends InsertOnDuplicateUpdateCommand<ROOT, ID>> commands, ChangeFlowConfig<ROOT> flowConfig) {
+        ROOT entityType = flowConfig.getEntityType();
+        UniqueKey<ROOT> primaryKey = entityType.getPrimaryKey();
+        IdentifierType<ROOT> key = syncKeyOf(commands, primaryKey);
+        Set<EntityField<ROOT, ?>> comparedFields = seq(commands).flatMap(ChangeEntityCommand::getChangedFields).filter(field -> !field.isVirtual()).toSet();
+        EntityField<?, ?>[] fieldsToFetch = Seq.of(key.getFields()).append(primaryKey.getFields()).append(comparedFields).distinct().toArray(EntityField[]::new);
+
+        Map<Identifier<ROOT>, CurrentEntityState> currentEntities = new LinkedHashMap<>();
+        plContext.select(fieldsToFetch).from(entityType).where(scope).fetch()
+                 .forEach(entity -> currentEntities.put(key.createIdentifier(entity), entity));
+        List<ChangeEntityCommand<ROOT>> changes = Lists.newArrayListWithCapacity(commands.size());
+        List<InsertOnDuplicateUpdateCommand<ROOT, ID>> missingFromScope = new ArrayList<>();
+        for (InsertOnDuplicateUpdateCommand<ROOT, ID> command : commands) {
+            CurrentEntityState currentEntity = currentEntities.remove(command.getIdentifier());
+            if (currentEntity == null) {
+                missingFromScope.add(command);
+            } else if (!isUnchanged(command, currentEntity)) {
+                changes.add(command);
+            }
+        }
+        Set<Identifier<ROOT>> outOfScope = new EntitiesFetcher(dslContext(), flowConfig.getFeatures())
+                .fetchEntitiesByIds(seq(missingFromScope).map(ChangeEntityCommand::getIdentifier).toList(), key.getFields())
+                .keySet();
+        seq(missingFromScope).filter(command -> !outOfScope.contains(command.getIdentifier())).forEach(changes::add);
+        List<DeleteEntityCommand<ROOT, Identifier<ROOT>>> deletions = seq(currentEntities.values())
+                .map(entity -> new DeleteEntityCommand<>(entityType, primaryKey.createIdentifier(entity)).setCascade())
+                .toList();
+        changes.addAll(deletions);
+
+        ChangeContext changeContext = makeChanges(changes, flowConfig);
+        DeleteResult<ROOT, Identifier<ROOT>> deleteResults = new DeleteResult<>(
+                seq(deletions).map(cmd -> new EntityDeleteResult<>(cmd, changeContext.getValidationErrors(cmd))));
+        SyncResult<ROOT, ID> results = new SyncResult<>(
+                seq(commands).map(cmd -> new EntityInsertOnDuplicateUpdateResult<>(cmd, outOfScope.contains(cmd.getIdentifier())
+                        ? ImmutableList.of(new ValidationError(Errors.ENTITY_OUT_OF_SCOPE))
+                        : changeContext.getValidationErrors(cmd))),
+                deleteResults,
+                changeContext.getStats());
+        populateIdentityFieldToSuccessfulUpserts(flowConfig, changeContext, results);
+        return results;
+    }
+
+    private IdentifierType<ROOT> syncKeyOf(Collection<? extends ChangeEntityCommand<ROOT>> commands, UniqueKey<ROOT> primaryKey) {
+        Set<IdentifierType<ROOT>> keys = seq(commands).map(cmd -> cmd.getIdentifier().getUniqueKey()).toSet();
+        if (keys.size() > 1) {
+            throw new IllegalArgumentException("The commands to sync must all be identified by the same key, but they are identified by " + keys);
+        }
+        return keys.isEmpty() ? primaryKey : keys.iterator().next();
+    }
+
+    private boolean isUnchanged(ChangeEntityCommand<ROOT> command, CurrentEntityState currentEntity) {
+        return command.hasValuesOnly() && command.getChanges().allMatch(change -> isUnchanged(change, currentEntity));
+    }
+
+    private <T> boolean isUnchanged(FieldChange<ROOT, T> change, CurrentEntityState currentEntity) {
+        return !change.getField().isVirtual() && change.getField().valuesEqual(change.getValue(), currentEntity.get(change.getField()));
+    }
+
+    /**
+     * Sets the values of the command on all the entities matching its condition by set-based
+     * <code>UPDATE ... WHERE</code> statements, without fetching the entities. Large tables are updated a range of
+     * matching primary keys at a time (see {@link com.kenshoo.pl.data.CommandsExecutorConfig#getConditionalKeyRange()}),
+     * every range by a statement of its own, in a transaction of its own retried by the retryer of the flow, so that no
+     * transaction holds the locks of all the matching rows. The ranges already written stay written if a later one
+     * fails. Called within a transaction of the caller, every range is written under a savepoint of it instead. The
+     * version field of the entity, if any, is incremented. The validators,
+     * enrichers and child flows of the flow are not applied, unless the flow is audited: the entities are then fetched
+     * and updated by the flow, a chunk at a time (see
+     * {@link com.kenshoo.pl.data.CommandsExecutorConfig#getConditionalFlowChunkSize()}), so that audit records are
+     * published for them.
+     *
+     * @return the rows affected by the statements
+     */
+    public PersistentLayerStats updateWhere(ConditionalUpdateCommand<ROOT> command, ChangeFlowConfig<ROOT> flowConfig) {
+        requirePrimaryTableCondition(command.getCondition(), flowConfig.getEntityType());
+        if (flowConfig.auditRecordGenerator().isPresent()) {
+            return changeMatchingEntities(command.getCondition(), flowConfig, identifier -> {
+                UpdateEntityCommand<ROOT, Identifier<ROOT>> cmd = new UpdateEntityCommand<>(flowConfig.getEntityType(), identifier);
+                command.getValues().forEach((field, value) -> setValueOrExpression(cmd, field, value));
+                return cmd;
+            }, this::update);
+        }
+        ConditionalUpdateRecordCommand recordCommand = new ConditionalUpdateRecordCommand(flowConfig.getEntityType().getPrimaryTable(), command.getCondition().getJooqCondition());
+        command.getValues().forEach((field, value) -> populate(recordCommand, field, value));
+        flowConfig.getEntityType().getVersionField()
+                  .filter(versionField -> !command.getValues().containsKey(versionField))
+                  .ifPresent(versionField -> incrementVersion(recordCommand, versionField));
+        return executeConditionally(recordCommand.getTable(), flowConfig, rangeWriter -> commandsExecutor.executeUpdate(recordCommand, rangeWriter));
+    }
+
+    /**
+     * Deletes all the entities matching the condition by set-based <code>DELETE ... WHERE</code> statements, a range of
+     * matching primary keys at a time, each range in a transaction of its own, as
+     * {@link #updateWhere(ConditionalUpdateCommand, ChangeFlowConfig)} does. The
+     * rows of the secondary tables of the entities and of their descendants in the child flows are deleted along with
+     * them, by multi-table statements joining every table to the one it refers to. The entities are deleted through
+     * the flow instead, cascading to its child flows, if the flow is audited or anything but the database needs the
+     * entities of a child flow when they are deleted.
+     *
+     * @return the rows affected by the statements
+     */
+    public PersistentLayerStats deleteWhere(PLCondition condition, ChangeFlowConfig<ROOT> flowConfig) {
+        requirePrimaryTableCondition(condition, flowConfig.getEntityType());
+        if (flowConfig.auditRecordGenerator().isPresent() || !deletionCommandPopulator.descendantsDeletableBySet(flowConfig)) {
+            return changeMatchingEntities(condition, flowConfig,
+                    identifier -> new DeleteEntityCommand<>(flowConfig.getEntityType(), identifier).setCascade(),
+                    this::delete);
+        }
+        DataTable primaryTable = flowConfig.getEntityType().getPrimaryTable();
+        return executeConditionally(primaryTable, flowConfig, rangeWriter -> commandsExecutor.executeDelete(primaryTable, condition.getJooqCondition(), dependentTablesOf(flowConfig), rangeWriter));
+    }
+
+    private void requirePrimaryTableCondition(PLCondition condition, ROOT entityType) {
+        if (condition.getFields().stream().anyMatch(field -> field.getDbAdapter().getTable() != entityType.getPrimaryTable())) {
+            throw new IllegalArgumentException("Condition " + condition + " refers to fields out of the primary table of " + entityType.getName());
+        }
+    }
+
+    // Every range of keys is written by a transaction of its own, retried alone
+    private PersistentLayerStats executeConditionally(DataTable table, ChangeFlowConfig<ROOT> flowConfig, Function<CommandsExecutor.RangeWriter, AffectedRows> statements) {
+        PersistentLayerStats stats = new PersistentLayerStats();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        stats.addAffectedRows(table.getName(), statements.apply(range -> {
+            AtomicReference<AffectedRows> affectedRows = new AtomicReference<>();
+            flowConfig.retryer().run(table, stats, () -> dslContext().transaction(configuration -> affectedRows.set(range.get())));
+            return affectedRows.get();
+        }));
+        stats.addUpdateTime(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        return stats;
+    }
+
+    // The keys are fetched at once and the entities changed in chunks, each by a flow of its own
+    private <C extends ChangeEntityCommand<ROOT>> PersistentLayerStats changeMatchingEntities(PLCondition condition,
+                                                                                           ChangeFlowConfig<ROOT> flowConfig,
+                                                                                           Function<Identifier<ROOT>, C> commandOf,
+                                                                                           BiFunction<List<C>, ChangeFlowConfig<ROOT>, ChangeResult<ROOT, ?, ?>> change) {
+        UniqueKey<ROOT> primaryKey = flowConfig.getEntityType().getPrimaryKey();
+        List<C> commands = seq(plContext.select(primaryKey.getFields()).from(flowConfig.getEntityType()).where(condition).fetch())
+                .map(entity -> commandOf.apply(primaryKey.createIdentifier(entity)))
+                .toList();
+        PersistentLayerStats stats = new PersistentLayerStats();
+        for (List<C> chunk : Lists.partition(commands, plContext.commandsExecutorConfig().getConditionalFlowChunkSize())) {
+            stats = stats.combine(change.apply(chunk, flowConfig).getStats());
+        }
+        return stats;
+    }
+
+    private <T> void setValueOrExpression(ChangeEntityCommand<ROOT> cmd, EntityField<ROOT, T> field, Object value) {
+        if (value instanceof FieldExpression) {
+            //noinspection unchecked
+            cmd.set(field, (FieldExpression<T>) value);
+        } else {
+            //noinspection unchecked
+            cmd.set(field, (T) value);
+        }
+    }
+
+    private <T> void populate(ConditionalUpdateRecordCommand recordCommand, EntityField<ROOT, T> field, Object value) {
+        if (value instanceof FieldExpression) {
+            FieldExpression<?> expression = (FieldExpression<?>) value;
+            //noinspection unchecked
+            EntityFieldDbAdapter<Object> dbAdapter = (EntityFieldDbAdapter<Object>) field.getDbAdapter();
+            //noinspection unchecked
+            TableField<Record, Object> tableField = (TableField<Record, Object>) dbAdapter.getFirstTableField();
+            recordCommand.setExpression(tableField, new ColumnExpression<>(expression.getOperator(), dbAdapter.getFirstDbValue(expression.getArgument())));
+            return;
+        }
+        //noinspection unchecked
+        Iterator<Object> dbValues = field.getDbAdapter().getDbValues((T) value).iterator();
+        //noinspection unchecked
+        field.getDbAdapter().getTableFields().forEach(tableField -> recordCommand.set((TableField<Record, Object>) tableField, dbValues.next()));
+    }
+
+    private void incrementVersion(ConditionalUpdateRecordCommand recordCommand, EntityField<ROOT, ? extends Number> versionField) {
+        //noinspection unchecked
+        TableField<Record, Object> tableField = (TableField<Record, Object>) versionField.getDbAdapter().getFirstTableField();
+        Object one = versionField.getValueClass() == Long.class ? (Object) 1L : (Object) 1;
+        recordCommand.setExpression(tableField, new ColumnExpression<>(ColumnExpression.Operator.ADD, one));
+    }
+
     private ChangeContext makeChanges(Collection<? extends ChangeEntityCommand<ROOT>> commands, ChangeFlowConfig<ROOT> flowConfig) {
+        return commit(prepareChanges(commands, flowConfig, Function.identity()), flowConfig);
+    }
+
+    private <R> R commit(PreparedChanges<R> changes, ChangeFlowConfig<ROOT> flowConfig) {
+        if (!changes.isEmpty()) {
+            flowConfig.retryer().run(changes.getPrimaryTable(), changes.getStats(), () -> dslContext().transaction((configuration) -> changes.write()));
+        }
+        return changes.complete();
+    }
+
+    private <R> PreparedChanges<R> prepareChanges(Collection<? extends ChangeEntityCommand<ROOT>> allCommands, ChangeFlowConfig<ROOT> flowConfig, Function<ChangeContext, R> toResult) {
+        Map<ChangeEntityCommand<ROOT>, ChangeEntityCommand<ROOT>> coalescedCommands = flowConfig.commandsCoalescing()
+                .map(merger -> coalesce(allCommands, merger))
+                .orElse(emptyMap());
+        Collection<? extends ChangeEntityCommand<ROOT>> commands = coalescedCommands.isEmpty() ? allCommands : seq(allCommands)
+                .map(cmd -> coalescedCommands.getOrDefault(cmd, cmd))
+                .filter(newSetFromMap(new IdentityHashMap<>())::add)
+                .toList();
         deletionCommandPopulator.handleRecursive(commands, flowConfig);
-        ChangeContextImpl context = new ChangeContextImpl(Hierarchy.build(flowConfig), flowConfig.getFeatures());
+        boolean blindUpsert = isBlindUpsert(commands, flowConfig);
+        ChangeContextImpl context = new ChangeContextImpl(Hierarchy.build(flowConfig), flowConfig.getFeatures(), blindUpsert);
+        context.addCoalescedChanges(coalescedCommands);
+        if (blindUpsert) {
+            commands.forEach(cmd -> cmd.updateOperator(CREATE));
+        }
         context.addFetchRequests(fieldsToFetchBuilder.build(commands, flowConfig));
         prepareRecursive(commands, context, flowConfig);
         Collection<? extends ChangeEntityCommand<ROOT>> validCmds = seq(commands).filter(cmd -> !context.containsError(cmd)).toList();
         ChangeContext overridingCtx = new OverridingContext(context);
-        if (!validCmds.isEmpty()) {
-            flowConfig.retryer().run((() -> dslContext().transaction((configuration) -> generateOutputRecursive(flowConfig, validCmds, overridingCtx))));
+        return new PreparedChanges<>(flowConfig.getEntityType().getPrimaryTable(), context.getStats(), validCmds.isEmpty(),
+                () -> {
+                    // A retried write starts over, without the errors of the attempts before it
+                    context.clearWriteErrors();
+                    generateOutputRecursive(flowConfig, validCmds, overridingCtx);
+                },
+                () -> {
+                    final Stream<? extends AuditRecord> auditRecords =
+                        recursiveAuditRecordGenerator.generateMany(flowConfig,
+                                                                   validCmds.stream().filter(cmd -> !overridingCtx.containsError(cmd)),
+                                                                   overridingCtx);
+                    plContext.auditRecordPublisher().publish(auditRecords);
+                    coalescedCommands.forEach((coalesced, cmd) -> {
+                        if (coalesced.getChangeOperation() != cmd.getChangeOperation()) {
+                            coalesced.updateOperator(cmd.getChangeOperation());
+                        }
+                        // Such as the generated id of a created entity
+                        Optional.ofNullable(overridingCtx.getEntity(cmd)).ifPresent(entity -> overridingCtx.addEntity(coalesced, entity));
+                    });
+                    return toResult.apply(overridingCtx);
+                });
+    }
+
+    // Maps every coalesced command to the copy made of the commands of its entity. A command whose changes can't be
+    // combined with those before it isn't coalesced, and the commands after it are coalesced with it instead.
+    private Map<ChangeEntityCommand<ROOT>, ChangeEntityCommand<ROOT>> coalesce(Collection<? extends ChangeEntityCommand<ROOT>> commands, FieldValueMerger<ROOT> merger) {
+        Map<List<Object>, ChangeEntityCommand<ROOT>> lastCommands = new HashMap<>();
+        Map<ChangeEntityCommand<ROOT>, ChangeEntityCommand<ROOT>> coalescedCommands = new IdentityHashMap<>();
+        for (ChangeEntityCommand<ROOT> cmd : commands) {
+            if (cmd.getChangeOperation() != UPDATE || cmd.getChildren().findAny().isPresent() || cmd.getIdentifier() == null) {
+                continue;
+            }
+            List<Object> entityKey = Seq.<Object>of(cmd.getClass(), cmd.allowMissingEntity(), cmd.getKeysToParent())
+                    .concat(Stream.of(cmd.getIdentifier().getUniqueKey().getFields()))
+                    .concat(cmd.getIdentifier().getValues())
+                    .toList();
+            ChangeEntityCommand<ROOT> lastCommand = lastCommands.get(entityKey);
+            if (lastCommand == null || !coalescedCommands.getOrDefault(lastCommand, lastCommand).canMerge(cmd)) {
+                lastCommands.put(entityKey, cmd);
+                continue;
+            }
+            ChangeEntityCommand<ROOT> coalesced = coalescedCommands.get(lastCommand);
+            if (coalesced == null) {
+                coalesced = copyOf(lastCommand);
+                coalescedCommands.put(lastCommand, coalesced);
+            }
+            coalesced.merge(cmd, merger);
+            coalescedCommands.put(cmd, coalesced);
+        }
+        return coalescedCommands;
+    }
+
+    // An empty command of the same entity, which the commands of the entity are merged into so that they aren't changed
+    private ChangeEntityCommand<ROOT> copyOf(ChangeEntityCommand<ROOT> cmd) {
+        ChangeEntityCommand<ROOT> copy = cmd instanceof InsertOnDuplicateUpdateCommand
+                ? new InsertOnDuplicateUpdateCommand<>(cmd.getEntityType(), cmd.getIdentifier())
+                : new UpdateEntityCommand<>(cmd.getEntityType(), cmd.getIdentifier());
+        copy.setKeysToParent(cmd.getKeysToParent());
+        copy.merge(cmd, FieldValueMerger.lastWriteWins());
+        return copy;
+    }
+
+    // Blind upserts are made as creations, so whatever the flow does to creations alone, such as setting a creation date
+    // or default values, or filtering out commands missing required fields, would be done to existing entities as well
+    private boolean treatsCreationsAsUpdates(ChangeFlowConfig<ROOT> flowConfig) {
+        return flowConfig.getRequiredFields().isEmpty() && Seq.<CurrentStateConsumer<ROOT>>concat(
+                    seq(flowConfig.getPostFetchCommandEnrichers()),
+                    seq(flowConfig.getValidators()),
+                    seq(flowConfig.getOutputGenerators()))
+                .allMatch(consumer -> consumer instanceof EntityChangeCompositeValidator
+                        ? ((EntityChangeCompositeValidator<ROOT>) consumer).validates(CREATE) == ((EntityChangeCompositeValidator<ROOT>) consumer).validates(UPDATE)
+                        : consumer.getSupportedChangeOperation().supports(CREATE) == consumer.getSupportedChangeOperation().supports(UPDATE));
+    }
+
+    // Nothing but the existence of the entities would be fetched, and INSERT ... ON DUPLICATE KEY UPDATE takes care of that
+    private boolean isBlindUpsert(Collection<? extends ChangeEntityCommand<ROOT>> commands, ChangeFlowConfig<ROOT> flowConfig) {
+        if (!flowConfig.isBlindUpserts() || !flowConfig.childFlows().isEmpty() || flowConfig.auditRecordGenerator().isPresent() || flowConfig.getPrimaryIdentityField().isPresent()) {
+            return false;
+        }
+        if (!treatsCreationsAsUpdates(flowConfig)) {
+            return false;
+        }
+        if (!commands.stream().allMatch(cmd -> cmd instanceof InsertOnDuplicateUpdateCommand && cmd.getChangeOperation() == UPDATE && cmd.allowMissingEntity())) {
+            return false;
         }
-        final Stream<? extends AuditRecord> auditRecords =
-            recursiveAuditRecordGenerator.generateMany(flowConfig,
-                                                       validCmds.stream(),
-                                                       overridingCtx);
-        plContext.auditRecordPublisher().publish(auditRecords);
-        return overridingCtx;
+        Set<EntityField<ROOT, ?>> identifierFields = seq(commands).flatMap(cmd -> Stream.of(cmd.getIdentifier().getUniqueKey().getFields())).toSet();
+        return fieldsToFetchBuilder.build(commands, flowConfig).stream().allMatch(request -> identifierFields.contains(request.getEntityField()));
     }
 
     private <E extends EntityType<E>> void prepareRecursive(
@@ -264,14 +651,47 @@ public class PersistenceLayer<ROOT extends EntityType<ROOT>> {
                     .forEach(list -> outputGenerator.generate(list, list.get(0).getChangeOperation(), context));
         }
 
-        // invoke recursive
-        flowConfig.childFlows().forEach(childFlow -> generateOutputChildFlowRecursive(commands, childFlow, context));
+        // invoke recursive, leaving out the children of entities which failed to be written
+        List<? extends ChangeEntityCommand<E>> writtenCommands = seq(commands).filter(cmd -> !context.containsErrorNonRecursive(cmd)).toList();
+        flowConfig.childFlows().forEach(childFlow -> generateOutputChildFlowRecursive(writtenCommands, childFlow, context));
     }
 
     private <PARENT extends EntityType<PARENT>, CHILD extends EntityType<CHILD>> void generateOutputChildFlowRecursive(Collection<? extends ChangeEntityCommand<PARENT>> entityChanges, ChangeFlowConfig<CHILD> childFlow, ChangeContext context) {
+        DataTable childTable = childFlow.getEntityType().getPrimaryTable();
+        // the children of all the parents are deleted together, by as few statements as their conditions fit in
+        List<Condition> otherChildren = seq(entityChanges)
+                .flatMap(parent -> seq(parent.getOtherChildrenDeletion(childFlow.getEntityType())))
+                .toList();
+        if (!otherChildren.isEmpty()) {
+            context.getStats().addAffectedRows(childTable.getName(), commandsExecutor.executeDelete(childTable, otherChildren, dependentTablesOf(childFlow)));
+        }
         generateOutputRecursive(childFlow, entityChanges.stream().flatMap(parent -> parent.getChildren(childFlow.getEntityType())).collect(toList()), context);
     }
 
+    // The secondary tables of the flow and the tables of the flows below it with theirs, every table joined on its
+    // foreign key to the primary table of its entity or of its parent flow
+    private <E extends EntityType<E>> Map<DataTable, Condition> dependentTablesOf(ChangeFlowConfig<E> flow) {
+        Map<DataTable, Condition> tables = new LinkedHashMap<>();
+        DataTable table = flow.getEntityType().getPrimaryTable();
+        flow.getEntityType().getFields()
+                .filter(field -> !field.isVirtual())
+                .map(field -> field.getDbAdapter().getTable())
+                .filter(secondaryTable -> secondaryTable != table && !secondaryTable.getReferencesTo(table).isEmpty())
+                .distinct()
+                .forEach(secondaryTable -> tables.put(secondaryTable, joinCondition(secondaryTable, table)));
+        flow.childFlows().forEach(childFlow -> {
+            DataTable childTable = childFlow.getEntityType().getPrimaryTable();
+            tables.put(childTable, joinCondition(childTable, table));
+            tables.putAll(dependentTablesOf(childFlow));
+        });
+        return tables;
+    }
+
+    private Condition joinCondition(DataTable table, DataTable referencedTable) {
+        ForeignKey<Record, Record> foreignKey = table.getForeignKey(referencedTable);
+        return DSL.row(foreignKey.getFields()).eq(DSL.row(foreignKey.getKey().getFields()));
+    }
+
     private <T> List<? extends T> only(Iterable<? extends T> items, Predicate<? super T> predicate) {
         return seq(items).filter(predicate).toList();
     }
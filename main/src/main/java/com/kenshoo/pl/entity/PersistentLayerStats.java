@@ -17,6 +17,9 @@ public class PersistentLayerStats {
     private long fetchTimeMillis = 0;
     private long updateTimeMillis = 0;
     private long auditLogTimeMillis = 0;
+    private int conflicts = 0;
+    private int retries = 0;
+    private long retryWaitTimeMillis = 0;
 
     public void addAffectedRows(String tableName, AffectedRows affectedRows) {
         tableStats.put(tableName, tableStats.getOrDefault(tableName, AffectedRows.empty()).plus(affectedRows));
@@ -34,6 +37,15 @@ public class PersistentLayerStats {
         auditLogTimeMillis += elapsed;
     }
 
+    public void addConflict() {
+        conflicts++;
+    }
+
+    public void addRetry(long waited) {
+        retries++;
+        retryWaitTimeMillis += waited;
+    }
+
     public PersistentLayerStats combine(PersistentLayerStats other) {
         PersistentLayerStats result = new PersistentLayerStats();
         Set<String> allTables = Stream.concat(getTablesAffected().stream(), other.getTablesAffected().stream()).collect(toSet());
@@ -42,6 +54,10 @@ public class PersistentLayerStats {
         }
         result.addFetchTime(getFetchTime(TimeUnit.MILLISECONDS) + other.getFetchTime(TimeUnit.MILLISECONDS));
         result.addUpdateTime(getUpdateTime(TimeUnit.MILLISECONDS) + other.getUpdateTime(TimeUnit.MILLISECONDS));
+        result.addAuditLogTime(auditLogTimeMillis + other.auditLogTimeMillis);
+        result.conflicts = conflicts + other.conflicts;
+        result.retries = retries + other.retries;
+        result.retryWaitTimeMillis = retryWaitTimeMillis + other.retryWaitTimeMillis;
         return result;
     }
 
@@ -53,6 +69,13 @@ public class PersistentLayerStats {
         return tableStats.getOrDefault(tableName, AffectedRows.empty());
     }
 
+    /**
+     * @return the number of JDBC batches the changes of the given table were split into
+     */
+    public int getChunksOf(String tableName) {
+        return getAffectedRowsOf(tableName).getChunks();
+    }
+
     public long getFetchTime(TimeUnit timeUnit) {
         return TimeUnit.MILLISECONDS.convert(fetchTimeMillis, timeUnit);
     }
@@ -64,4 +87,22 @@ public class PersistentLayerStats {
     public long getAuditLogTime(TimeUnit timeUnit) {
         return TimeUnit.MILLISECONDS.convert(auditLogTimeMillis, timeUnit);
     }
+
+    /**
+     * @return the number of times the transaction of the flow failed on a deadlock or a lock wait timeout
+     */
+    public int getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return the number of times the transaction of the flow was retried after a conflict
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    public long getRetryWaitTime(TimeUnit timeUnit) {
+        return timeUnit.convert(retryWaitTimeMillis, TimeUnit.MILLISECONDS);
+    }
 }
@@ -0,0 +1,52 @@
+package com.kenshoo.pl.entity;
+
+import com.kenshoo.jooq.DataTable;
+
+import java.util.function.Supplier;
+
+/**
+ * The changes of a flow which were fetched, enriched and validated, waiting to be {@link #write() written} within a
+ * transaction and then {@link #complete() completed} into the result of the flow.
+ */
+class PreparedChanges<R> {
+
+    private final DataTable primaryTable;
+    private final PersistentLayerStats stats;
+    private final boolean empty;
+    private final Runnable writer;
+    private final Supplier<R> completer;
+
+    PreparedChanges(DataTable primaryTable, PersistentLayerStats stats, boolean empty, Runnable writer, Supplier<R> completer) {
+        this.primaryTable = primaryTable;
+        this.stats = stats;
+        this.empty = empty;
+        this.writer = writer;
+        this.completer = completer;
+    }
+
+    DataTable getPrimaryTable() {
+        return primaryTable;
+    }
+
+    PersistentLayerStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return <code>true</code> if no command passed the validations, leaving nothing to write
+     */
+    boolean isEmpty() {
+        return empty;
+    }
+
+    void write() {
+        writer.run();
+    }
+
+    /**
+     * Publishes the audit records of the written changes and builds the result of the flow.
+     */
+    R complete() {
+        return completer.get();
+    }
+}
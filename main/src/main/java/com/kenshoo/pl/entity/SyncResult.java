@@ -0,0 +1,24 @@
+package com.kenshoo.pl.entity;
+
+/**
+ * The results of {@link PersistenceLayer#sync}: those of the commands of the desired state, including the commands
+ * which did not change their entities, and those of the deletions of the entities missing from the desired state.
+ */
+public class SyncResult<E extends EntityType<E>, ID extends Identifier<E>> extends InsertOnDuplicateUpdateResult<E, ID> {
+
+    private final DeleteResult<E, Identifier<E>> deleteResults;
+
+    public SyncResult(Iterable<EntityInsertOnDuplicateUpdateResult<E, ID>> changeResults, DeleteResult<E, Identifier<E>> deleteResults, PersistentLayerStats stats) {
+        super(changeResults, stats);
+        this.deleteResults = deleteResults;
+    }
+
+    @Override
+    public boolean hasErrors() {
+        return super.hasErrors() || deleteResults.hasErrors();
+    }
+
+    public DeleteResult<E, Identifier<E>> getDeleteResults() {
+        return deleteResults;
+    }
+}
@@ -0,0 +1,130 @@
+package com.kenshoo.pl.entity;
+
+import com.kenshoo.pl.entity.spi.PersistenceLayerRetryer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.jooq.lambda.Seq.seq;
+
+/**
+ * Accumulates the commands of several flows, possibly of different root entity types, and makes all their changes on
+ * {@link #flush()} by a single transaction. The flows are prepared one after the other in the order they were added,
+ * fetching, enriching and validating their commands as usual, and then all of them are written by one transaction
+ * which is retried as a whole by the retryer of the {@link PLContext}.
+ * <p>
+ * The flows are prepared before any of them is written, so the commands of one flow can't depend on the changes of
+ * another, such as on an identity generated for it. The results of the flows are available once the unit of work is
+ * flushed.
+ *
+ * @see PLContext#unitOfWork()
+ */
+public class UnitOfWork {
+
+    private final PLContext plContext;
+    private final List<Work<?>> works = new ArrayList<>();
+    private boolean flushed;
+
+    UnitOfWork(PLContext plContext) {
+        this.plContext = plContext;
+    }
+
+    public <E extends EntityType<E>> Result<CreateResult<E, Identifier<E>>> create(Collection<? extends CreateEntityCommand<E>> commands, ChangeFlowConfig<E> flowConfig) {
+        return add(() -> this.<E>persistenceLayer().prepareCreate(commands, flowConfig, flowConfig.getEntityType().getPrimaryKey()));
+    }
+
+    public <E extends EntityType<E>, ID extends Identifier<E>> Result<UpdateResult<E, ID>> update(Collection<? extends UpdateEntityCommand<E, ID>> commands, ChangeFlowConfig<E> flowConfig) {
+        return add(() -> this.<E>persistenceLayer().prepareUpdate(commands, flowConfig));
+    }
+
+    public <E extends EntityType<E>, ID extends Identifier<E>> Result<DeleteResult<E, ID>> delete(Collection<? extends DeleteEntityCommand<E, ID>> commands, ChangeFlowConfig<E> flowConfig) {
+        return add(() -> this.<E>persistenceLayer().prepareDelete(commands, flowConfig));
+    }
+
+    public <E extends EntityType<E>, ID extends Identifier<E>> Result<InsertOnDuplicateUpdateResult<E, ID>> upsert(Collection<? extends InsertOnDuplicateUpdateCommand<E, ID>> commands, ChangeFlowConfig<E> flowConfig) {
+        return add(() -> this.<E>persistenceLayer().prepareUpsert(commands, flowConfig));
+    }
+
+    /**
+     * Prepares all the flows added to the unit of work and writes their changes by a single transaction. If anything
+     * fails, the failure is thrown and the results of all the flows report it.
+     *
+     * @return the stats of all the flows combined
+     */
+    public PersistentLayerStats flush() {
+        checkState(!flushed, "The unit of work was already flushed");
+        flushed = true;
+        try {
+            return prepareAndWrite();
+        } catch (RuntimeException e) {
+            works.forEach(work -> work.result.failure = e);
+            throw e;
+        }
+    }
+
+    private PersistentLayerStats prepareAndWrite() {
+        List<PreparedChanges<?>> preparedChanges = seq(works).<PreparedChanges<?>>map(Work::prepare).toList();
+        List<PreparedChanges<?>> changesToWrite = seq(preparedChanges).filter(changes -> !changes.isEmpty()).toList();
+        PersistentLayerStats retryStats = new PersistentLayerStats();
+        if (!changesToWrite.isEmpty()) {
+            PersistenceLayerRetryer retryer = plContext.persistenceLayerRetryer();
+            retryer.run(changesToWrite.get(0).getPrimaryTable(), retryStats, () -> plContext.dslContext().transaction((configuration) -> changesToWrite.forEach(PreparedChanges::write)));
+        }
+        works.forEach(Work::complete);
+        return seq(preparedChanges).map(PreparedChanges::getStats).foldLeft(retryStats, PersistentLayerStats::combine);
+    }
+
+    private <R> Result<R> add(Supplier<PreparedChanges<R>> preparation) {
+        checkState(!flushed, "The unit of work was already flushed");
+        Work<R> work = new Work<>(preparation);
+        works.add(work);
+        return work.result;
+    }
+
+    private <E extends EntityType<E>> PersistenceLayer<E> persistenceLayer() {
+        return new PersistenceLayer<>(plContext);
+    }
+
+    /**
+     * The result of a flow added to a unit of work, available once the unit of work is flushed.
+     */
+    public static class Result<R> {
+
+        private R value;
+        private RuntimeException failure;
+
+        /**
+         * @throws IllegalStateException if the unit of work was not flushed yet, or its flush failed
+         */
+        public R get() {
+            if (failure != null) {
+                throw new IllegalStateException("The flush of the unit of work failed", failure);
+            }
+            checkState(value != null, "The unit of work was not flushed yet");
+            return value;
+        }
+    }
+
+    private static class Work<R> {
+
+        private final Supplier<PreparedChanges<R>> preparation;
+        private final Result<R> result = new Result<>();
+        private PreparedChanges<R> preparedChanges;
+
+        private Work(Supplier<PreparedChanges<R>> preparation) {
+            this.preparation = preparation;
+        }
+
+        private PreparedChanges<R> prepare() {
+            preparedChanges = preparation.get();
+            return preparedChanges;
+        }
+
+        private void complete() {
+            result.value = preparedChanges.complete();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.kenshoo.pl.entity.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotates the field holding the version of an entity, which has to be an <code>Integer</code> or <code>Long</code>
+ * field of the primary table. Every update of the entity increments the version, and is applied only if the version
+ * is still the one the update was based on: the value set to the field by the command if any, or the one fetched
+ * otherwise. An update of an entity whose version changed in the meantime fails with a
+ * {@link com.kenshoo.pl.entity.internal.Errors#VERSION_CONFLICT} error, without failing the other updates.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Version {
+}
@@ -0,0 +1,40 @@
+package com.kenshoo.pl.entity.converters;
+
+import com.kenshoo.pl.entity.ValueConverter;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Stores a <code>UUID</code> in a <code>BINARY(16)</code> column, most significant bits first, so the byte order of
+ * the column is the order of the UUIDs.
+ */
+public class UuidBinaryValueConverter implements ValueConverter<UUID, byte[]> {
+
+    public final static UuidBinaryValueConverter INSTANCE = new UuidBinaryValueConverter();
+
+    @Override
+    public byte[] convertTo(UUID value) {
+        if (value == null) {
+            return null;
+        }
+        return ByteBuffer.allocate(16)
+                .putLong(value.getMostSignificantBits())
+                .putLong(value.getLeastSignificantBits())
+                .array();
+    }
+
+    @Override
+    public UUID convertFrom(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    @Override
+    public Class<UUID> getValueClass() {
+        return UUID.class;
+    }
+}
@@ -1,5 +1,10 @@
 package com.kenshoo.pl.entity.internal;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.kenshoo.jooq.DataTable;
 import com.kenshoo.pl.data.AbstractRecordCommand;
 import com.kenshoo.pl.data.AffectedRows;
@@ -7,10 +12,17 @@ import com.kenshoo.pl.data.CommandsExecutor;
 import com.kenshoo.pl.data.CreateRecordCommand;
 import com.kenshoo.pl.data.DeleteRecordCommand;
 import com.kenshoo.pl.data.UpdateRecordCommand;
+import com.kenshoo.pl.entity.ChangeContext;
 import com.kenshoo.pl.entity.EntityChange;
 import com.kenshoo.pl.entity.PersistentLayerStats;
+import com.kenshoo.pl.entity.ValidationError;
+import com.kenshoo.pl.entity.mysql.MySqlErrors;
+import org.jooq.exception.DataAccessException;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 
@@ -36,6 +48,11 @@ public class ChangesContainer {
         return getOrCreate(updates, IdToCommandMap< UpdateRecordCommand>::new, commandCreator, table, entityChange);
     }
 
+    public Optional<UpdateRecordCommand> getUpdate(final DataTable table, final EntityChange entityChange) {
+        return Optional.ofNullable(updates.get(table))
+                       .map(idToCmdMap -> idToCmdMap.get(entityChange));
+    }
+
     public AbstractRecordCommand getInsert(DataTable table, EntityChange entityChange, Supplier<CreateRecordCommand> commandCreator) {
         //noinspection RedundantTypeArguments IntelliJ fails to compile without specification
         return getOrCreate(inserts, IdToCommandMap<CreateRecordCommand>::new, commandCreator, table, entityChange);
@@ -52,41 +69,119 @@ public class ChangesContainer {
     }
 
     public void commit(CommandsExecutor commandsExecutor, PersistentLayerStats stats) {
-        for (Map.Entry<DataTable, IdToCommandMap< DeleteRecordCommand>> entry : deletes.entrySet()) {
+        boolean lockOrdered = commandsExecutor.getConfig().isLockOrderedWrites();
+        Map<DataTable, Collection<DeleteRecordCommand>> deletesToCommit = toCommit(deletes, lockOrdered, LockOrder.DELETED_TABLES_ORDER, (table, commands) -> LockOrder.deletes(commands));
+        Map<DataTable, Collection<CreateRecordCommand>> insertsToCommit = toCommit(inserts, lockOrdered, LockOrder.TABLES_ORDER, LockOrder::inserts);
+        Map<DataTable, Collection<UpdateRecordCommand>> updatesToCommit = toCommit(updates, lockOrdered, LockOrder.TABLES_ORDER, (table, commands) -> LockOrder.updates(commands));
+        Map<DataTable, Collection<CreateRecordCommand>> insertsOnDuplicateUpdateToCommit = toCommit(insertsOnDuplicateUpdate, lockOrdered, LockOrder.TABLES_ORDER, LockOrder::inserts);
+
+        if (canCommitPipelined(commandsExecutor)) {
+            CommandsExecutor.Pipeline pipeline = commandsExecutor.pipeline();
+            deletesToCommit.forEach(pipeline::deletes);
+            insertsToCommit.forEach((table, commands) -> pipeline.inserts(table, commands, onDuplicateKey));
+            updatesToCommit.forEach(pipeline::updates);
+            insertsOnDuplicateUpdateToCommit.forEach((table, commands) -> pipeline.inserts(table, commands, CreateRecordCommand.OnDuplicateKey.UPDATE));
+            pipeline.execute().forEach(stats::addAffectedRows);
+            return;
+        }
+        for (Map.Entry<DataTable, Collection<DeleteRecordCommand>> entry : deletesToCommit.entrySet()) {
             DataTable table = entry.getKey();
-            AffectedRows affectedRows = commandsExecutor.executeDeletes(table, entry.getValue().map.values());
+            AffectedRows affectedRows = commandsExecutor.executeDeletes(table, entry.getValue());
             stats.addAffectedRows(table.getName(), affectedRows);
         }
-        for (Map.Entry<DataTable, IdToCommandMap<CreateRecordCommand>> entry : inserts.entrySet()) {
+        for (Map.Entry<DataTable, Collection<CreateRecordCommand>> entry : insertsToCommit.entrySet()) {
             DataTable table = entry.getKey();
-            Collection<CreateRecordCommand> commands = entry.getValue().map.values();
-            AffectedRows affectedRows;
-            switch (onDuplicateKey) {
-                case IGNORE:
-                    affectedRows = commandsExecutor.executeInsertsOnDuplicateKeyIgnore(table, commands);
-                    break;
-                case UPDATE:
-                    affectedRows = commandsExecutor.executeInsertsOnDuplicateKeyUpdate(table, commands);
-                    break;
-                case FAIL:
-                default:
-                    affectedRows = commandsExecutor.executeInserts(table, commands);
-                    break;
-            }
+            AffectedRows affectedRows = executeInserts(commandsExecutor, table, entry.getValue());
             stats.addAffectedRows(table.getName(), affectedRows);
         }
-        for (Map.Entry<DataTable, IdToCommandMap< UpdateRecordCommand>> entry : updates.entrySet()) {
+        for (Map.Entry<DataTable, Collection<UpdateRecordCommand>> entry : updatesToCommit.entrySet()) {
             DataTable table = entry.getKey();
-            AffectedRows affectedRows = commandsExecutor.executeUpdates(table, entry.getValue().map.values());
+            AffectedRows affectedRows = commandsExecutor.executeUpdates(table, entry.getValue());
             stats.addAffectedRows(table.getName(), affectedRows);
         }
-        for (Map.Entry<DataTable, IdToCommandMap<CreateRecordCommand>> entry : insertsOnDuplicateUpdate.entrySet()) {
+        for (Map.Entry<DataTable, Collection<CreateRecordCommand>> entry : insertsOnDuplicateUpdateToCommit.entrySet()) {
             DataTable table = entry.getKey();
-            AffectedRows affectedRows = commandsExecutor.executeInsertsOnDuplicateKeyUpdate(table, entry.getValue().map.values());
+            AffectedRows affectedRows = commandsExecutor.executeInsertsOnDuplicateKeyUpdate(table, entry.getValue());
             stats.addAffectedRows(table.getName(), affectedRows);
         }
     }
 
+    /**
+     * Writes the records as {@link #commit(CommandsExecutor, PersistentLayerStats)} does, unless the executor has a
+     * savepoint chunk size (see {@link com.kenshoo.pl.data.CommandsExecutorConfig#getSavepointChunkSize()}). The records
+     * of every table are then written in chunks, each under a savepoint of its own. A chunk failing for any reason but
+     * a lock wait timeout is bisected until the failing records are isolated. Their entity changes get a
+     * {@link Errors#WRITE_FAILED} error while the other records are written. A chunk failing for a lock wait timeout is
+     * retried instead, after a delay doubled by every retry, the lock being held by another transaction rather than by
+     * any of its records, and all its entity changes get the error once the retries run out. A deadlock rolls back the
+     * whole transaction so it fails the commit as usual.
+     * <p>
+     * Failures are isolated per record, not per entity: the records an entity change has in other tables, or in tables
+     * written before by other containers, such as its primary table record when a secondary table record fails, are
+     * not rolled back. The change is reported failed nevertheless, its children are left out, and so are its secondary
+     * table records if its primary table record failed.
+     */
+    public void commit(CommandsExecutor commandsExecutor, ChangeContext changeContext) {
+        if (commandsExecutor.getConfig().getSavepointChunkSize() == 0) {
+            commit(commandsExecutor, changeContext.getStats());
+            return;
+        }
+        boolean lockOrdered = commandsExecutor.getConfig().isLockOrderedWrites();
+        toCommit(deletes, lockOrdered, LockOrder.DELETED_TABLES_ORDER, (table, commands) -> LockOrder.deletes(commands)).forEach((table, commands) ->
+                new SavepointCommit<>(commandsExecutor, table, deletes.get(table), chunk -> commandsExecutor.executeDeletes(table, chunk), changeContext).commit(commands));
+        toCommit(inserts, lockOrdered, LockOrder.TABLES_ORDER, LockOrder::inserts).forEach((table, commands) ->
+                new SavepointCommit<>(commandsExecutor, table, inserts.get(table), chunk -> executeInserts(commandsExecutor, table, chunk), changeContext).commit(commands));
+        toCommit(updates, lockOrdered, LockOrder.TABLES_ORDER, (table, commands) -> LockOrder.updates(commands)).forEach((table, commands) ->
+                new SavepointCommit<>(commandsExecutor, table, updates.get(table), chunk -> commandsExecutor.executeUpdates(table, chunk), changeContext).commit(commands));
+        toCommit(insertsOnDuplicateUpdate, lockOrdered, LockOrder.TABLES_ORDER, LockOrder::inserts).forEach((table, commands) ->
+                new SavepointCommit<>(commandsExecutor, table, insertsOnDuplicateUpdate.get(table), chunk -> commandsExecutor.executeInsertsOnDuplicateKeyUpdate(table, chunk), changeContext).commit(commands));
+    }
+
+    private AffectedRows executeInserts(CommandsExecutor commandsExecutor, DataTable table, Collection<CreateRecordCommand> commands) {
+        switch (onDuplicateKey) {
+            case IGNORE:
+                return commandsExecutor.executeInsertsOnDuplicateKeyIgnore(table, commands);
+            case UPDATE:
+                return commandsExecutor.executeInsertsOnDuplicateKeyUpdate(table, commands);
+            case FAIL:
+            default:
+                return commandsExecutor.executeInserts(table, commands);
+        }
+    }
+
+    // In lock order the tables and the records of every table are sorted, see LockOrder
+    private <RC extends AbstractRecordCommand> Map<DataTable, Collection<RC>> toCommit(Map<DataTable, IdToCommandMap<RC>> tableCommands,
+                                                                                      boolean lockOrdered,
+                                                                                      Comparator<DataTable> tablesOrder,
+                                                                                      BiFunction<DataTable, Collection<RC>, List<RC>> lockOrder) {
+        Map<DataTable, Collection<RC>> toCommit = new LinkedHashMap<>();
+        if (!lockOrdered) {
+            tableCommands.forEach((table, idToCommandMap) -> toCommit.put(table, idToCommandMap.map.values()));
+            return toCommit;
+        }
+        tableCommands.keySet().stream()
+                .sorted(tablesOrder)
+                .forEach(table -> toCommit.put(table, lockOrder.apply(table, tableCommands.get(table).map.values())));
+        return toCommit;
+    }
+
+    // All the writes go in a single batch only if none of them waits for keys generated by another
+    private boolean canCommitPipelined(CommandsExecutor commandsExecutor) {
+        int records = records(deletes) + records(inserts) + records(updates) + records(insertsOnDuplicateUpdate);
+        return records > 0 &&
+                records <= commandsExecutor.getConfig().getMaxPipelinedRecords() &&
+                !needsGeneratedKeys(commandsExecutor, inserts) &&
+                !needsGeneratedKeys(commandsExecutor, insertsOnDuplicateUpdate);
+    }
+
+    private int records(Map<DataTable, ? extends IdToCommandMap<?>> tableCommands) {
+        return tableCommands.values().stream().mapToInt(IdToCommandMap::size).sum();
+    }
+
+    private boolean needsGeneratedKeys(CommandsExecutor commandsExecutor, Map<DataTable, IdToCommandMap<CreateRecordCommand>> tableCommands) {
+        return tableCommands.entrySet().stream().anyMatch(entry -> commandsExecutor.needsGeneratedKeys(entry.getKey(), entry.getValue().map.values()));
+    }
+
      private <RC extends AbstractRecordCommand> AbstractRecordCommand getOrCreate(Map<DataTable, IdToCommandMap< RC>> map, Supplier<IdToCommandMap< RC>> creator, Supplier<RC> commandCreator, DataTable table, EntityChange entityChange) {
         //noinspection unchecked
          IdToCommandMap< RC> idToCommandMap = map.computeIfAbsent(table, k -> creator.get());
@@ -94,15 +189,81 @@ public class ChangesContainer {
     }
 
     private static class IdToCommandMap<RC extends AbstractRecordCommand> {
-        private final Map<EntityChange, RC> map = new HashMap<>();
+        private final Map<EntityChange, RC> map = new LinkedHashMap<>();
+        private final Map<RC, EntityChange> changes = new IdentityHashMap<>();
 
         AbstractRecordCommand getOrCreate(EntityChange entityChange, Supplier<RC> commandCreator) {
-            return map.computeIfAbsent(entityChange, k -> commandCreator.get());
+            return map.computeIfAbsent(entityChange, k -> {
+                RC command = commandCreator.get();
+                changes.put(command, entityChange);
+                return command;
+            });
         }
 
         RC get(EntityChange entityChange) {
             return map.get(entityChange);
         }
+
+        int size() {
+            return map.size();
+        }
+
+        Optional<EntityChange> changeOf(RC command) {
+            return Optional.ofNullable(changes.get(command));
+        }
+    }
+
+    private static class SavepointCommit<RC extends AbstractRecordCommand> {
+
+        private final CommandsExecutor commandsExecutor;
+        private final DataTable table;
+        private final IdToCommandMap<RC> idToCommandMap;
+        private final Function<List<RC>, AffectedRows> write;
+        private final ChangeContext changeContext;
+
+        SavepointCommit(CommandsExecutor commandsExecutor, DataTable table, IdToCommandMap<RC> idToCommandMap, Function<List<RC>, AffectedRows> write, ChangeContext changeContext) {
+            this.commandsExecutor = commandsExecutor;
+            this.table = table;
+            this.idToCommandMap = idToCommandMap;
+            this.write = write;
+            this.changeContext = changeContext;
+        }
+
+        void commit(Collection<RC> commands) {
+            Lists.partition(ImmutableList.copyOf(commands), commandsExecutor.getConfig().getSavepointChunkSize())
+                 .forEach(chunk -> commit(chunk, commandsExecutor.getConfig().getSavepointRetries()));
+        }
+
+        private void commit(List<RC> chunk, int retries) {
+            try {
+                changeContext.getStats().addAffectedRows(table.getName(), commandsExecutor.executeInSavepoint(() -> write.apply(chunk)));
+            } catch (DataAccessException e) {
+                Throwable cause = Throwables.getRootCause(e);
+                int errorCode = MySqlErrors.errorCodeOf(e);
+                if (errorCode == 0 || errorCode == MySqlErrors.DEADLOCK) {
+                    throw e;
+                }
+                if (errorCode == MySqlErrors.LOCK_WAIT_TIMEOUT) {
+                    if (retries > 0) {
+                        long delay = commandsExecutor.getConfig().getSavepointRetryDelay().toMillis() << (commandsExecutor.getConfig().getSavepointRetries() - retries);
+                        Uninterruptibles.sleepUninterruptibly(delay, TimeUnit.MILLISECONDS);
+                        commit(chunk, retries - 1);
+                    } else {
+                        chunk.forEach(command -> fail(command, cause));
+                    }
+                } else if (chunk.size() == 1) {
+                    fail(chunk.get(0), cause);
+                } else {
+                    commit(chunk.subList(0, chunk.size() / 2), retries);
+                    commit(chunk.subList(chunk.size() / 2, chunk.size()), retries);
+                }
+            }
+        }
+
+        private void fail(RC command, Throwable cause) {
+            idToCommandMap.changeOf(command).ifPresent(change ->
+                    changeContext.addValidationError(change, new ValidationError(Errors.WRITE_FAILED, ImmutableMap.of("cause", String.valueOf(cause.getMessage())))));
+        }
     }
 }
 
@@ -6,14 +6,12 @@ import com.kenshoo.pl.data.*;
 import com.kenshoo.pl.entity.*;
 import com.kenshoo.pl.entity.spi.OutputGenerator;
 import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.jooq.ForeignKey;
 import org.jooq.Record;
 import org.jooq.TableField;
 import org.jooq.lambda.Seq;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 import static com.kenshoo.pl.entity.ChangeOperation.CREATE;
@@ -21,20 +19,22 @@ import static com.kenshoo.pl.entity.ChangeOperation.UPDATE;
 import static com.kenshoo.pl.entity.HierarchyKeyPopulator.autoInc;
 import static com.kenshoo.pl.entity.HierarchyKeyPopulator.fromContext;
 import static com.kenshoo.pl.entity.internal.SecondaryTableRelationExtractor.relationUsingTableFieldsOfPrimary;
-import static com.kenshoo.pl.entity.internal.SecondaryTableRelationExtractor.relationUsingTableFieldsOfSecondary;
 import static java.util.stream.Collectors.toList;
 import static org.jooq.lambda.Seq.seq;
-import static org.jooq.lambda.function.Functions.not;
 
 
 public class DbCommandsOutputGenerator<E extends EntityType<E>> implements OutputGenerator<E> {
 
     private final E entityType;
+    private final TranslationPlan<E> translationPlan;
     private final CommandsExecutor commandsExecutor;
+    private final EntityField<E, ? extends Number> versionField;
 
     public DbCommandsOutputGenerator(E entityType, PLContext plContext) {
         this.entityType = entityType;
-        this.commandsExecutor = CommandsExecutor.of(plContext.dslContext());
+        this.translationPlan = new TranslationPlan<>(entityType);
+        this.commandsExecutor = CommandsExecutor.of(plContext.dslContext(), plContext.commandsExecutorConfig());
+        this.versionField = entityType.getVersionField().orElse(null);
     }
 
     @Override
@@ -46,7 +46,7 @@ public class DbCommandsOutputGenerator<E extends EntityType<E>> implements Outpu
         } else {
             final ChangesContainer primaryTableCommands =
                     generateForCreateOrUpdate(entityChanges,
-                            this::isOfPrimaryTable,
+                            true,
                             operator,
                             changeContext);
 
@@ -67,8 +67,10 @@ public class DbCommandsOutputGenerator<E extends EntityType<E>> implements Outpu
                     }
             );
 
-            generateForCreateOrUpdate(entityChanges,
-                    not(this::isOfPrimaryTable),
+            // Entities whose primary table failed to be written are left out of the secondary tables
+            final Collection<? extends EntityChange<E>> writtenChanges = seq(entityChanges).filter(change -> !changeContext.containsErrorNonRecursive(change)).toList();
+            generateForCreateOrUpdate(operator == UPDATE && versionField != null ? rejectVersionConflicts(writtenChanges, primaryTableCommands, changeContext) : writtenChanges,
+                    false,
                     operator,
                     changeContext);
         }
@@ -83,6 +85,7 @@ public class DbCommandsOutputGenerator<E extends EntityType<E>> implements Outpu
         final TableField<Record, ?> identityTableField = getFirstTableField(identityField);
 
         seq(entityChanges)
+                .filter(change -> !changeContext.containsErrorNonRecursive(change))
                 .map(change -> ImmutablePair.of(change, changesContainer.getInsert(entityType.getPrimaryTable(), change)))
                 .filter(pair -> pair.getRight().isPresent())
                 .forEach(pair -> {
@@ -92,36 +95,38 @@ public class DbCommandsOutputGenerator<E extends EntityType<E>> implements Outpu
                 });
     }
 
-    private TableField<Record, ?> getFirstTableField(final EntityField<E, Object> entityField) {
+    // The secondary tables of an entity whose version changed are left as they are
+    private Collection<? extends EntityChange<E>> rejectVersionConflicts(Collection<? extends EntityChange<E>> entityChanges, ChangesContainer primaryTableCommands, ChangeContext changeContext) {
+        return seq(entityChanges)
+                .filter(change -> {
+                    boolean conflict = primaryTableCommands.getUpdate(entityType.getPrimaryTable(), change).map(cmd -> !cmd.isUpdated()).orElse(false);
+                    if (conflict) {
+                        changeContext.addValidationError(change, new ValidationError(Errors.VERSION_CONFLICT, versionField));
+                    }
+                    return !conflict;
+                })
+                .toList();
+    }
+
+    private TableField<Record, ?> getFirstTableField(final EntityField<E, ?> entityField) {
         return entityField.getDbAdapter().getTableFields()
                 .findFirst()
                 .orElseThrow(() -> new IllegalStateException("No table fields found for an entity field"));
     }
 
-    private boolean isOfPrimaryTable(FieldChange<E, ?> f) {
-        return f.getField().getDbAdapter().getTable() == entityType.getPrimaryTable();
-    }
-
-    private <T> void translateChange(EntityChange<E> entityChange, FieldChange<E, T> change, ChangesContainer changesContainer, ChangeOperation changeOperation, ChangeContext changeContext) {
-        EntityField<E, T> entityField = change.getField();
-        if (!entityField.isVirtual()) {
-            translateChange(entityChange, change, entityField, changesContainer, changeOperation, changeContext);
-        }
-    }
-
-    private <T> void translateChange(final EntityChange<E> entityChange, final FieldChange<E, T> change, final EntityField<E, T> entityField, final ChangesContainer changesContainer, final ChangeOperation operator, final ChangeContext ctx) {
-        final DataTable fieldTable = entityField.getDbAdapter().getTable();
+    private AbstractRecordCommand recordCommandOf(final EntityChange<E> entityChange, final TranslationPlan.FieldSlots fieldSlots, final ChangesContainer changesContainer, final ChangeOperation operator, final ChangeContext ctx) {
+        final DataTable fieldTable = fieldSlots.getTable();
         final DataTable primaryTable = entityType.getPrimaryTable();
         AbstractRecordCommand recordCommand;
-        if (fieldTable == primaryTable) {
+        if (fieldSlots.isOfPrimaryTable()) {
             if (operator == CREATE) {
                 recordCommand = changesContainer.getInsert(primaryTable, entityChange, () -> newCreateRecord(entityChange));
             } else {
-                recordCommand = changesContainer.getUpdate(primaryTable, entityChange, () -> new UpdateRecordCommand(primaryTable, getDatabaseId(entityChange)));
+                recordCommand = changesContainer.getUpdate(primaryTable, entityChange, () -> new UpdateRecordCommand(primaryTable, getVersionedDatabaseId(entityChange, ctx)));
             }
         } else {
             var foreignKeyValues = foreignKeyValues(entityChange, operator, ctx, fieldTable);
-            if (operator == CREATE || rowNotYetExistsInSecondary(fieldTable, ctx.getEntity(entityChange), ctx, foreignKeyValues)) {
+            if (operator == CREATE || rowNotYetExistsInSecondary(fieldTable, ctx.getEntity(entityChange))) {
                 recordCommand = changesContainer.getInsertOnDuplicateUpdate(fieldTable, entityChange, () -> {
                     var createRecordCommand = new CreateRecordCommand(fieldTable);
                     populate(foreignKeyValues, createRecordCommand);
@@ -131,21 +136,12 @@ public class DbCommandsOutputGenerator<E extends EntityType<E>> implements Outpu
                 recordCommand = changesContainer.getUpdate(fieldTable, entityChange, () -> new UpdateRecordCommand(fieldTable, foreignKeyValues));
             }
         }
-        populateFieldChange(change, recordCommand);
-    }
-
-    private boolean rowNotYetExistsInSecondary(DataTable table, CurrentEntityState fetchedFields, ChangeContext ctx, DatabaseId fkToPrimary) {
-        var keyFieldFromSecondaryToPrimary = seq(ctx.getFetchRequests())
-                .map(FieldFetchRequest::getEntityField)
-                .filter(isTableFieldExistsIn(fkToPrimary))
-                .findFirst(field -> field.getDbAdapter().getTable() == table).get();
-        return fetchedFields.safeGet(keyFieldFromSecondaryToPrimary).isNullOrAbsent();
+        return recordCommand;
     }
 
-    private Predicate<EntityField<?, ?>> isTableFieldExistsIn(DatabaseId fkToPrimary) {
-        return field -> field.getDbAdapter().getTableFields().findFirst()
-                .map(tableField -> Seq.of(fkToPrimary.getTableFields()).contains(tableField))
-                .orElse(false);
+    // The field referencing the primary table is the one required for updates, so it was fetched along with the entity
+    private boolean rowNotYetExistsInSecondary(DataTable table, CurrentEntityState fetchedFields) {
+        return fetchedFields.safeGet(translationPlan.keyOf(table).getReferenceToPrimary()).isNullOrAbsent();
     }
 
     private CreateRecordCommand newCreateRecord(EntityChange<E> entityChange) {
@@ -154,16 +150,6 @@ public class DbCommandsOutputGenerator<E extends EntityType<E>> implements Outpu
         return cmd;
     }
 
-    private <T> void populateFieldChange(FieldChange<?, T> change, AbstractRecordCommand recordCommand) {
-        T value = change.getValue();
-        Iterator<TableField<Record, ?>> tableFields = change.getField().getDbAdapter().getTableFields().iterator();
-        Iterator<Object> values = change.getField().getDbAdapter().getDbValues(value).iterator();
-        while (tableFields.hasNext()) {
-            //noinspection unchecked
-            recordCommand.set((TableField<Record, Object>) tableFields.next(), values.next());
-        }
-    }
-
     @Override
     public Stream<? extends EntityField<?, ?>> requiredFields(Collection<? extends EntityField<E, ?>> fieldsToUpdate, ChangeOperation changeOperation) {
         if (changeOperation != UPDATE) {
@@ -173,16 +159,16 @@ public class DbCommandsOutputGenerator<E extends EntityType<E>> implements Outpu
         var secondaryTables = secondaryTables(fieldsToUpdate).collect(toList());
 
         if (secondaryTables.isEmpty()) {
-            return Stream.empty();
+            return Stream.ofNullable(versionField);
         }
 
         var secondaryTableFieldsThatCannotBeNull = secondaryTables.stream()
-                .map(table -> relationUsingTableFieldsOfSecondary(table, entityType).findFirst().get());
+                .map(table -> translationPlan.keyOf(table).getReferenceToPrimary());
 
         Stream<EntityField<E, ?>> requiredPrimaryTableIds = secondaryTables.stream()
                 .flatMap(table -> relationUsingTableFieldsOfPrimary(table, entityType));
 
-        return Stream.concat(secondaryTableFieldsThatCannotBeNull, requiredPrimaryTableIds);
+        return Seq.concat(secondaryTableFieldsThatCannotBeNull, requiredPrimaryTableIds, Stream.ofNullable(versionField));
     }
 
     private Stream<DataTable> secondaryTables(Collection<? extends EntityField<E, ?>> fieldsToUpdate) {
@@ -205,20 +191,14 @@ public class DbCommandsOutputGenerator<E extends EntityType<E>> implements Outpu
     }
 
     private DatabaseId foreignKeyValues(EntityChange<E> cmd, ChangeOperation changeOperation, ChangeContext context, DataTable childTable) {
-        ForeignKey<Record, Record> foreignKey = childTable.getForeignKey(entityType.getPrimaryTable());
-        Collection<EntityField<E, ?>> parentFields = entityType(cmd).findFields(foreignKey.getKey().getFields());
+        TranslationPlan.SecondaryTableKey<E> secondaryTableKey = translationPlan.keyOf(childTable);
+        Collection<EntityField<E, ?>> parentFields = secondaryTableKey.getParentFields();
         boolean hasIdentity = entityType.getPrimaryIdentityField().isPresent();
         Object[] values = changeOperation == CREATE && !hasIdentity ? EntityDbUtil.getFieldValues(parentFields, cmd) : EntityDbUtil.getFieldValues(parentFields, context.getEntity(cmd));
-        if (foreignKey.getFields().size() != values.length) {
-            throw new IllegalStateException("Foreign key from " + childTable.getName() + " doesn't have the same number of fields as " + foreignKey);
+        if (secondaryTableKey.getForeignKeyFields().length != values.length) {
+            throw new IllegalStateException("Foreign key from " + childTable.getName() + " doesn't have the same number of fields as " + childTable.getForeignKey(entityType.getPrimaryTable()));
         }
-        return new DatabaseId(
-                foreignKey.getFields().toArray(new TableField<?, ?>[foreignKey.getFields().size()]),
-                values);
-    }
-
-    private EntityType<E> entityType(EntityChange<E> cmd) {
-        return ((ChangeEntityCommand) cmd).getEntityType();
+        return new DatabaseId(secondaryTableKey.getForeignKeyFields(), values);
     }
 
     private void populateParentKeys(EntityChange<E> entityChange, AbstractRecordCommand recordCommand) {
@@ -228,6 +208,28 @@ public class DbCommandsOutputGenerator<E extends EntityType<E>> implements Outpu
         }
     }
 
+    // The version the change is based on is matched along with the ID, so an entity whose version changed is not updated
+    private DatabaseId getVersionedDatabaseId(EntityChange<E> entityChange, ChangeContext ctx) {
+        DatabaseId databaseId = getDatabaseId(entityChange);
+        if (versionField == null) {
+            return databaseId;
+        }
+        Object version = entityChange.isFieldChanged(versionField) ? entityChange.get(versionField) : ctx.getEntity(entityChange).get(versionField);
+        return databaseId.append(new DatabaseId(new TableField<?, ?>[]{getFirstTableField(versionField)}, new Object[]{version}));
+    }
+
+    // Every change writing anything increments the version, even if all its fields are of secondary tables
+    private void incrementVersions(Iterable<? extends EntityChange<E>> entityChanges, ChangesContainer changesContainer, ChangeContext changeContext) {
+        TranslationPlan.FieldSlots versionSlots = translationPlan.slotsOf(versionField);
+        //noinspection unchecked
+        TableField<Record, Object> versionTableField = (TableField<Record, Object>) getFirstTableField(versionField);
+        Object one = versionField.getValueClass() == Long.class ? (Object) 1L : (Object) 1;
+        seq(entityChanges)
+                .filter(change -> change.getChanges().anyMatch(fieldChange -> fieldChange.getField() != versionField) || change.getExpressionChanges().findAny().isPresent())
+                .forEach(change -> recordCommandOf(change, versionSlots, changesContainer, UPDATE, changeContext)
+                        .setExpression(versionTableField, new ColumnExpression<>(ColumnExpression.Operator.ADD, one)));
+    }
+
     private DatabaseId getDatabaseId(EntityChange<E> entityChange) {
         DatabaseId databaseId = EntityDbUtil.getDatabaseId(entityChange.getIdentifier());
         Identifier<E> keysToParent = entityChange.getKeysToParent();
@@ -245,26 +247,39 @@ public class DbCommandsOutputGenerator<E extends EntityType<E>> implements Outpu
                         entityChange,
                         () -> new DeleteRecordCommand(entityType.getPrimaryTable(),
                                 getDatabaseId(entityChange))));
-        changesContainer.commit(commandsExecutor, changeContext.getStats());
+        changesContainer.commit(commandsExecutor, changeContext);
     }
 
-    private ChangesContainer generateForCreateOrUpdate(final Iterable<? extends EntityChange<E>> entityChanges,
-                                                       final Predicate<FieldChange<E, ?>> filter,
+    // The slots of every changed field are looked up once, and only the fields of the tables of this pass are translated
+    private ChangesContainer generateForCreateOrUpdate(final Collection<? extends EntityChange<E>> entityChanges,
+                                                       final boolean ofPrimaryTable,
                                                        final ChangeOperation operator,
                                                        final ChangeContext changeContext) {
 
-        final ChangesContainer tableCommands = new ChangesContainer(entityType.onDuplicateKey());
+        final ChangesContainer tableCommands = new ChangesContainer(operator == CREATE && changeContext.isBlindUpsert() ? CreateRecordCommand.OnDuplicateKey.UPDATE : entityType.onDuplicateKey());
 
-        seq(entityChanges).forEach(cmd ->
-                cmd.getChanges()
-                        .filter(filter)
-                        .forEach(fieldChange -> translateChange(cmd,
-                                fieldChange,
-                                tableCommands,
-                                operator,
-                                changeContext)));
+        boolean versioned = operator == UPDATE && versionField != null;
+        for (EntityChange<E> cmd : entityChanges) {
+            for (Iterator<FieldChange<E, ?>> changes = cmd.getChanges().iterator(); changes.hasNext(); ) {
+                FieldChange<E, ?> fieldChange = changes.next();
+                TranslationPlan.FieldSlots fieldSlots = translationPlan.slotsOf(fieldChange.getField());
+                if (fieldSlots.isOfPrimaryTable() == ofPrimaryTable && !fieldSlots.isVirtual() && !(versioned && fieldChange.getField() == versionField)) {
+                    fieldSlots.populate(fieldChange.getValue(), recordCommandOf(cmd, fieldSlots, tableCommands, operator, changeContext));
+                }
+            }
+            for (Iterator<FieldExpressionChange<E, ?>> expressionChanges = cmd.getExpressionChanges().iterator(); expressionChanges.hasNext(); ) {
+                FieldExpressionChange<E, ?> expressionChange = expressionChanges.next();
+                TranslationPlan.FieldSlots fieldSlots = translationPlan.slotsOf(expressionChange.getField());
+                if (fieldSlots.isOfPrimaryTable() == ofPrimaryTable) {
+                    fieldSlots.populate(expressionChange.getExpression(), recordCommandOf(cmd, fieldSlots, tableCommands, operator, changeContext));
+                }
+            }
+        }
+        if (versioned && translationPlan.slotsOf(versionField).isOfPrimaryTable() == ofPrimaryTable) {
+            incrementVersions(entityChanges, tableCommands, changeContext);
+        }
 
-        tableCommands.commit(commandsExecutor, changeContext.getStats());
+        tableCommands.commit(commandsExecutor, changeContext);
         return tableCommands;
     }
 }
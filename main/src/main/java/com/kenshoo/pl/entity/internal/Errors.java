@@ -9,5 +9,8 @@ public class Errors {
     public static final String FIELD_IS_REQUIRED = PREFIX + "field_is_required";
     public static final String FIELD_IS_IMMUTABLE = PREFIX + "field_is_immutable";
     public static final String PARENT_ENTITY_ID_NOT_FOUND = PREFIX + "parent_entity_id_not_found";
+    public static final String VERSION_CONFLICT = PREFIX + "version_conflict";
+    public static final String WRITE_FAILED = PREFIX + "write_failed";
+    public static final String ENTITY_OUT_OF_SCOPE = PREFIX + "entity_out_of_scope";
 
 }
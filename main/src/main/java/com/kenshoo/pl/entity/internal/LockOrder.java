@@ -0,0 +1,107 @@
+package com.kenshoo.pl.entity.internal;
+
+import com.google.common.primitives.UnsignedBytes;
+import com.kenshoo.jooq.DataTable;
+import com.kenshoo.pl.data.AbstractRecordCommand;
+import com.kenshoo.pl.data.CreateRecordCommand;
+import com.kenshoo.pl.data.DeleteRecordCommand;
+import com.kenshoo.pl.data.UpdateRecordCommand;
+import org.jooq.ForeignKey;
+import org.jooq.Record;
+import org.jooq.Table;
+import org.jooq.TableField;
+import org.jooq.UniqueKey;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static java.util.Comparator.comparing;
+
+/**
+ * The order in which tables and rows are written when {@link com.kenshoo.pl.data.CommandsExecutorConfig#isLockOrderedWrites()}
+ * is on. Referenced tables come before the tables referencing them (ties broken by name), except for deletes whose
+ * tables go the other way around so that no row is deleted while still referenced, and the rows of a table are
+ * written by ascending key. As long as all the writers follow the same order, they acquire row locks in the same order
+ * and cannot deadlock on each other.
+ */
+class LockOrder {
+
+    private static final Comparator<Object[]> KEYS_ORDER = LockOrder::compareKeys;
+
+    static final Comparator<DataTable> TABLES_ORDER = Comparator.<DataTable>comparingInt(LockOrder::referenceDepth).thenComparing(DataTable::getName);
+
+    static final Comparator<DataTable> DELETED_TABLES_ORDER = Comparator.<DataTable>comparingInt(LockOrder::referenceDepth).reversed().thenComparing(DataTable::getName);
+
+    private LockOrder() {
+    }
+
+    static <C extends DeleteRecordCommand> List<C> deletes(Collection<C> commands) {
+        return sorted(commands, command -> command.getId().getValues());
+    }
+
+    static <C extends UpdateRecordCommand> List<C> updates(Collection<C> commands) {
+        return sorted(commands, command -> command.getId().getValues());
+    }
+
+    // Records missing their key, e.g. waiting for an auto-increment value, are kept last in their original order
+    static <C extends CreateRecordCommand> List<C> inserts(DataTable table, Collection<C> commands) {
+        UniqueKey<Record> primaryKey = table.getPrimaryKey();
+        if (primaryKey == null) {
+            return new ArrayList<>(commands);
+        }
+        List<TableField<Record, ?>> keyFields = primaryKey.getFields();
+        return sorted(commands, command -> keyFields.stream().map(command::get).toArray());
+    }
+
+    private static <C extends AbstractRecordCommand> List<C> sorted(Collection<C> commands, Function<C, Object[]> key) {
+        List<C> sorted = new ArrayList<>(commands);
+        sorted.sort(comparing(key, KEYS_ORDER));
+        return sorted;
+    }
+
+    private static int referenceDepth(Table<?> table) {
+        return referenceDepth(table, new HashSet<>());
+    }
+
+    private static int referenceDepth(Table<?> table, Set<String> visited) {
+        if (!visited.add(table.getName())) {
+            return 0;
+        }
+        int depth = 0;
+        for (ForeignKey<?, ?> reference : table.getReferences()) {
+            depth = Math.max(depth, 1 + referenceDepth(reference.getKey().getTable(), visited));
+        }
+        visited.remove(table.getName());
+        return depth;
+    }
+
+    private static int compareKeys(Object[] values1, Object[] values2) {
+        for (int i = 0; i < Math.min(values1.length, values2.length); i++) {
+            int comparison = compareValues(values1[i], values2[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(values1.length, values2.length);
+    }
+
+    private static int compareValues(Object value1, Object value2) {
+        if (value1 == value2) {
+            return 0;
+        }
+        if (value1 == null) {
+            return 1;
+        }
+        if (value2 == null) {
+            return -1;
+        }
+        if (value1 instanceof byte[] && value2 instanceof byte[]) {
+            return UnsignedBytes.lexicographicalComparator().compare((byte[]) value1, (byte[]) value2);
+        }
+        if (value1 instanceof Comparable && value1.getClass() == value2.getClass()) {
+            //noinspection unchecked
+            return ((Comparable<Object>) value1).compareTo(value2);
+        }
+        return value1.toString().compareTo(value2.toString());
+    }
+}
@@ -36,6 +36,10 @@ public class SimpleEntityFieldDbAdapter<T, DBT> implements EntityFieldDbAdapter<
         return Stream.of(valueConverter.convertTo(value));
     }
 
+    ValueConverter<T, DBT> getValueConverter() {
+        return valueConverter;
+    }
+
     @Override
     public T getFromRecord(Iterator<Object> valuesIterator) {
         //noinspection unchecked
@@ -0,0 +1,127 @@
+package com.kenshoo.pl.entity.internal;
+
+import com.kenshoo.jooq.DataTable;
+import com.kenshoo.pl.data.AbstractRecordCommand;
+import com.kenshoo.pl.data.ColumnExpression;
+import com.kenshoo.pl.entity.EntityField;
+import com.kenshoo.pl.entity.EntityFieldDbAdapter;
+import com.kenshoo.pl.entity.EntityType;
+import com.kenshoo.pl.entity.FieldExpression;
+import com.kenshoo.pl.entity.ValueConverter;
+import org.jooq.ForeignKey;
+import org.jooq.Record;
+import org.jooq.TableField;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.kenshoo.pl.entity.internal.SecondaryTableRelationExtractor.relationUsingTableFieldsOfSecondary;
+
+/**
+ * How {@link DbCommandsOutputGenerator} translates the changes of an entity type into record commands. The table
+ * fields and value converter of every entity field, and the foreign key of every secondary table along with the field
+ * referencing the primary table by it, depend on the entity type only, so they are worked out on first use and kept for all the following changes.
+ */
+class TranslationPlan<E extends EntityType<E>> {
+
+    private final E entityType;
+    private final Map<EntityField<E, ?>, FieldSlots> fieldSlots = new ConcurrentHashMap<>();
+    private final Map<DataTable, SecondaryTableKey<E>> secondaryTableKeys = new ConcurrentHashMap<>();
+
+    TranslationPlan(E entityType) {
+        this.entityType = entityType;
+    }
+
+    FieldSlots slotsOf(EntityField<E, ?> entityField) {
+        return fieldSlots.computeIfAbsent(entityField, field -> new FieldSlots(field, entityType.getPrimaryTable()));
+    }
+
+    SecondaryTableKey<E> keyOf(DataTable secondaryTable) {
+        return secondaryTableKeys.computeIfAbsent(secondaryTable, table -> new SecondaryTableKey<>(entityType, table));
+    }
+
+    static class FieldSlots {
+
+        private final boolean virtual;
+        private final DataTable table;
+        private final boolean ofPrimaryTable;
+        private final TableField<Record, Object>[] tableFields;
+        private final EntityFieldDbAdapter<Object> dbAdapter;
+        private final ValueConverter<Object, Object> valueConverter;
+
+        private FieldSlots(EntityField<?, ?> entityField, DataTable primaryTable) {
+            //noinspection unchecked
+            this.dbAdapter = (EntityFieldDbAdapter<Object>) entityField.getDbAdapter();
+            this.virtual = entityField.isVirtual();
+            this.table = dbAdapter.getTable();
+            this.ofPrimaryTable = table == primaryTable;
+            //noinspection unchecked
+            this.tableFields = virtual ? new TableField[0] : dbAdapter.getTableFields().toArray(TableField[]::new);
+            //noinspection unchecked
+            this.valueConverter = dbAdapter instanceof SimpleEntityFieldDbAdapter ?
+                    ((SimpleEntityFieldDbAdapter<Object, Object>) dbAdapter).getValueConverter() : null;
+        }
+
+        boolean isVirtual() {
+            return virtual;
+        }
+
+        DataTable getTable() {
+            return table;
+        }
+
+        boolean isOfPrimaryTable() {
+            return ofPrimaryTable;
+        }
+
+        // A simple field has a single table field and a converter that is called directly, other adapters are asked for their values
+        void populate(Object value, AbstractRecordCommand recordCommand) {
+            if (valueConverter != null) {
+                recordCommand.set(tableFields[0], valueConverter.convertTo(value));
+                return;
+            }
+            Iterator<Object> values = dbAdapter.getDbValues(value).iterator();
+            for (TableField<Record, Object> tableField : tableFields) {
+                recordCommand.set(tableField, values.next());
+            }
+        }
+
+        // The argument is converted as a value would be, the field being of a single column
+        void populate(FieldExpression<?> expression, AbstractRecordCommand recordCommand) {
+            Object argument = valueConverter != null ?
+                    valueConverter.convertTo(expression.getArgument()) :
+                    dbAdapter.getDbValues(expression.getArgument()).findFirst().orElse(null);
+            recordCommand.setExpression(tableFields[0], new ColumnExpression<>(expression.getOperator(), argument));
+        }
+    }
+
+    static class SecondaryTableKey<E extends EntityType<E>> {
+
+        private final TableField<?, ?>[] foreignKeyFields;
+        private final Collection<EntityField<E, ?>> parentFields;
+        private final EntityField<E, ?> referenceToPrimary;
+
+        private SecondaryTableKey(E entityType, DataTable secondaryTable) {
+            ForeignKey<Record, Record> foreignKey = secondaryTable.getForeignKey(entityType.getPrimaryTable());
+            this.foreignKeyFields = foreignKey.getFields().toArray(new TableField<?, ?>[0]);
+            this.parentFields = entityType.findFields(foreignKey.getKey().getFields());
+            this.referenceToPrimary = relationUsingTableFieldsOfSecondary(secondaryTable, entityType).findFirst().get();
+        }
+
+        TableField<?, ?>[] getForeignKeyFields() {
+            return foreignKeyFields;
+        }
+
+        Collection<EntityField<E, ?>> getParentFields() {
+            return parentFields;
+        }
+
+        // The same field is both required for updates and looked up in the entities fetched for them, the field made
+        // for a foreign key column the entity type has no field of being matched by identity
+        EntityField<E, ?> getReferenceToPrimary() {
+            return referenceToPrimary;
+        }
+    }
+}
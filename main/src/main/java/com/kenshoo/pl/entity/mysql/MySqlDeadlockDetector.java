@@ -12,8 +12,15 @@ public class MySqlDeadlockDetector implements DeadlockDetector {
 
     private String retryPatterns = "lock wait timeout exceeded;deadlock";
 
+    /**
+     * A deadlock or lock wait timeout is recognized by its MySQL error code, falling back to the message of the root
+     * cause for drivers and wrappers that don't carry one.
+     */
     @Override
     public boolean isDeadlock(Throwable e) {
+        if (MySqlErrors.isLockConflict(e)) {
+            return true;
+        }
         Throwable rootCause = Throwables.getRootCause(e);
         return rootCause instanceof SQLException
                 && rootCause.getMessage() != null
@@ -0,0 +1,36 @@
+package com.kenshoo.pl.entity.mysql;
+
+import com.google.common.base.Throwables;
+
+import java.sql.SQLException;
+
+/**
+ * The MySQL error codes the persistence layer reacts to.
+ */
+public final class MySqlErrors {
+
+    public static final int LOCK_WAIT_TIMEOUT = 1205;
+    public static final int DEADLOCK = 1213;
+
+    private MySqlErrors() {
+    }
+
+    /**
+     * @return the vendor error code of the innermost {@link SQLException} in the causal chain of the given throwable
+     * which has one, or <code>0</code> if there is none
+     */
+    public static int errorCodeOf(Throwable e) {
+        int errorCode = 0;
+        for (Throwable cause : Throwables.getCausalChain(e)) {
+            if (cause instanceof SQLException && ((SQLException) cause).getErrorCode() != 0) {
+                errorCode = ((SQLException) cause).getErrorCode();
+            }
+        }
+        return errorCode;
+    }
+
+    public static boolean isLockConflict(Throwable e) {
+        int errorCode = errorCodeOf(e);
+        return errorCode == DEADLOCK || errorCode == LOCK_WAIT_TIMEOUT;
+    }
+}
@@ -0,0 +1,30 @@
+package com.kenshoo.pl.entity.spi;
+
+import com.kenshoo.pl.entity.EntityField;
+import com.kenshoo.pl.entity.EntityType;
+
+/**
+ * Decides on the value of a field set by two commands of the same entity that are coalesced into one. For example,
+ * deltas sent by several commands can be summed up by implementing this interface. It is called only for fields set
+ * to plain values by both commands, a field set by one of them only keeps its value, and a plain value set by the
+ * later command replaces an earlier expression or supplier. Expressions are never passed to it: a later expression is
+ * applied to an earlier value, or combined with an earlier expression of the same operator.
+ *
+ * @param <E> entity type of the commands
+ * @see com.kenshoo.pl.entity.ChangeFlowConfig.Builder#withCommandsCoalescing(FieldValueMerger)
+ */
+@FunctionalInterface
+public interface FieldValueMerger<E extends EntityType<E>> {
+
+    /**
+     * @param field the field set by both commands
+     * @param earlierValue the value set by the command that came first
+     * @param laterValue the value set by the command that came later
+     * @return the value of the field in the coalesced command
+     */
+    Object merge(EntityField<E, ?> field, Object earlierValue, Object laterValue);
+
+    static <E extends EntityType<E>> FieldValueMerger<E> lastWriteWins() {
+        return (field, earlierValue, laterValue) -> laterValue;
+    }
+}
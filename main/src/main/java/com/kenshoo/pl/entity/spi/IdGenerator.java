@@ -0,0 +1,31 @@
+package com.kenshoo.pl.entity.spi;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Generates the ids of new entities on the client side. As opposed to ids auto-generated by the database, these ids
+ * are known before anything is written, so the keys of the children of a new entity are populated while the commands
+ * are prepared and the inserts of all levels don't depend on each other's generated keys.
+ *
+ * @param <T> type of the generated ids
+ * @see com.kenshoo.pl.entity.spi.helpers.ClientSideIdEnricher
+ */
+public interface IdGenerator<T> {
+
+    /**
+     * @param count the number of ids to generate
+     * @return <code>count</code> distinct ids that were never returned before
+     */
+    List<T> generate(int count);
+
+    /**
+     * @return a generator of the ids of this generator converted by <code>mapper</code>, e.g. to
+     * <code>Integer</code> for entities with an <code>Integer</code> id
+     */
+    default <R> IdGenerator<R> map(Function<? super T, ? extends R> mapper) {
+        return count -> generate(count).stream().map(mapper).collect(toList());
+    }
+}
@@ -1,11 +1,21 @@
 package com.kenshoo.pl.entity.spi;
 
 import com.google.common.base.Throwables;
+import com.kenshoo.jooq.DataTable;
+import com.kenshoo.pl.entity.PersistentLayerStats;
 
 public interface PersistenceLayerRetryer {
 
     void run(ThrowingAction action);
 
+    /**
+     * Runs the transaction of a flow writing to the given primary table. Retryers adapting to the contention on the
+     * table, or counting their conflicts and retries in the stats of the flow, override this one.
+     */
+    default void run(DataTable primaryTable, PersistentLayerStats stats, ThrowingAction action) {
+        run(action);
+    }
+
     PersistenceLayerRetryer JUST_RUN_WITHOUT_CHECKING_DEADLOCKS = action -> {
         try {
             action.run();
@@ -0,0 +1,71 @@
+package com.kenshoo.pl.entity.spi.helpers;
+
+import com.kenshoo.pl.entity.ChangeContext;
+import com.kenshoo.pl.entity.ChangeEntityCommand;
+import com.kenshoo.pl.entity.ChangeOperation;
+import com.kenshoo.pl.entity.EntityChange;
+import com.kenshoo.pl.entity.EntityField;
+import com.kenshoo.pl.entity.EntityType;
+import com.kenshoo.pl.entity.SupportedChangeOperation;
+import com.kenshoo.pl.entity.spi.IdGenerator;
+import com.kenshoo.pl.entity.spi.PostFetchCommandEnricher;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Sets ids from an {@link IdGenerator} to the created entities that were not given an id by the user. The ids of a
+ * bulk are generated at once, and since they are set before the output phase, the persistence layer propagates them
+ * to the children like any other key set by the user instead of waiting for keys generated by the database.
+ * <p>
+ * The column of the id field must not be auto-generated by the database.
+ *
+ * @param <E> entity type
+ * @param <T> type of the id
+ * @see HiLoIdGenerator
+ * @see TimeOrderedUuidGenerator
+ */
+public class ClientSideIdEnricher<E extends EntityType<E>, T> implements PostFetchCommandEnricher<E> {
+
+    private final EntityField<E, T> idField;
+    private final IdGenerator<T> idGenerator;
+
+    public ClientSideIdEnricher(EntityField<E, T> idField, IdGenerator<T> idGenerator) {
+        if (idField.getDbAdapter().isIdentityField()) {
+            throw new IllegalArgumentException("Field " + idField + " is auto-generated by the database and can't be set by " + idGenerator);
+        }
+        this.idField = idField;
+        this.idGenerator = idGenerator;
+    }
+
+    @Override
+    public void enrich(Collection<? extends ChangeEntityCommand<E>> commands, ChangeOperation changeOperation, ChangeContext changeContext) {
+        List<? extends ChangeEntityCommand<E>> commandsWithoutId = commands.stream()
+                .filter(command -> !command.isFieldChanged(idField))
+                .collect(toList());
+        if (commandsWithoutId.isEmpty()) {
+            return;
+        }
+        Iterator<T> ids = idGenerator.generate(commandsWithoutId.size()).iterator();
+        commandsWithoutId.forEach(command -> command.set(idField, ids.next()));
+    }
+
+    @Override
+    public Stream<EntityField<E, ?>> fieldsToEnrich() {
+        return Stream.of(idField);
+    }
+
+    @Override
+    public boolean shouldRun(Collection<? extends EntityChange<E>> entityChanges) {
+        return CommandsFieldMatcher.isAnyFieldMissingInAnyCommand(entityChanges, idField);
+    }
+
+    @Override
+    public SupportedChangeOperation getSupportedChangeOperation() {
+        return SupportedChangeOperation.CREATE;
+    }
+}
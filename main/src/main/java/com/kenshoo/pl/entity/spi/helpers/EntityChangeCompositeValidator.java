@@ -98,6 +98,13 @@ public class EntityChangeCompositeValidator<E extends EntityType<E>> implements
                 .flatMap(ChangeValidatorAdapter::fieldsToFetch);
     }
 
+    /**
+     * @return <code>true</code> if any of the registered validators validates changes of the given operation
+     */
+    public boolean validates(ChangeOperation changeOperation) {
+        return triggeredChangeValidators.stream().anyMatch(validator -> validator.getSupportedChangeOperation().supports(changeOperation));
+    }
+
     public void register(ChangeValidatorAdapter<E> validatorAdapter) {
         triggeredChangeValidators.add(validatorAdapter);
     }
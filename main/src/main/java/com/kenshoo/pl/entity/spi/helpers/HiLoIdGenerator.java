@@ -0,0 +1,83 @@
+package com.kenshoo.pl.entity.spi.helpers;
+
+import com.kenshoo.pl.entity.spi.IdGenerator;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Generates <code>Long</code> ids from blocks reserved in an {@link IdSequenceTable}. A block is reserved in a short
+ * transaction of its own that locks only the row of the sequence, and its ids are then handed out from memory, so
+ * the database is accessed once per block rather than once per id. Ids of a block that was not used up when the
+ * generator is discarded are lost, leaving gaps in the sequence.
+ * <p>
+ * The transactions are started on the given <code>DSLContext</code>, so it should not share a connection with the
+ * transactions of the flows using the generator, otherwise the sequence row stays locked until they end.
+ */
+public class HiLoIdGenerator implements IdGenerator<Long> {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+    private final DSLContext dslContext;
+    private final IdSequenceTable table;
+    private final String sequenceName;
+    private final int blockSize;
+
+    private long nextId;
+    private long blockEnd;
+
+    public HiLoIdGenerator(DSLContext dslContext, String sequenceName) {
+        this(dslContext, IdSequenceTable.INSTANCE, sequenceName, DEFAULT_BLOCK_SIZE);
+    }
+
+    public HiLoIdGenerator(DSLContext dslContext, IdSequenceTable table, String sequenceName, int blockSize) {
+        checkArgument(blockSize > 0, "blockSize must be positive");
+        this.dslContext = dslContext;
+        this.table = table;
+        this.sequenceName = sequenceName;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public synchronized List<Long> generate(int count) {
+        List<Long> ids = new ArrayList<>(count);
+        while (ids.size() < count) {
+            if (nextId == blockEnd) {
+                reserveBlock(Math.max(blockSize, count - ids.size()));
+            }
+            ids.add(nextId++);
+        }
+        return ids;
+    }
+
+    private void reserveBlock(int size) {
+        nextId = dslContext.transactionResult(configuration -> {
+            DSLContext transaction = DSL.using(configuration);
+            transaction.insertInto(table)
+                    .set(table.sequence_name, sequenceName)
+                    .set(table.next_id, 1L)
+                    .onDuplicateKeyIgnore()
+                    .execute();
+            long blockStart = transaction.select(table.next_id)
+                    .from(table)
+                    .where(table.sequence_name.eq(sequenceName))
+                    .forUpdate()
+                    .fetchOne(table.next_id);
+            transaction.update(table)
+                    .set(table.next_id, blockStart + size)
+                    .where(table.sequence_name.eq(sequenceName))
+                    .execute();
+            return blockStart;
+        });
+        blockEnd = nextId + size;
+    }
+
+    @Override
+    public String toString() {
+        return "HiLoIdGenerator{" + table.getName() + "." + sequenceName + "}";
+    }
+}
@@ -0,0 +1,31 @@
+package com.kenshoo.pl.entity.spi.helpers;
+
+import com.kenshoo.jooq.AbstractDataTable;
+import org.jooq.Record;
+import org.jooq.TableField;
+import org.jooq.impl.SQLDataType;
+
+/**
+ * The table {@link HiLoIdGenerator} reserves blocks of ids from. Each row holds the next id that was not reserved
+ * yet of one sequence.
+ */
+public class IdSequenceTable extends AbstractDataTable<IdSequenceTable> {
+
+    public static final IdSequenceTable INSTANCE = new IdSequenceTable("pl_id_sequences");
+
+    final TableField<Record, String> sequence_name = createPKField("sequence_name", SQLDataType.VARCHAR(64));
+    final TableField<Record, Long> next_id = createField("next_id", SQLDataType.BIGINT.nullable(false));
+
+    public IdSequenceTable(String name) {
+        super(name);
+    }
+
+    public IdSequenceTable(IdSequenceTable aliased, String alias) {
+        super(aliased, alias);
+    }
+
+    @Override
+    public IdSequenceTable as(String alias) {
+        return new IdSequenceTable(this, alias);
+    }
+}
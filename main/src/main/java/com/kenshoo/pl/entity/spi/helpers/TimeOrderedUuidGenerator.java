@@ -0,0 +1,47 @@
+package com.kenshoo.pl.entity.spi.helpers;
+
+import com.kenshoo.pl.entity.spi.IdGenerator;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates version 7 UUIDs: a 48 bit millisecond timestamp followed by random bits. Since the timestamp comes first,
+ * ids generated later sort after earlier ones, so when stored as <code>BINARY(16)</code> (see
+ * {@link com.kenshoo.pl.entity.converters.UuidBinaryValueConverter}) new rows are appended at the end of the primary
+ * key index rather than at random pages of it. No database access is needed to generate the ids.
+ */
+public class TimeOrderedUuidGenerator implements IdGenerator<UUID> {
+
+    public static final TimeOrderedUuidGenerator INSTANCE = new TimeOrderedUuidGenerator(Clock.systemUTC());
+
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+
+    private final Clock clock;
+
+    public TimeOrderedUuidGenerator(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public List<UUID> generate(int count) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long timestamp = clock.millis() << 16;
+        List<UUID> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long mostSigBits = timestamp | VERSION | (random.nextInt() & 0x0fffL);
+            long leastSigBits = VARIANT | (random.nextLong() & 0x3fffffffffffffffL);
+            ids.add(new UUID(mostSigBits, leastSigBits));
+        }
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return "TimeOrderedUuidGenerator";
+    }
+}
@@ -0,0 +1,102 @@
+package com.kenshoo.pl.data;
+
+import com.google.common.collect.ImmutableList;
+import com.kenshoo.pl.entity.TestEntityTable;
+import org.jooq.Field;
+import org.jooq.impl.DSL;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class AbstractRecordCommandTest {
+
+    private static final TestEntityTable TABLE = TestEntityTable.TABLE;
+
+    private static final List<Field<?>> FIELDS = ImmutableList.of(TABLE.id, TABLE.field_1, TABLE.field_3);
+
+    @Test
+    public void values_are_copied_in_the_order_of_the_fields_whatever_the_order_they_were_set() {
+        CreateRecordCommand command = new CreateRecordCommand(TABLE);
+        command.set(TABLE.field_3, 3);
+        command.set(TABLE.field_1, "one");
+        command.set(TABLE.id, 7);
+        Object[] values = new Object[3];
+
+        command.copyValues(FIELDS, values, 0);
+
+        assertThat(values, arrayContaining(7, "one", 3));
+    }
+
+    @Test
+    public void values_are_copied_at_the_given_offset() {
+        Object[] values = new Object[6];
+
+        int next = command(1, "a", 10).copyValues(FIELDS, values, 0);
+        command(2, "b", 20).copyValues(FIELDS, values, next);
+
+        assertThat(values, arrayContaining(1, "a", 10, 2, "b", 20));
+    }
+
+    @Test
+    public void expressions_are_copied_as_their_argument() {
+        CreateRecordCommand command = command(1, "a", null);
+        command.setExpression(TABLE.field_3, new ColumnExpression<>(ColumnExpression.Operator.ADD, 5));
+        Object[] values = new Object[3];
+
+        command.copyValues(FIELDS, values, 0);
+
+        assertThat(values, arrayContaining(1, "a", 5));
+    }
+
+    @Test
+    public void setting_a_field_again_replaces_its_value() {
+        CreateRecordCommand command = command(1, "a", 10);
+
+        command.set(TABLE.field_1, "b");
+
+        assertThat(command.get(TABLE.field_1), is("b"));
+        assertThat(command.size(), is(3));
+    }
+
+    @Test
+    public void fields_which_are_not_columns_of_the_table_are_kept() {
+        Field<String> other = DSL.field(DSL.name("other"), String.class);
+        CreateRecordCommand command = command(1, "a", 10);
+
+        command.set(other, "x");
+
+        assertThat(command.get(other), is("x"));
+        assertThat(command.get(TABLE.field_2), nullValue());
+    }
+
+    @Test
+    public void values_of_a_record_with_many_fields_are_found_by_their_field() {
+        CreateRecordCommand command = new CreateRecordCommand(TABLE);
+        List<Field<Integer>> fields = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            fields.add(DSL.field(DSL.name("field" + i), Integer.class));
+            command.set(fields.get(i), i);
+        }
+
+        command.set(fields.get(3), 100);
+
+        assertThat(command.get(fields.get(3)), is(100));
+        assertThat(command.get(fields.get(39)), is(39));
+        assertThat(command.get(DSL.field(DSL.name("field20"), Integer.class)), is(20));
+        assertThat(command.size(), is(40));
+    }
+
+    private CreateRecordCommand command(Integer id, String field1, Integer field3) {
+        CreateRecordCommand command = new CreateRecordCommand(TABLE);
+        command.set(TABLE.id, id);
+        command.set(TABLE.field_1, field1);
+        command.set(TABLE.field_3, field3);
+        return command;
+    }
+}
@@ -0,0 +1,104 @@
+package com.kenshoo.pl.data;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BatchChunkerTest {
+
+    private final List<List<String>> executedChunks = new ArrayList<>();
+
+    @Test
+    public void all_rows_are_executed_in_one_chunk_by_default() {
+        BatchChunker chunker = new BatchChunker(CommandsExecutorConfig.DEFAULT);
+
+        AffectedRows affectedRows = chunker.execute(rows(5), this::bytesOf, this::execute);
+
+        assertThat(affectedRows.getChunks(), is(1));
+        assertThat(affectedRows.getUpdated(), is(5));
+        assertThat(executedChunks.size(), is(1));
+    }
+
+    @Test
+    public void rows_are_split_by_max_rows_per_batch() {
+        BatchChunker chunker = new BatchChunker(new CommandsExecutorConfig.Builder().withMaxRowsPerBatch(2).build());
+
+        AffectedRows affectedRows = chunker.execute(rows(5), this::bytesOf, this::execute);
+
+        assertThat(affectedRows.getChunks(), is(3));
+        assertThat(affectedRows.getUpdated(), is(5));
+        assertThat(chunkSizes(), contains(2, 2, 1));
+    }
+
+    @Test
+    public void rows_are_split_by_max_bytes_per_batch() {
+        BatchChunker chunker = new BatchChunker(new CommandsExecutorConfig.Builder().withMaxBytesPerBatch(10).build());
+
+        chunker.execute(ImmutableList.of("aaaa", "bbbb", "cccc", "dddddddddddd", "e"), this::bytesOf, this::execute);
+
+        assertThat(chunkSizes(), contains(2, 1, 1, 1));
+    }
+
+    @Test
+    public void chunk_shrinks_when_slower_than_target_latency() {
+        BatchChunker chunker = new BatchChunker(new CommandsExecutorConfig.Builder()
+                .withMaxRowsPerBatch(8)
+                .withTargetBatchLatency(Duration.ofMillis(10))
+                .build());
+
+        chunker.execute(rows(15), this::bytesOf, this::slowlyExecute);
+
+        assertThat(chunkSizes(), contains(8, 4, 2, 1));
+        assertThat(chunker.getRowsPerBatch(), is(1));
+    }
+
+    @Test
+    public void chunk_grows_back_up_to_max_when_faster_than_target_latency() {
+        BatchChunker chunker = new BatchChunker(new CommandsExecutorConfig.Builder()
+                .withMaxRowsPerBatch(8)
+                .withTargetBatchLatency(Duration.ofMillis(10))
+                .build());
+        chunker.execute(rows(15), this::bytesOf, this::slowlyExecute);
+        executedChunks.clear();
+
+        chunker.execute(rows(20), this::bytesOf, this::execute);
+
+        assertThat(chunkSizes(), contains(1, 2, 3, 4, 6, 4));
+        assertThat(chunker.getRowsPerBatch(), is(8));
+    }
+
+    private List<String> rows(int count) {
+        return IntStream.range(0, count).mapToObj(String::valueOf).collect(Collectors.toList());
+    }
+
+    private long bytesOf(String row) {
+        return BatchChunker.estimatedBytes(ImmutableList.<Object>of(row).stream());
+    }
+
+    private AffectedRows execute(List<String> chunk) {
+        executedChunks.add(chunk);
+        return AffectedRows.updated(chunk.size());
+    }
+
+    private AffectedRows slowlyExecute(List<String> chunk) {
+        try {
+            Thread.sleep(30);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return execute(chunk);
+    }
+
+    private List<Integer> chunkSizes() {
+        return executedChunks.stream().map(List::size).collect(Collectors.toList());
+    }
+}
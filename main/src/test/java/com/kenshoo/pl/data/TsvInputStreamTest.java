@@ -0,0 +1,51 @@
+package com.kenshoo.pl.data;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TsvInputStreamTest {
+
+    @Test
+    public void rows_are_separated_by_new_lines_and_values_by_tabs() throws IOException {
+        InputStream stream = new TsvInputStream(ImmutableList.of(new Object[]{1, "a"}, new Object[]{2, "b"}).iterator());
+
+        assertThat(read(stream), is("1\ta\n2\tb\n"));
+    }
+
+    @Test
+    public void special_characters_are_escaped() throws IOException {
+        InputStream stream = new TsvInputStream(Collections.singletonList(new Object[]{"tab\tnew line\nback\\slash\rnul\0"}).iterator());
+
+        assertThat(read(stream), is("tab\\tnew line\\nback\\\\slash\\rnul\\0\n"));
+    }
+
+    @Test
+    public void values_are_rendered_as_mysql_literals() throws IOException {
+        InputStream stream = new TsvInputStream(Collections.singletonList(new Object[]{
+                null, true, false, new BigDecimal("1E+3"), LocalDateTime.of(2020, 1, 2, 3, 4), "\u05e9\u05dc\u05d5\u05dd"}).iterator());
+
+        assertThat(read(stream), is("\\N\t1\t0\t1000\t2020-01-02 03:04:00.000000\t\u05e9\u05dc\u05d5\u05dd\n"));
+    }
+
+    @Test
+    public void no_rows_make_an_empty_stream() throws IOException {
+        InputStream stream = new TsvInputStream(Collections.emptyIterator());
+
+        assertThat(stream.read(), is(-1));
+    }
+
+    private String read(InputStream stream) throws IOException {
+        return new String(ByteStreams.toByteArray(stream), StandardCharsets.UTF_8);
+    }
+}
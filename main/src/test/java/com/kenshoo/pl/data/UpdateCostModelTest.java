@@ -0,0 +1,40 @@
+package com.kenshoo.pl.data;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UpdateCostModelTest {
+
+    @Test
+    public void wider_updates_get_fewer_rows_per_statement() {
+        assertThat(UpdateCostModel.rowsPerStatement(1, 1000), greaterThan(UpdateCostModel.rowsPerStatement(10, 1000)));
+    }
+
+    @Test
+    public void rows_per_statement_are_bounded_by_the_max() {
+        assertThat(UpdateCostModel.rowsPerStatement(1, 5), is(5));
+    }
+
+    @Test
+    public void rows_per_statement_are_at_least_one() {
+        assertThat(UpdateCostModel.rowsPerStatement(100000, 1000), is(1));
+    }
+
+    @Test
+    public void a_single_row_is_never_updated_by_case() {
+        assertThat(UpdateCostModel.isCaseCheaper(1, 1, UpdateCostModel.rowsPerStatement(1, 1000)), is(false));
+    }
+
+    @Test
+    public void hundreds_of_rows_are_cheaper_by_case() {
+        assertThat(UpdateCostModel.isCaseCheaper(500, 3, UpdateCostModel.rowsPerStatement(3, 1000)), is(true));
+    }
+
+    @Test
+    public void case_is_not_cheaper_when_every_statement_holds_a_single_row() {
+        assertThat(UpdateCostModel.isCaseCheaper(500, 3, 1), is(false));
+    }
+}
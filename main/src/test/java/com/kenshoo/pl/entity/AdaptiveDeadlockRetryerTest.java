@@ -0,0 +1,175 @@
+package com.kenshoo.pl.entity;
+
+import com.kenshoo.pl.entity.mysql.MySqlDeadlockDetector;
+import com.kenshoo.pl.entity.mysql.MySqlErrors;
+import com.kenshoo.pl.entity.spi.ThrowingAction;
+import org.jooq.exception.DataAccessException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class AdaptiveDeadlockRetryerTest {
+
+    private static final TestEntityTable TABLE = TestEntityTable.TABLE;
+
+    private final List<Long> sleeps = new ArrayList<>();
+
+    private AdaptiveDeadlockRetryer classUnderTest;
+
+    private ThrowingAction updateToDB = mock(ThrowingAction.class);
+
+    private PersistentLayerStats stats = new PersistentLayerStats();
+
+    @Before
+    public void setUp() {
+        classUnderTest = new AdaptiveDeadlockRetryer(new MySqlDeadlockDetector(), () -> false, sleeps::add)
+                .setMinBaseDelayMillis(10)
+                .setMaxBaseDelayMillis(100)
+                .setMaxDelayMillis(1000)
+                .setConflictRateWeight(0.5)
+                .setMaxRetries(4);
+    }
+
+    @Test
+    public void update_should_succeed_in_case_of_no_exceptions() throws Exception {
+        classUnderTest.run(TABLE, stats, updateToDB);
+        verify(updateToDB, times(1)).run();
+        assertThat(stats.getConflicts(), is(0));
+        assertThat(stats.getRetries(), is(0));
+    }
+
+    @Test
+    public void update_should_retry_on_deadlock_error_code() throws Exception {
+        doThrow(conflict(MySqlErrors.DEADLOCK))
+                .doThrow(conflict(MySqlErrors.DEADLOCK))
+                .doNothing()
+                .when(updateToDB).run();
+
+        classUnderTest.run(TABLE, stats, updateToDB);
+
+        verify(updateToDB, times(3)).run();
+        assertThat(stats.getConflicts(), is(2));
+        assertThat(stats.getRetries(), is(2));
+    }
+
+    @Test
+    public void update_should_retry_on_lock_wait_timeout_error_code() throws Exception {
+        doThrow(conflict(MySqlErrors.LOCK_WAIT_TIMEOUT))
+                .doNothing()
+                .when(updateToDB).run();
+
+        classUnderTest.run(TABLE, stats, updateToDB);
+
+        verify(updateToDB, times(2)).run();
+    }
+
+    @Test
+    public void update_should_not_retry_on_other_error_codes() throws Exception {
+        doThrow(new DataAccessException("duplicate", new SQLException("Duplicate entry", "23000", 1062)))
+                .doNothing()
+                .when(updateToDB).run();
+        try {
+            classUnderTest.run(TABLE, stats, updateToDB);
+            fail("expected the failure to propagate");
+        } catch (DataAccessException e) {
+            verify(updateToDB, times(1)).run();
+            assertThat(stats.getConflicts(), is(0));
+        }
+    }
+
+    @Test
+    public void update_should_not_retry_within_an_active_transaction() throws Exception {
+        classUnderTest = new AdaptiveDeadlockRetryer(new MySqlDeadlockDetector(), () -> true, sleeps::add);
+        doThrow(conflict(MySqlErrors.DEADLOCK))
+                .doNothing()
+                .when(updateToDB).run();
+        try {
+            classUnderTest.run(TABLE, stats, updateToDB);
+            fail("expected the failure to propagate");
+        } catch (DataAccessException e) {
+            verify(updateToDB, times(1)).run();
+            assertThat(stats.getConflicts(), is(1));
+            assertThat(stats.getRetries(), is(0));
+        }
+    }
+
+    @Test
+    public void update_should_stop_retrying_after_max_retries() throws Exception {
+        doThrow(conflict(MySqlErrors.DEADLOCK)).when(updateToDB).run();
+        try {
+            classUnderTest.run(TABLE, stats, updateToDB);
+            fail("expected the failure to propagate");
+        } catch (DataAccessException e) {
+            verify(updateToDB, times(5)).run();
+            assertThat(stats.getConflicts(), is(5));
+            assertThat(stats.getRetries(), is(4));
+        }
+    }
+
+    @Test
+    public void waits_should_be_jittered_between_base_delay_and_cap_and_counted_in_stats() throws Exception {
+        doThrow(conflict(MySqlErrors.DEADLOCK)).when(updateToDB).run();
+        try {
+            classUnderTest.run(TABLE, stats, updateToDB);
+        } catch (DataAccessException ignore) {
+        }
+        assertThat(sleeps, hasSize(4));
+        assertThat(sleeps, everyItem(allOf(greaterThanOrEqualTo(10L), lessThanOrEqualTo(1000L))));
+        assertThat(stats.getRetryWaitTime(TimeUnit.MILLISECONDS), is(sleeps.stream().mapToLong(Long::longValue).sum()));
+    }
+
+    @Test
+    public void base_delay_should_grow_with_the_conflict_rate_of_the_table() throws Exception {
+        assertThat(classUnderTest.getConflictRate(TABLE), is(0.0));
+        doThrow(conflict(MySqlErrors.DEADLOCK))
+                .doThrow(conflict(MySqlErrors.DEADLOCK))
+                .doNothing()
+                .when(updateToDB).run();
+
+        classUnderTest.run(TABLE, stats, updateToDB);
+
+        double conflictRate = classUnderTest.getConflictRate(TABLE);
+        assertThat(conflictRate, is(closeTo(0.375, 0.0001)));
+        assertThat(classUnderTest.baseDelayMillis(conflictRate), is(44L));
+        assertThat(sleeps.get(1), greaterThanOrEqualTo(classUnderTest.baseDelayMillis(0.75)));
+    }
+
+    @Test
+    public void conflict_rate_should_decay_on_successful_attempts() throws Exception {
+        doThrow(conflict(MySqlErrors.DEADLOCK)).doNothing().when(updateToDB).run();
+        classUnderTest.run(TABLE, stats, updateToDB);
+        double afterConflict = classUnderTest.getConflictRate(TABLE);
+
+        classUnderTest.run(TABLE, stats, updateToDB);
+
+        assertThat(classUnderTest.getConflictRate(TABLE), lessThan(afterConflict));
+    }
+
+    @Test
+    public void combined_stats_should_sum_conflicts_and_retries() {
+        PersistentLayerStats other = new PersistentLayerStats();
+        stats.addConflict();
+        stats.addRetry(20);
+        other.addConflict();
+        other.addRetry(30);
+
+        PersistentLayerStats combined = stats.combine(other);
+
+        assertThat(combined.getConflicts(), is(2));
+        assertThat(combined.getRetries(), is(2));
+        assertThat(combined.getRetryWaitTime(TimeUnit.MILLISECONDS), is(50L));
+    }
+
+    private DataAccessException conflict(int errorCode) {
+        return new DataAccessException("conflict", new SQLException("conflict", "40001", errorCode));
+    }
+}
@@ -1,12 +1,16 @@
 package com.kenshoo.pl.entity;
 
 import com.kenshoo.pl.entity.internal.TransientPropertyImpl;
+import com.kenshoo.pl.entity.spi.FieldValueMerger;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Optional;
 
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertThat;
 
 public class ChangeEntityCommandTest {
@@ -49,4 +53,101 @@ public class ChangeEntityCommandTest {
     public void setTransientPropertyToNullShouldThrowException() {
         cmd.set(transientProperty, null);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void fieldSetToExpressionIsNotAChangedField() {
+        cmd.set(TestEntity.FIELD_3, FieldExpression.increment(1));
+
+        assertThat(cmd.getChangedFields().collect(toList()), is(empty()));
+        assertThat(cmd.isFieldChanged(TestEntity.FIELD_3), is(false));
+        assertThat(cmd.getExpressionChanges().map(FieldExpressionChange::getField).collect(toList()), contains(TestEntity.FIELD_3));
+    }
+
+    @Test
+    public void settingValueReplacesExpression() {
+        cmd.set(TestEntity.FIELD_3, FieldExpression.increment(1));
+        cmd.set(TestEntity.FIELD_3, 5);
+
+        assertThat(cmd.getExpressionChanges().collect(toList()), is(empty()));
+        assertThat(cmd.get(TestEntity.FIELD_3), is(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fieldOfSecondaryTableCannotBeSetToExpression() {
+        cmd.set(TestEntity.SECONDARY_FIELD_1, FieldExpression.append("suffix"));
+    }
+
+    @Test
+    public void mergeTakesTheLaterValueOfEveryField() {
+        cmd.set(TestEntity.FIELD_1, "earlier");
+        cmd.set(TestEntity.FIELD_2, "kept");
+        CreateEntityCommand<TestEntity> later = new CreateEntityCommand<>(TestEntity.INSTANCE);
+        later.set(TestEntity.FIELD_1, "later");
+        later.set(transientProperty, "transientVal");
+
+        cmd.merge(later, FieldValueMerger.lastWriteWins());
+
+        assertThat(cmd.get(TestEntity.FIELD_1), is("later"));
+        assertThat(cmd.get(TestEntity.FIELD_2), is("kept"));
+        assertThat(cmd.get(transientProperty), is(Optional.of("transientVal")));
+    }
+
+    @Test
+    public void mergeLetsTheMergerDecideOnFieldsSetByBothCommands() {
+        cmd.set(TestEntity.FIELD_3, 2);
+        CreateEntityCommand<TestEntity> later = new CreateEntityCommand<>(TestEntity.INSTANCE);
+        later.set(TestEntity.FIELD_3, 3);
+
+        cmd.merge(later, (field, earlierValue, laterValue) -> (Integer) earlierValue + (Integer) laterValue);
+
+        assertThat(cmd.get(TestEntity.FIELD_3), is(5));
+    }
+
+    @Test
+    public void mergeAppliesALaterExpressionToAnEarlierValue() {
+        cmd.set(TestEntity.FIELD_3, 2);
+        CreateEntityCommand<TestEntity> later = new CreateEntityCommand<>(TestEntity.INSTANCE);
+        later.set(TestEntity.FIELD_3, FieldExpression.increment(1));
+
+        assertThat(cmd.canMerge(later), is(true));
+        cmd.merge(later, FieldValueMerger.lastWriteWins());
+
+        assertThat(cmd.get(TestEntity.FIELD_3), is(3));
+        assertThat(cmd.getExpressionChanges().collect(toList()), is(empty()));
+    }
+
+    @Test
+    public void mergeCombinesExpressionsOfTheSameOperator() {
+        cmd.set(TestEntity.FIELD_3, FieldExpression.increment(1));
+        CreateEntityCommand<TestEntity> later = new CreateEntityCommand<>(TestEntity.INSTANCE);
+        later.set(TestEntity.FIELD_3, FieldExpression.increment(2));
+
+        assertThat(cmd.canMerge(later), is(true));
+        cmd.merge(later, FieldValueMerger.lastWriteWins());
+
+        assertThat(cmd.isFieldChanged(TestEntity.FIELD_3), is(false));
+        assertThat(cmd.getExpressionChanges().map(FieldExpressionChange::getExpression).collect(toList()), contains(FieldExpression.increment(3)));
+    }
+
+    @Test
+    public void mergeReplacesAnExpressionByALaterValue() {
+        cmd.set(TestEntity.FIELD_3, FieldExpression.increment(1));
+        CreateEntityCommand<TestEntity> later = new CreateEntityCommand<>(TestEntity.INSTANCE);
+        later.set(TestEntity.FIELD_3, 5);
+
+        assertThat(cmd.canMerge(later), is(true));
+        cmd.merge(later, FieldValueMerger.lastWriteWins());
+
+        assertThat(cmd.get(TestEntity.FIELD_3), is(5));
+        assertThat(cmd.getExpressionChanges().collect(toList()), is(empty()));
+    }
+
+    @Test
+    public void expressionsOfDifferentOperatorsCannotBeMerged() {
+        cmd.set(TestEntity.FIELD_3, FieldExpression.increment(1));
+        CreateEntityCommand<TestEntity> later = new CreateEntityCommand<>(TestEntity.INSTANCE);
+        later.set(TestEntity.FIELD_3, FieldExpression.greatest(5));
+
+        assertThat(cmd.canMerge(later), is(false));
+    }
+}
@@ -0,0 +1,25 @@
+package com.kenshoo.pl.entity;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.junit.Assert.assertThat;
+
+public class ConditionalUpdateCommandTest {
+
+    private final ConditionalUpdateCommand<TestEntity> command = new ConditionalUpdateCommand<>(TestEntity.INSTANCE, TestEntity.FIELD_1.eq("a"));
+
+    @Test
+    public void valuesAndExpressionsOfPrimaryTableFieldsAreKept() {
+        command.set(TestEntity.FIELD_1, "b");
+        command.set(TestEntity.FIELD_3, FieldExpression.increment(2));
+
+        assertThat(command.getValues(), hasEntry(TestEntity.FIELD_1, "b"));
+        assertThat(command.getValues(), hasEntry(TestEntity.FIELD_3, FieldExpression.increment(2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fieldOfSecondaryTableCannotBeSet() {
+        command.set(TestEntity.SECONDARY_FIELD_1, "b");
+    }
+}
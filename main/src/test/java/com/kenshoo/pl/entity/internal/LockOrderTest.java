@@ -0,0 +1,64 @@
+package com.kenshoo.pl.entity.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.kenshoo.jooq.DataTable;
+import com.kenshoo.pl.data.CreateRecordCommand;
+import com.kenshoo.pl.data.DeleteRecordCommand;
+import com.kenshoo.pl.entity.TestChildEntityTable;
+import com.kenshoo.pl.entity.TestEntityTable;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+public class LockOrderTest {
+
+    @Test
+    public void referencedTableComesBeforeReferencingTableRegardlessOfName() {
+        List<DataTable> tables = ImmutableList.of(TestChildEntityTable.TABLE, TestEntityTable.TABLE).stream()
+                .sorted(LockOrder.TABLES_ORDER)
+                .collect(Collectors.toList());
+
+        assertThat(tables, contains(TestEntityTable.TABLE, TestChildEntityTable.TABLE));
+    }
+
+    @Test
+    public void referencingTableComesBeforeReferencedTableWhenDeleting() {
+        List<DataTable> tables = ImmutableList.of(TestEntityTable.TABLE, TestChildEntityTable.TABLE).stream()
+                .sorted(LockOrder.DELETED_TABLES_ORDER)
+                .collect(Collectors.toList());
+
+        assertThat(tables, contains(TestChildEntityTable.TABLE, TestEntityTable.TABLE));
+    }
+
+    @Test
+    public void deletesAreSortedById() {
+        DeleteRecordCommand delete3 = new DeleteRecordCommand(TestEntityTable.TABLE, 3);
+        DeleteRecordCommand delete1 = new DeleteRecordCommand(TestEntityTable.TABLE, 1);
+        DeleteRecordCommand delete2 = new DeleteRecordCommand(TestEntityTable.TABLE, 2);
+
+        assertThat(LockOrder.deletes(ImmutableList.of(delete3, delete1, delete2)), contains(delete1, delete2, delete3));
+    }
+
+    @Test
+    public void insertsAreSortedByPrimaryKeyWithMissingKeysLastInOriginalOrder() {
+        CreateRecordCommand noId1 = insert(null);
+        CreateRecordCommand id5 = insert(5);
+        CreateRecordCommand noId2 = insert(null);
+        CreateRecordCommand id2 = insert(2);
+
+        assertThat(LockOrder.inserts(TestEntityTable.TABLE, ImmutableList.of(noId1, id5, noId2, id2)), contains(id2, id5, noId1, noId2));
+    }
+
+    private CreateRecordCommand insert(Integer id) {
+        CreateRecordCommand command = new CreateRecordCommand(TestEntityTable.TABLE);
+        if (id != null) {
+            command.set(TestEntityTable.TABLE.id, id);
+        }
+        command.set(TestEntityTable.TABLE.field_1, "value");
+        return command;
+    }
+}
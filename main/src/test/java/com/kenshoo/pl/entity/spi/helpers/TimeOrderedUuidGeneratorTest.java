@@ -0,0 +1,71 @@
+package com.kenshoo.pl.entity.spi.helpers;
+
+import com.kenshoo.pl.entity.converters.UuidBinaryValueConverter;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TimeOrderedUuidGeneratorTest {
+
+    private static final Instant NOW = Instant.parse("2021-03-04T05:06:07.089Z");
+
+    @Test
+    public void uuids_are_of_version_7() {
+        UUID uuid = generatorAt(NOW).generate(1).get(0);
+
+        assertThat(uuid.version(), is(7));
+        assertThat(uuid.variant(), is(2));
+    }
+
+    @Test
+    public void uuids_start_with_the_generation_time() {
+        UUID uuid = generatorAt(NOW).generate(1).get(0);
+
+        assertThat(uuid.getMostSignificantBits() >>> 16, is(NOW.toEpochMilli()));
+    }
+
+    @Test
+    public void uuids_of_later_time_are_stored_after_uuids_of_earlier_time() {
+        UUID earlier = generatorAt(NOW).generate(1).get(0);
+        UUID later = generatorAt(NOW.plusMillis(1)).generate(1).get(0);
+
+        assertThat(compareUnsigned(UuidBinaryValueConverter.INSTANCE.convertTo(later), UuidBinaryValueConverter.INSTANCE.convertTo(earlier)), greaterThan(0));
+    }
+
+    @Test
+    public void uuids_of_same_time_are_different() {
+        List<UUID> uuids = generatorAt(NOW).generate(1000);
+
+        assertThat(new HashSet<>(uuids).size(), is(1000));
+    }
+
+    @Test
+    public void uuids_are_restored_from_their_binary_value() {
+        UUID uuid = generatorAt(NOW).generate(1).get(0);
+
+        assertThat(UuidBinaryValueConverter.INSTANCE.convertFrom(UuidBinaryValueConverter.INSTANCE.convertTo(uuid)), is(uuid));
+    }
+
+    private TimeOrderedUuidGenerator generatorAt(Instant instant) {
+        return new TimeOrderedUuidGenerator(Clock.fixed(instant, ZoneOffset.UTC));
+    }
+
+    private int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            int diff = Byte.toUnsignedInt(a[i]) - Byte.toUnsignedInt(b[i]);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+}